@@ -23,22 +23,39 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import com.joliciel.csvLearner.utils.CSVFormatter;
+import com.joliciel.csvLearner.utils.CSVCellReader;
+import com.joliciel.csvLearner.utils.FloatParser;
+import com.joliciel.csvLearner.utils.MappedCSVCellReader;
 import com.joliciel.csvLearner.utils.LogUtils;
+import com.joliciel.csvLearner.utils.Metrics;
 
 /**
  * Given a set of feature files and (optionally) a result file, constructs a set of events to
@@ -49,6 +66,13 @@ import com.joliciel.csvLearner.utils.LogUtils;
  */
 public class CSVEventListReader {
 	private static final Log LOG = LogFactory.getLog(CSVEventListReader.class);
+	private static final Metrics.Timer READ_TIMER = Metrics.getTimer("reader.read");
+	private static final Metrics.Timer RESULTS_FILE_TIMER = Metrics.getTimer("reader.resultsFile");
+	private static final Metrics.Timer FEATURE_FILE_TIMER = Metrics.getTimer("reader.featureFile");
+	private static final Metrics.Timer CACHE_READ_TIMER = Metrics.getTimer("reader.cacheRead");
+	private static final Metrics.Timer CACHE_WRITE_TIMER = Metrics.getTimer("reader.cacheWrite");
+	private static final Metrics.Counter ROWS = Metrics.getCounter("reader.rows");
+	private static final Metrics.Histogram FEATURES_PER_ROW = Metrics.getHistogram("reader.featuresPerRow");
 	private String resultFilePath = null;
 	private String featureDirPath = null;
 	private String groupedFeatureDirPath = null;
@@ -79,6 +103,17 @@ public class CSVEventListReader {
 	
 	private boolean splitEventsByFile = false;
 	
+	private int threadCount = 1;
+	private String eventCacheDirPath = null;
+	private boolean incrementalRead = false;
+	// CRC-32 hashes of the source files calculated while parsing them, shared with the event cache files
+	private Map<String,Long> sourceHashes = new ConcurrentHashMap<String, Long>();
+	// the number of rows merged for each number of features per row, kept for the event cache's metrics
+	private long[] rowsPerFeatureCount = new long[0];
+	
+	// the events read from the result file, in result file order
+	private List<GenericEvent> resultEvents = new ArrayList<GenericEvent>();
+	
 	private GenericEvents events = null;
 	private Map<String,GenericEvents> eventsPerFile = null;
 	
@@ -91,9 +126,28 @@ public class CSVEventListReader {
 			eventFileMap = new TreeMap<String, Map<String,GenericEvent>>();
 		eventMap = new TreeMap<String, GenericEvent>();
 		features = new TreeSet<String>();
+		long startTime = READ_TIMER.start();
 		try {
+			EventCacheFile cacheFile = null;
+			if (eventCacheDirPath!=null) {
+				cacheFile = new EventCacheFile(new File(eventCacheDirPath), "events", this.getEventCacheSignature(), this.getSourceFiles());
+				cacheFile.setKnownHashes(sourceHashes);
+				if (cacheFile.openForReading()) {
+					LOG.info("Loading events from cache " + cacheFile.getFile().getPath());
+					long startTimeCache = CACHE_READ_TIMER.start();
+					try {
+						this.readEventCache(cacheFile);
+					} finally {
+						cacheFile.close();
+						CACHE_READ_TIMER.stop(startTimeCache);
+					}
+					return;
+				}
+			}
 
+			long startTimeResults = RESULTS_FILE_TIMER.start();
 			this.scanResultsFile();
+			RESULTS_FILE_TIMER.stop(startTimeResults);
 			
 			File featureDir = new File(featureDirPath);
 			this.scanFeatureDir(featureDir, false);
@@ -102,38 +156,61 @@ public class CSVEventListReader {
 				File groupedFeatureDir = new File(groupedFeatureDirPath);
 				this.scanFeatureDir(groupedFeatureDir, true);
 			}
+			
+			// release spare feature capacity, now that all features have been added
+			for (GenericEvent event : eventMap.values())
+				event.trimToSize();
+			if (splitEventsByFile) {
+				for (Map<String,GenericEvent> fileEventMap : eventFileMap.values())
+					for (GenericEvent event : fileEventMap.values())
+						event.trimToSize();
+			}
+			
+			if (cacheFile!=null) {
+				LOG.info("Writing events to cache " + cacheFile.getFile().getPath());
+				long startTimeCache = CACHE_WRITE_TIMER.start();
+				cacheFile.openForWriting();
+				boolean written = false;
+				try {
+					this.writeEventCache(cacheFile);
+					written = true;
+				} finally {
+					if (written)
+						cacheFile.close();
+					else
+						cacheFile.abort();
+					CACHE_WRITE_TIMER.stop(startTimeCache);
+				}
+			}
 		} catch (IOException ioe) {
 			LogUtils.logError(LOG, ioe);
 			throw new RuntimeException(ioe);
+		} finally {
+			READ_TIMER.stop(startTime);
 		}
 	}
 	
 	void scanResultsFile() throws IOException {
 		if (this.resultFilePath!=null) {
 			// have results
-			Scanner resultScanner = new Scanner(new FileInputStream(
-					resultFilePath), "UTF-8");
+			File resultFile = new File(resultFilePath);
+			String fingerprintKey = EventCacheFile.getFingerprintKey(resultFile);
+			CheckedInputStream checkedStream = new CheckedInputStream(new FileInputStream(resultFile), new CRC32());
+			CSVCellReader cellReader = new CSVCellReader(checkedStream);
 
 			try {
 				int i = 0;
 				boolean firstLine = true;
-				while (resultScanner.hasNextLine()) {
-					String line = resultScanner.nextLine();
+				while (cellReader.nextRow()) {
 					if (!firstLine) {
-						List<String> cells = CSVFormatter.getCSVCells(line);
-						String ref = cells.get(0);
-
-						String outcome = cells.get(1);
-						boolean includeEvent = true;
-						if (includedOutcomes!=null) {
-							if (!includedOutcomes.contains(outcome))
-								includeEvent = false;
-						} else if (excludedOutcomes!=null) {
-							if (excludedOutcomes.contains(outcome))
-								includeEvent = false;
-						}
-						
-						if (includeEvent) {
+						if (!cellReader.nextCell())
+							throw new RuntimeException("Missing identifier in result file on row " + cellReader.getRow());
+						String ref = cellReader.getCell();
+
+						if (!cellReader.nextCell())
+							throw new RuntimeException("Missing outcome in result file on row " + cellReader.getRow());
+						String outcome = cellReader.getCell();
+						if (this.isIncludedOutcome(outcome)) {
 							if (eventMap.containsKey(ref)) {
 								throw new RuntimeException("Duplicate identifier in result file: " + ref);
 							}
@@ -141,21 +218,9 @@ public class CSVEventListReader {
 							GenericEvent event = new GenericEvent(ref);
 							outcomes.add(outcome);
 							event.setOutcome(outcome);
-							if (testIds!=null) {
-								if (testIds.contains(ref))
-									event.setTest(true);
-								else
-									event.setTest(false);
-							} else if (trainingSetType.equals(TrainingSetType.ALL_TRAINING)) {
-								event.setTest(false);
-							} else if (trainingSetType.equals(TrainingSetType.ALL_TEST)) {
-								event.setTest(true);
-							} else if (trainingSetType.equals(TrainingSetType.TEST_SEGMENT)) {
-								event.setTest(i % 10 == testSegment);
-							} else {
-								throw new RuntimeException("Unknown TrainingSetType: " + trainingSetType);
-							}
+							event.setTest(this.isTestEvent(ref, i));
 							eventMap.put(ref, event);
+							resultEvents.add(event);
 							i++;
 						} else {
 							eventsToExclude.add(ref);
@@ -164,20 +229,71 @@ public class CSVEventListReader {
 					firstLine = false;
 
 				}
+				// the whole file has been read, so that it needn't be read again to hash it for the event cache
+				if (eventCacheDirPath!=null)
+					sourceHashes.put(fingerprintKey, checkedStream.getChecksum().getValue());
 			} finally {
-				resultScanner.close();
+				cellReader.close();
 			}
 		} // have results		
 	}
 	
+	private boolean isIncludedOutcome(String outcome) {
+		if (includedOutcomes!=null)
+			return includedOutcomes.contains(outcome);
+		if (excludedOutcomes!=null)
+			return !excludedOutcomes.contains(outcome);
+		return true;
+	}
+	
+	/**
+	 * Whether the i-th event included from the result file should be marked as test.
+	 */
+	private boolean isTestEvent(String ref, int i) {
+		if (testIds!=null)
+			return testIds.contains(ref);
+		if (trainingSetType.equals(TrainingSetType.ALL_TRAINING))
+			return false;
+		if (trainingSetType.equals(TrainingSetType.ALL_TEST))
+			return true;
+		if (trainingSetType.equals(TrainingSetType.TEST_SEGMENT))
+			return (i % 10 == testSegment);
+		throw new RuntimeException("Unknown TrainingSetType: " + trainingSetType);
+	}
+	
 	/**
 	 * Scan a feature directory and all of its sub-directories, and add the
 	 * contents of the feature files to the event map.
+	 * If threadCount &gt; 1, the files are parsed concurrently, but their contents
+	 * are always added to the event map in the same order as a sequential scan.
 	 * 
 	 * @param featureDir
 	 * @throws IOException
 	 */
 	void scanFeatureDir(File featureDir, boolean grouped) throws IOException {
+		List<File> files = new ArrayList<File>();
+		this.findFeatureFiles(featureDir, files);
+		if (threadCount>1 && files.size()>1) {
+			this.scanFeatureFilesInParallel(files, grouped);
+		} else {
+			for (File file : files) {
+				String fileName = file.getName();
+				LOG.debug("Scanning file " + fileName);
+				Map<String,GenericEvent> currentEventMap = this.getCurrentEventMap(fileName);
+				if (this.isIncremental()) {
+					for (FeatureRowBuffer buffer : this.readFeatureFileArtefact(file))
+						buffer.replay(new FeatureRowFilter(new FeatureRowMerger(fileName, grouped, currentEventMap)));
+				} else {
+					this.scanFeatureFile(file, grouped, currentEventMap, null, true);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Recursively list the files in a feature directory, in the order in which they should be scanned.
+	 */
+	private void findFeatureFiles(File featureDir, List<File> featureFiles) {
 		LOG.debug("Scanning feature directory " + featureDir.getPath());
 		File[] files = featureDir.listFiles();
 		if (files==null) {
@@ -187,174 +303,1051 @@ public class CSVEventListReader {
 		for (File file : files) {
 			if (file.isDirectory()) {
 				// recursively scan this feature sub-directory
-				this.scanFeatureDir(file, grouped);
+				this.findFeatureFiles(file, featureFiles);
 			} else {
-				String fileName = file.getName();
-				LOG.debug("Scanning file " + fileName);
-				Map<String,GenericEvent> currentEventMap = eventMap;
-				if (eventFileMap!=null) {
-					currentEventMap = new TreeMap<String, GenericEvent>();
-					// copy the results to the event map
-					for (GenericEvent event : eventMap.values()) {
-						GenericEvent eventClone = new GenericEvent(event.getIdentifier());
-						eventClone.setTest(event.isTest());
-						eventClone.setOutcome(event.getOutcome());
-						currentEventMap.put(event.getIdentifier(), eventClone);
+				featureFiles.add(file);
+			}
+		}
+	}
+	
+	private void scanFeatureFilesInParallel(List<File> files, final boolean grouped) throws IOException {
+		LOG.debug("Scanning " + files.size() + " files using " + threadCount + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<List<FeatureRowBuffer>>> futures = new ArrayList<Future<List<FeatureRowBuffer>>>();
+			for (final File file : files) {
+				futures.add(executor.submit(new Callable<List<FeatureRowBuffer>>() {
+					@Override
+					public List<FeatureRowBuffer> call() throws Exception {
+						LOG.debug("Scanning file " + file.getName());
+						if (isIncremental())
+							return readFeatureFileArtefact(file);
+						List<FeatureRowBuffer> buffers = new ArrayList<FeatureRowBuffer>();
+						scanFeatureFile(file, grouped, null, buffers, true);
+						return buffers;
 					}
-					eventFileMap.put(fileName, currentEventMap);
+				}));
+			}
+			
+			// merge the results in the original file order, so that the events are identical to a sequential scan
+			for (int i=0; i<files.size(); i++) {
+				String fileName = files.get(i).getName();
+				Map<String,GenericEvent> currentEventMap = this.getCurrentEventMap(fileName);
+				List<FeatureRowBuffer> buffers = null;
+				try {
+					buffers = futures.get(i).get();
+				} catch (InterruptedException ie) {
+					throw new RuntimeException(ie);
+				} catch (ExecutionException ee) {
+					Throwable cause = ee.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					throw new RuntimeException(cause);
 				}
-				InputStream inputStream = null;
+				futures.set(i, null);
+				for (FeatureRowBuffer buffer : buffers) {
+					if (this.isIncremental())
+						buffer.replay(new FeatureRowFilter(new FeatureRowMerger(fileName, grouped, currentEventMap)));
+					else
+						buffer.replay(new FeatureRowMerger(fileName, grouped, currentEventMap));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * The event map to which the contents of a given file should be added.
+	 * When splitting events by file, this is an initially empty map for the file,
+	 * which only receives events for the rows actually found in the file.
+	 */
+	private Map<String,GenericEvent> getCurrentEventMap(String fileName) {
+		Map<String,GenericEvent> currentEventMap = eventMap;
+		if (eventFileMap!=null) {
+			currentEventMap = new TreeMap<String, GenericEvent>();
+			eventFileMap.put(fileName, currentEventMap);
+		}
+		return currentEventMap;
+	}
+	
+	/**
+	 * Scan a single .csv or .zip feature file.
+	 * If buffers is null, the contents are added directly to currentEventMap.
+	 * Otherwise, nothing is added to the event map: the parsed contents of each CSV are added to buffers instead,
+	 * and this method can safely be called concurrently for different files.
+	 * If filterRows is false, rows for excluded or unknown events are kept, to be filtered later by a FeatureRowFilter.
+	 */
+	private void scanFeatureFile(File file, boolean grouped, Map<String,GenericEvent> currentEventMap, List<FeatureRowBuffer> buffers, boolean filterRows) throws IOException {
+		String fileName = file.getName();
+		String fingerprintKey = EventCacheFile.getFingerprintKey(file);
+		InputStream inputStream = null;
+		long startTime = FEATURE_FILE_TIMER.start();
+		try {
+			if (fileName.endsWith(".dsc_limits.csv")||fileName.endsWith(".nrm_limits.csv")){
+				LOG.trace("Ignoring limits file: " + fileName);
+			} else if (fileName.endsWith(".csv")) {
+				// uncompressed files are memory-mapped rather than streamed
+				MappedCSVCellReader cellReader = new MappedCSVCellReader(file);
+				if (eventCacheDirPath!=null)
+					cellReader.setChecksum(new CRC32());
 				try {
-					if (fileName.endsWith(".dsc_limits.csv")||fileName.endsWith(".nrm_limits.csv")){
-						LOG.trace("Ignoring limits file: " + fileName);
-					} else if (fileName.endsWith(".csv")) {
-						inputStream = new FileInputStream(file);
-						this.scanCSVFile(inputStream, true, grouped, fileName, currentEventMap);
-					} else if (fileName.endsWith(".zip")) {
-						inputStream = new FileInputStream(file);
-						ZipInputStream zis = new ZipInputStream(inputStream);
-						ZipEntry zipEntry;
-						while ((zipEntry = zis.getNextEntry()) != null) {
-							LOG.debug("Scanning zip entry "
-									+ zipEntry.getName());
-
-							this.scanCSVFile(zis, false, grouped, fileName, currentEventMap);
-							zis.closeEntry();
-						}
+					this.scanCSVFile(cellReader, fileName, this.getFeatureRowHandler(fileName, grouped, currentEventMap, buffers), filterRows);
+					if (cellReader.getChecksum()!=null)
+						sourceHashes.put(fingerprintKey, cellReader.getChecksum().getValue());
+				} finally {
+					cellReader.close();
+				}
+			} else if (fileName.endsWith(".zip")) {
+				CheckedInputStream checkedStream = new CheckedInputStream(new FileInputStream(file), new CRC32());
+				inputStream = checkedStream;
+				ZipInputStream zis = new ZipInputStream(inputStream);
+				ZipEntry zipEntry;
+				while ((zipEntry = zis.getNextEntry()) != null) {
+					LOG.debug("Scanning zip entry "
+							+ zipEntry.getName());
 
-						zis.close();
-					} else {
-						throw new RuntimeException(
-								"Bad file extension in feature directory: "
-										+ file.getName());
+					this.scanCSVFile(new CSVCellReader(zis), fileName, this.getFeatureRowHandler(fileName, grouped, currentEventMap, buffers), filterRows);
+					zis.closeEntry();
+				}
+				if (eventCacheDirPath!=null) {
+					// hash the zip's central directory as well, which the ZipInputStream doesn't read
+					byte[] bytes = new byte[8 * 1024];
+					while (checkedStream.read(bytes) >= 0) {
+						// just hashing
 					}
-				} finally {
-					if (inputStream != null)
-						inputStream.close();
+					sourceHashes.put(fingerprintKey, checkedStream.getChecksum().getValue());
 				}
-			} // file or directory?
-		} // next file
+
+				zis.close();
+			} else {
+				throw new RuntimeException(
+						"Bad file extension in feature directory: "
+								+ file.getName());
+			}
+		} finally {
+			if (inputStream != null)
+				inputStream.close();
+			FEATURE_FILE_TIMER.stop(startTime);
+		}
+	}
+	
+	private FeatureRowHandler getFeatureRowHandler(String fileName, boolean grouped, Map<String,GenericEvent> currentEventMap, List<FeatureRowBuffer> buffers) {
+		if (buffers==null)
+			return new FeatureRowMerger(fileName, grouped, currentEventMap);
+		FeatureRowBuffer buffer = new FeatureRowBuffer();
+		buffers.add(buffer);
+		return buffer;
 	}
 
-	private void scanCSVFile(InputStream inputStream, boolean closeStreamer, boolean grouped, String fileName, Map<String,GenericEvent> currentEventMap) {
-		// add contents of the current file to the event map.
-		
-		if (grouped)
-			this.groupedFiles.add(fileName);
-		
+	/**
+	 * Parse the contents of a single CSV file, and pass them on to the handler.
+	 * The only shared state read here is state which doesn't change while scanning feature files.
+	 */
+	private void scanCSVFile(CSVCellReader cellReader, String fileName, FeatureRowHandler handler, boolean filterRows) throws IOException {
 		boolean firstLine = true;
 		List<String> featureNames = null;
-		Scanner scanner = new Scanner(inputStream, "UTF-8");
-		Set<String> featureSet = fileToFeatureMap.get(fileName);
-		if (featureSet==null) {
-			featureSet = new TreeSet<String>();
-			fileToFeatureMap.put(fileName, featureSet);
+		FeatureCells cells = new FeatureCells();
+		int row = 1;
+		while (cellReader.nextRow()) {
+			if (firstLine) {
+				featureNames = this.readFeatureNames(cellReader);
+				handler.onHeader(featureNames);
+				
+				firstLine = false;
+			} else if (cellReader.nextCell()) {
+				String ref = cellReader.getCell();
+				boolean skipLine = filterRows && this.isSkippedRow(ref);
+				
+				if (!skipLine) {
+					this.readFeatureCells(cellReader, fileName, row, featureNames, cells);
+					handler.onRow(ref, cells.cellCount, cells.columns, cells.weights, cells.nominalValues);
+				}
+			} // first line?
+			row++;
+		} // next line
+	}
+	
+	/**
+	 * Whether a feature file row should be skipped, because its event was excluded,
+	 * or is unknown (in which case an exception is thrown unless skipping unknown events).
+	 */
+	private boolean isSkippedRow(String ref) {
+		if (this.eventsToExclude.contains(ref))
+			return true;
+		if (resultFilePath!=null && !eventMap.containsKey(ref)) {
+			if (skipUnknownEvents) {
+				// unknown ID: skip this whole line
+				return true;
+			} else {
+				throw new RuntimeException(
+					"ID not found in result file: " + ref);
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Read the feature names from a feature file's header row, including the identifier column.
+	 */
+	private List<String> readFeatureNames(CSVCellReader cellReader) throws IOException {
+		List<String> featureNames = new ArrayList<String>();
+		while (cellReader.nextCell()) {
+			featureNames.add(getFeatureName(cellReader.getCell()));
 		}
+		return featureNames;
+	}
+	
+	/**
+	 * The feature name corresponding to a given feature file header cell.
+	 */
+	public static String getFeatureName(String headerCell) {
+		String featureName = headerCell.replace(' ', '_');
+		featureName = featureName.replace(",", "$comma$");
+		featureName = featureName.replace("\"", "$double_quote$");
+		return featureName;
+	}
+	
+	/**
+	 * Read the remaining cells of the current row (after the identifier) into cells.
+	 */
+	private void readFeatureCells(CSVCellReader cellReader, String fileName, int row, List<String> featureNames, FeatureCells cells) throws IOException {
+		int cellCount = 0;
+		int i = 1;
+		FloatParser floatParser = cells.floatParser;
+		while (cellReader.nextCell()) {
+			// weight cell
+			if (i>featureNames.size()-1)
+				throw new RuntimeException("File: " + fileName + ". Too many cells on row: " + row);
+			String featureName = featureNames.get(i);
+			if (this.featuresToInclude!=null && !this.featuresToInclude.contains(featureName)) {
+				i++;
+				continue;
+			}
+			float weight = 0;
+			String nominalValue = null;
+			if (floatParser.parse(cellReader.getCellBuffer(), cellReader.getCellStart(), cellReader.getCellEnd())) {
+				weight = floatParser.getValue();
+			} else if (cellReader.getCellLength() > 0) {
+				// skip empty cells
+				nominalValue = cellReader.getCell();
+				weight = 1;
+			}
+			if (cellCount==cells.columns.length) {
+				cells.columns = Arrays.copyOf(cells.columns, cellCount*2);
+				cells.weights = Arrays.copyOf(cells.weights, cellCount*2);
+				cells.nominalValues = Arrays.copyOf(cells.nominalValues, cellCount*2);
+			}
+			cells.columns[cellCount] = i;
+			cells.weights[cellCount] = weight;
+			cells.nominalValues[cellCount] = nominalValue;
+			cellCount++;
+			i++;
+		} // next cell
+		cells.cellCount = cellCount;
+	}
+	
+	/**
+	 * The cells read from a single feature file row, re-used from one row to the next.
+	 */
+	private static final class FeatureCells {
+		private int cellCount = 0;
+		private int[] columns = new int[64];
+		private float[] weights = new float[64];
+		private String[] nominalValues = new String[64];
+		private FloatParser floatParser = new FloatParser();
+	}
+	
+	/**
+	 * Stream the events one at a time, by merge-joining the result file with the feature files row by row,
+	 * instead of reading all of the events into memory as read() does.<br/>
+	 * The result file and every feature file (including each entry of a zipped feature file)
+	 * must have their rows sorted by event ID, in ascending String order, each ID appearing at most once per file.
+	 * The events are returned in this order, which is also the order of getEvents().
+	 * Outcomes, test flags and features are identical to those of read(),
+	 * but no feature statistics are collected, and events are never split by file.<br/>
+	 * The files are closed once the last event has been returned, or when the iterator is closed.
+	 * @return
+	 * @throws IOException
+	 */
+	public SortedEventIterator stream() throws IOException {
+		if (resultFilePath==null)
+			throw new RuntimeException("Streaming events requires a result file");
+		SortedEventIterator iterator = new SortedEventIterator();
 		try {
-			int row = 1;
-			while (scanner.hasNextLine()) {
-				String line = scanner.nextLine();
-				List<String> cells = CSVFormatter.getCSVCells(line);
-				if (firstLine) {
-					featureNames = new ArrayList<String>();
-					for (String cell : cells) {
-						String featureName = cell.replace(' ', '_');
-						featureName = featureName.replace(",", "$comma$");
-						featureName = featureName.replace("\"", "$double_quote$");
-						featureNames.add(featureName);
+			List<File> files = new ArrayList<File>();
+			this.findFeatureFiles(new File(featureDirPath), files);
+			if (groupedFeatureDirPath!=null)
+				this.findFeatureFiles(new File(groupedFeatureDirPath), files);
+			for (File file : files)
+				iterator.addFeatureFile(file);
+		} catch (IOException ioe) {
+			iterator.close();
+			throw ioe;
+		} catch (RuntimeException re) {
+			iterator.close();
+			throw re;
+		}
+		return iterator;
+	}
+	
+	/**
+	 * Iterates through the events in ID order, see stream().
+	 */
+	public final class SortedEventIterator implements Iterator<GenericEvent> {
+		private CSVCellReader resultReader;
+		private List<SortedFeatureFileCursor> cursors = new ArrayList<SortedFeatureFileCursor>();
+		private List<ZipFile> zipFiles = new ArrayList<ZipFile>();
+		private GenericEvent nextEvent = null;
+		private String previousRef = null;
+		private int eventCount = 0;
+		private boolean finished = false;
+		
+		private SortedEventIterator() throws IOException {
+			resultReader = new CSVCellReader(new FileInputStream(resultFilePath));
+			// skip the header row
+			resultReader.nextRow();
+		}
+		
+		private void addFeatureFile(File file) throws IOException {
+			String fileName = file.getName();
+			if (fileName.endsWith(".dsc_limits.csv")||fileName.endsWith(".nrm_limits.csv")){
+				LOG.trace("Ignoring limits file: " + fileName);
+			} else if (fileName.endsWith(".csv")) {
+				cursors.add(new SortedFeatureFileCursor(fileName, new MappedCSVCellReader(file)));
+			} else if (fileName.endsWith(".zip")) {
+				ZipFile zipFile = new ZipFile(file);
+				zipFiles.add(zipFile);
+				Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+				while (zipEntries.hasMoreElements()) {
+					ZipEntry zipEntry = zipEntries.nextElement();
+					if (!zipEntry.isDirectory())
+						cursors.add(new SortedFeatureFileCursor(fileName, new CSVCellReader(zipFile.getInputStream(zipEntry))));
+				}
+			} else {
+				throw new RuntimeException(
+						"Bad file extension in feature directory: "
+								+ file.getName());
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (nextEvent==null && !finished) {
+				try {
+					nextEvent = this.readNextEvent();
+				} catch (IOException ioe) {
+					this.close();
+					LogUtils.logError(LOG, ioe);
+					throw new RuntimeException(ioe);
+				} catch (RuntimeException re) {
+					this.close();
+					throw re;
+				}
+			}
+			return nextEvent!=null;
+		}
+
+		@Override
+		public GenericEvent next() {
+			if (!this.hasNext())
+				throw new NoSuchElementException();
+			GenericEvent event = nextEvent;
+			nextEvent = null;
+			return event;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		private GenericEvent readNextEvent() throws IOException {
+			while (resultReader.nextRow()) {
+				if (!resultReader.nextCell())
+					throw new RuntimeException("Missing identifier in result file on row " + resultReader.getRow());
+				String ref = resultReader.getCell();
+				if (!resultReader.nextCell())
+					throw new RuntimeException("Missing outcome in result file on row " + resultReader.getRow());
+				String outcome = resultReader.getCell();
+				if (previousRef!=null && ref.compareTo(previousRef)<=0)
+					throw new RuntimeException("Result file not sorted by ID: " + ref + " follows " + previousRef);
+				previousRef = ref;
+				
+				GenericEvent event = null;
+				if (isIncludedOutcome(outcome)) {
+					event = new GenericEvent(ref);
+					outcomes.add(outcome);
+					event.setOutcome(outcome);
+					event.setTest(isTestEvent(ref, eventCount));
+					eventCount++;
+				}
+				
+				for (SortedFeatureFileCursor cursor : cursors) {
+					while (cursor.ref!=null && cursor.ref.compareTo(ref)<0) {
+						this.skipUnknownEvent(cursor);
 					}
-					
-					boolean firstColumn = true;
-					for (String featureName : featureNames) {
-						if (!firstColumn) {
-							features.add(featureName);
-							featureSet.add(featureName);
-							if (grouped)
-								groupedFeatures.put(featureName, fileName);
-							featureToFileMap.put(featureName, fileName);
-						}
-						if (firstColumn) firstColumn = false;
+					if (cursor.ref!=null && cursor.ref.equals(ref)) {
+						// rows for excluded outcomes are simply skipped
+						if (event!=null)
+							cursor.addFeatures(event);
+						cursor.nextRow();
 					}
-					
-					firstLine = false;
-				} else {
-					boolean firstCell = true;
-					GenericEvent event = null;
-					int i = 0;
-					for (String cell : cells) {
-						if (firstCell) {
-							String ref = cell;
-							
-							if (this.eventsToExclude.contains(ref)) {
-								// skip this whole line
-								break;
-							}
-							event = currentEventMap.get(ref);
-							if (event == null) {
-								if (resultFilePath!=null) {
-									if (skipUnknownEvents) {
-										// unknown ID: skip this whole line
-										break;
-									} else {
-										throw new RuntimeException(
-											"ID not found in result file: " + cell);
-									}
-								} else {
-									event = new GenericEvent(ref);
-									event.setTest(true);
-									currentEventMap.put(ref, event);
-								}
-							}
-							firstCell = false;
-						} else {
-							// weight cell
-							if (i>featureNames.size()-1)
-								throw new RuntimeException("File: " + fileName + ". Too many cells on row: " + row);
-							String featureName = featureNames.get(i);
-							if (this.featuresToInclude!=null && !this.featuresToInclude.contains(featureName)) {
-								i++;
-								continue;
-							}
-							float weight = 0;
-							try {
-								weight = Float.parseFloat(cell);
-							} catch (NumberFormatException nfe) {
-								// skip empty cells
-								if (cell.length() > 0) {
-									featureName += CSVLearner.NOMINAL_MARKER + cell;
-									weight = 1;
-								}
-							}
-							FeatureStats featureStats = this.featureStatsMap.get(featureName);
-							if (featureStats==null)
-							{
-								featureStats = new FeatureStats();
-								this.featureStatsMap.put(featureName, featureStats);
-							}
-							
-							// skip cells with an explicit weight of zero
-							if (weight > 0) {
-								event.addFeature(featureName, weight);
-
-								if (weight > featureStats.max)
-									featureStats.max = weight;
-								featureStats.count = featureStats.count + 1;
-								featureStats.total = featureStats.total + weight;
-							}
-						} // type of cell
-						i++;
-					} // next cell
-				} // first line?
+				}
+				
+				if (event!=null) {
+					event.trimToSize();
+					return event;
+				}
+			}
+			
+			// any remaining feature rows have IDs beyond the last ID in the result file
+			for (SortedFeatureFileCursor cursor : cursors) {
+				while (cursor.ref!=null)
+					this.skipUnknownEvent(cursor);
+			}
+			this.close();
+			return null;
+		}
+		
+		private void skipUnknownEvent(SortedFeatureFileCursor cursor) throws IOException {
+			if (!skipUnknownEvents)
+				throw new RuntimeException("ID not found in result file: " + cursor.ref);
+			cursor.nextRow();
+		}
+		
+		/**
+		 * Close all of the files read by this iterator.
+		 */
+		public void close() {
+			finished = true;
+			nextEvent = null;
+			try {
+				if (resultReader!=null)
+					resultReader.close();
+				for (SortedFeatureFileCursor cursor : cursors)
+					cursor.close();
+				for (ZipFile zipFile : zipFiles)
+					zipFile.close();
+			} catch (IOException ioe) {
+				LogUtils.logError(LOG, ioe);
+				throw new RuntimeException(ioe);
+			} finally {
+				resultReader = null;
+				cursors.clear();
+				zipFiles.clear();
+			}
+		}
+	}
+	
+	/**
+	 * A position in a feature file whose rows are sorted by ID,
+	 * holding the parsed cells of the current row.
+	 */
+	private final class SortedFeatureFileCursor {
+		private String fileName;
+		private CSVCellReader cellReader;
+		private List<String> featureNames;
+		private FeatureCells cells = new FeatureCells();
+		private String ref = null;
+		private int row = 1;
+		
+		public SortedFeatureFileCursor(String fileName, CSVCellReader cellReader) throws IOException {
+			this.fileName = fileName;
+			this.cellReader = cellReader;
+			if (cellReader.nextRow()) {
+				featureNames = readFeatureNames(cellReader);
+				this.nextRow();
+			}
+		}
+		
+		/**
+		 * Move on to the next row, setting ref to null at the end of the file.
+		 */
+		public void nextRow() throws IOException {
+			String previousRef = ref;
+			ref = null;
+			while (cellReader.nextRow()) {
 				row++;
-			} // next line
-		} finally {
-			if (closeStreamer)
-				scanner.close();
+				if (cellReader.nextCell()) {
+					ref = cellReader.getCell();
+					if (previousRef!=null && ref.compareTo(previousRef)<=0)
+						throw new RuntimeException("File: " + fileName + " not sorted by ID: " + ref + " follows " + previousRef + " on row " + row);
+					readFeatureCells(cellReader, fileName, row, featureNames, cells);
+					break;
+				}
+			}
+		}
+		
+		/**
+		 * Add the features of the current row to an event, exactly as read() would.
+		 */
+		public void addFeatures(GenericEvent event) {
+			ROWS.increment();
+			FEATURES_PER_ROW.record(cells.cellCount);
+			for (int j=0; j<cells.cellCount; j++) {
+				// skip cells with an explicit weight of zero
+				if (cells.weights[j] > 0) {
+					String featureName = featureNames.get(cells.columns[j]);
+					if (cells.nominalValues[j]!=null)
+						featureName += CSVLearner.NOMINAL_MARKER + cells.nominalValues[j];
+					event.addFeature(featureName, cells.weights[j]);
+				}
+			}
+		}
+		
+		public void close() throws IOException {
+			cellReader.close();
+		}
+	}
+	
+	/**
+	 * Receives the contents of a CSV feature file as it gets parsed.
+	 */
+	private interface FeatureRowHandler {
+		/**
+		 * The feature names in the header row, including the identifier column.
+		 */
+		public void onHeader(List<String> featureNames);
+		
+		/**
+		 * A single row to be added to the events.
+		 * Each cell gives the column of its feature, its weight,
+		 * and its nominal value (or null for numeric or empty cells).
+		 * The arrays are re-used from one row to the next.
+		 */
+		public void onRow(String ref, int cellCount, int[] columns, float[] weights, String[] nominalValues);
+	}
+	
+	/**
+	 * Adds the contents of a CSV feature file to the event map and feature statistics.
+	 */
+	private final class FeatureRowMerger implements FeatureRowHandler {
+		private String fileName;
+		private boolean grouped;
+		private Map<String,GenericEvent> currentEventMap;
+		private Set<String> featureSet;
+		private List<String> featureNames;
+		
+		public FeatureRowMerger(String fileName, boolean grouped, Map<String,GenericEvent> currentEventMap) {
+			this.fileName = fileName;
+			this.grouped = grouped;
+			this.currentEventMap = currentEventMap;
+			
+			if (grouped)
+				groupedFiles.add(fileName);
+			
+			featureSet = fileToFeatureMap.get(fileName);
+			if (featureSet==null) {
+				featureSet = new TreeSet<String>();
+				fileToFeatureMap.put(fileName, featureSet);
+			}
+		}
+		
+		@Override
+		public void onHeader(List<String> featureNames) {
+			this.featureNames = featureNames;
+			boolean firstColumn = true;
+			for (String featureName : featureNames) {
+				if (!firstColumn) {
+					features.add(featureName);
+					featureSet.add(featureName);
+					if (grouped)
+						groupedFeatures.put(featureName, fileName);
+					featureToFileMap.put(featureName, fileName);
+				}
+				if (firstColumn) firstColumn = false;
+			}
+		}
+
+		@Override
+		public void onRow(String ref, int cellCount, int[] columns, float[] weights, String[] nominalValues) {
+			// rows are counted here rather than when parsed, so as to include rows replayed from buffers or artefacts
+			ROWS.increment();
+			FEATURES_PER_ROW.record(cellCount);
+			if (eventCacheDirPath!=null) {
+				if (cellCount>=rowsPerFeatureCount.length)
+					rowsPerFeatureCount = Arrays.copyOf(rowsPerFeatureCount, cellCount + 1);
+				rowsPerFeatureCount[cellCount]++;
+			}
+			GenericEvent event = currentEventMap.get(ref);
+			if (event == null) {
+				GenericEvent masterEvent = currentEventMap==eventMap ? null : eventMap.get(ref);
+				if (masterEvent!=null) {
+					event = new FileEventView(masterEvent);
+				} else {
+					event = new GenericEvent(ref);
+					event.setTest(true);
+				}
+				currentEventMap.put(ref, event);
+			}
+			for (int j=0; j<cellCount; j++) {
+				String featureName = featureNames.get(columns[j]);
+				if (nominalValues[j]!=null)
+					featureName += CSVLearner.NOMINAL_MARKER + nominalValues[j];
+				float weight = weights[j];
+				FeatureStats featureStats = featureStatsMap.get(featureName);
+				if (featureStats==null)
+				{
+					featureStats = new FeatureStats();
+					featureStatsMap.put(featureName, featureStats);
+				}
+				
+				// skip cells with an explicit weight of zero
+				if (weight > 0) {
+					event.addFeature(featureName, weight);
+
+					if (weight > featureStats.max)
+						featureStats.max = weight;
+					featureStats.count = featureStats.count + 1;
+					featureStats.total = featureStats.total + weight;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Skips the rows of excluded or unknown events before passing them on to another handler,
+	 * for contents which were parsed without filtering rows.
+	 */
+	private final class FeatureRowFilter implements FeatureRowHandler {
+		private FeatureRowHandler handler;
+		
+		public FeatureRowFilter(FeatureRowHandler handler) {
+			this.handler = handler;
+		}
+		
+		@Override
+		public void onHeader(List<String> featureNames) {
+			handler.onHeader(featureNames);
+		}
+		
+		@Override
+		public void onRow(String ref, int cellCount, int[] columns, float[] weights, String[] nominalValues) {
+			if (!isSkippedRow(ref))
+				handler.onRow(ref, cellCount, columns, weights, nominalValues);
+		}
+	}
+	
+	/**
+	 * Holds the parsed contents of a CSV feature file in memory,
+	 * so that they can be added to the event map later.
+	 */
+	private static final class FeatureRowBuffer implements FeatureRowHandler {
+		private List<String> featureNames;
+		private List<String> refs = new ArrayList<String>();
+		private int[] rowEnds = new int[1024];
+		private int[] columns = new int[1024];
+		private float[] weights = new float[1024];
+		private String[] nominalValues = new String[1024];
+		private int cellCount = 0;
+		
+		@Override
+		public void onHeader(List<String> featureNames) {
+			this.featureNames = featureNames;
+		}
+		
+		@Override
+		public void onRow(String ref, int rowCellCount, int[] rowColumns, float[] rowWeights, String[] rowNominalValues) {
+			if (cellCount + rowCellCount > columns.length) {
+				int newLength = Math.max(columns.length * 2, cellCount + rowCellCount);
+				columns = Arrays.copyOf(columns, newLength);
+				weights = Arrays.copyOf(weights, newLength);
+				nominalValues = Arrays.copyOf(nominalValues, newLength);
+			}
+			System.arraycopy(rowColumns, 0, columns, cellCount, rowCellCount);
+			System.arraycopy(rowWeights, 0, weights, cellCount, rowCellCount);
+			System.arraycopy(rowNominalValues, 0, nominalValues, cellCount, rowCellCount);
+			cellCount += rowCellCount;
+			
+			if (refs.size()==rowEnds.length)
+				rowEnds = Arrays.copyOf(rowEnds, rowEnds.length * 2);
+			rowEnds[refs.size()] = cellCount;
+			refs.add(ref);
+		}
+		
+		/**
+		 * Pass the buffered contents on to another handler, in the order in which they were read.
+		 */
+		public void replay(FeatureRowHandler handler) {
+			if (featureNames==null)
+				return;
+			handler.onHeader(featureNames);
+			int rowStart = 0;
+			int[] rowColumns = new int[64];
+			float[] rowWeights = new float[64];
+			String[] rowNominalValues = new String[64];
+			for (int i=0; i<refs.size(); i++) {
+				int rowCellCount = rowEnds[i] - rowStart;
+				if (rowCellCount > rowColumns.length) {
+					rowColumns = new int[rowCellCount];
+					rowWeights = new float[rowCellCount];
+					rowNominalValues = new String[rowCellCount];
+				}
+				System.arraycopy(columns, rowStart, rowColumns, 0, rowCellCount);
+				System.arraycopy(weights, rowStart, rowWeights, 0, rowCellCount);
+				System.arraycopy(nominalValues, rowStart, rowNominalValues, 0, rowCellCount);
+				handler.onRow(refs.get(i), rowCellCount, rowColumns, rowWeights, rowNominalValues);
+				rowStart = rowEnds[i];
+			}
 		}
 	}
 
 
 
+	/**
+	 * Whether feature files are read incrementally, via a per-file artefact in the event cache directory.
+	 */
+	private boolean isIncremental() {
+		return incrementalRead && eventCacheDirPath!=null;
+	}
+	
+	/**
+	 * The parsed contents of a feature file, read from its artefact in the event cache directory
+	 * if the file hasn't changed since the artefact was written, or else parsed and written to a new artefact.
+	 * Rows aren't filtered, so that the artefact remains valid when the result file or outcome filters change:
+	 * the contents should be replayed through a FeatureRowFilter.
+	 * Can safely be called concurrently for different files.
+	 */
+	private List<FeatureRowBuffer> readFeatureFileArtefact(File file) throws IOException {
+		String signature = "featureFile=" + file.getAbsolutePath()
+			+ "|includedFeatures=" + (featuresToInclude==null ? "" : featuresToInclude.toString());
+		List<File> sourceFiles = new ArrayList<File>();
+		sourceFiles.add(file);
+		EventCacheFile artefact = new EventCacheFile(new File(eventCacheDirPath), "file", signature, sourceFiles);
+		artefact.setKnownHashes(sourceHashes);
+		if (artefact.openForReading()) {
+			LOG.debug("Reading artefact " + artefact.getFile().getName() + " for " + file.getName());
+			try {
+				return this.readFeatureRowBuffers(artefact);
+			} finally {
+				artefact.close();
+			}
+		}
+		
+		LOG.debug("Parsing new or changed file " + file.getName());
+		List<FeatureRowBuffer> buffers = new ArrayList<FeatureRowBuffer>();
+		this.scanFeatureFile(file, false, null, buffers, false);
+		artefact.openForWriting();
+		boolean written = false;
+		try {
+			this.writeFeatureRowBuffers(artefact, buffers);
+			written = true;
+		} finally {
+			if (written)
+				artefact.close();
+			else
+				artefact.abort();
+		}
+		return buffers;
+	}
+	
+	private void writeFeatureRowBuffers(EventCacheFile artefact, List<FeatureRowBuffer> buffers) throws IOException {
+		artefact.writeInt(buffers.size());
+		for (FeatureRowBuffer buffer : buffers) {
+			if (buffer.featureNames==null) {
+				artefact.writeInt(-1);
+				continue;
+			}
+			artefact.writeStrings(buffer.featureNames);
+			int rowCount = buffer.refs.size();
+			artefact.writeInt(rowCount);
+			for (String ref : buffer.refs)
+				artefact.writeString(ref);
+			for (int i=0; i<rowCount; i++)
+				artefact.writeInt(buffer.rowEnds[i]);
+			artefact.writeInt(buffer.cellCount);
+			for (int i=0; i<buffer.cellCount; i++)
+				artefact.writeInt(buffer.columns[i]);
+			for (int i=0; i<buffer.cellCount; i++)
+				artefact.writeFloat(buffer.weights[i]);
+			int nominalCount = 0;
+			for (int i=0; i<buffer.cellCount; i++)
+				if (buffer.nominalValues[i]!=null)
+					nominalCount++;
+			artefact.writeInt(nominalCount);
+			for (int i=0; i<buffer.cellCount; i++) {
+				if (buffer.nominalValues[i]!=null) {
+					artefact.writeInt(i);
+					artefact.writeString(buffer.nominalValues[i]);
+				}
+			}
+		}
+	}
+	
+	private List<FeatureRowBuffer> readFeatureRowBuffers(EventCacheFile artefact) throws IOException {
+		int bufferCount = artefact.readInt();
+		List<FeatureRowBuffer> buffers = new ArrayList<FeatureRowBuffer>(bufferCount);
+		for (int b=0; b<bufferCount; b++) {
+			FeatureRowBuffer buffer = new FeatureRowBuffer();
+			buffers.add(buffer);
+			int featureNameCount = artefact.readInt();
+			if (featureNameCount<0)
+				continue;
+			buffer.featureNames = new ArrayList<String>(featureNameCount);
+			for (int i=0; i<featureNameCount; i++)
+				buffer.featureNames.add(artefact.readString());
+			int rowCount = artefact.readInt();
+			buffer.refs = new ArrayList<String>(rowCount);
+			for (int i=0; i<rowCount; i++)
+				buffer.refs.add(artefact.readString());
+			buffer.rowEnds = artefact.readInts(rowCount);
+			buffer.cellCount = artefact.readInt();
+			buffer.columns = artefact.readInts(buffer.cellCount);
+			buffer.weights = artefact.readFloats(buffer.cellCount);
+			buffer.nominalValues = new String[buffer.cellCount];
+			int nominalCount = artefact.readInt();
+			for (int i=0; i<nominalCount; i++) {
+				int cell = artefact.readInt();
+				buffer.nominalValues[cell] = artefact.readString();
+			}
+		}
+		return buffers;
+	}
+	
+	/**
+	 * A description of the options which affect the contents read, used to check that a cache
+	 * was written with the same options. Test flags aren't included, as they are recalculated when loading.
+	 */
+	private String getEventCacheSignature() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("resultFile=").append(resultFilePath==null ? "" : new File(resultFilePath).getAbsolutePath());
+		sb.append("|featureDir=").append(new File(featureDirPath).getAbsolutePath());
+		sb.append("|groupedFeatureDir=").append(groupedFeatureDirPath==null ? "" : new File(groupedFeatureDirPath).getAbsolutePath());
+		sb.append("|includedOutcomes=").append(includedOutcomes==null ? "" : new TreeSet<String>(includedOutcomes).toString());
+		sb.append("|excludedOutcomes=").append(excludedOutcomes==null ? "" : new TreeSet<String>(excludedOutcomes).toString());
+		sb.append("|includedFeatures=").append(featuresToInclude==null ? "" : featuresToInclude.toString());
+		sb.append("|skipUnknownEvents=").append(skipUnknownEvents);
+		sb.append("|splitEventsByFile=").append(splitEventsByFile);
+		return sb.toString();
+	}
+	
+	/**
+	 * All of the files read by read(), in the order in which they're read.
+	 */
+	private List<File> getSourceFiles() {
+		List<File> sourceFiles = new ArrayList<File>();
+		if (resultFilePath!=null)
+			sourceFiles.add(new File(resultFilePath));
+		this.findFeatureFiles(new File(featureDirPath), sourceFiles);
+		if (groupedFeatureDirPath!=null)
+			this.findFeatureFiles(new File(groupedFeatureDirPath), sourceFiles);
+		return sourceFiles;
+	}
+	
+	/**
+	 * Write the contents read to an event cache: the feature dictionary (so that feature ids are identical when loaded),
+	 * the events in CSR layout, the events per file if split, and the feature and file maps and statistics.
+	 * The events from the result file are written in result file order, so that their test flags can be recalculated.
+	 */
+	private void writeEventCache(EventCacheFile cacheFile) throws IOException {
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		int dictionarySize = dictionary.size();
+		cacheFile.writeInt(dictionarySize);
+		for (int i=0; i<dictionarySize; i++)
+			cacheFile.writeString(dictionary.getName(i));
+		
+		cacheFile.writeStrings(outcomes);
+		
+		List<GenericEvent> masterEvents = null;
+		if (resultFilePath!=null)
+			masterEvents = resultEvents;
+		else
+			masterEvents = new ArrayList<GenericEvent>(eventMap.values());
+		cacheFile.writeInt(resultEvents.size());
+		this.writeEvents(cacheFile, masterEvents, null);
+		
+		if (eventFileMap==null) {
+			cacheFile.writeInt(-1);
+		} else {
+			Map<GenericEvent,Integer> masterIndexes = new IdentityHashMap<GenericEvent, Integer>();
+			for (int i=0; i<masterEvents.size(); i++)
+				masterIndexes.put(masterEvents.get(i), i);
+			cacheFile.writeInt(eventFileMap.size());
+			for (Entry<String, Map<String,GenericEvent>> entry : eventFileMap.entrySet()) {
+				cacheFile.writeString(entry.getKey());
+				this.writeEvents(cacheFile, new ArrayList<GenericEvent>(entry.getValue().values()), masterIndexes);
+			}
+		}
+		
+		cacheFile.writeStrings(features);
+		cacheFile.writeInt(fileToFeatureMap.size());
+		for (Entry<String, Set<String>> entry : fileToFeatureMap.entrySet()) {
+			cacheFile.writeString(entry.getKey());
+			cacheFile.writeStrings(entry.getValue());
+		}
+		cacheFile.writeStrings(featureToFileMap.keySet());
+		cacheFile.writeStrings(featureToFileMap.values());
+		cacheFile.writeStrings(groupedFiles);
+		cacheFile.writeStrings(groupedFeatures.keySet());
+		cacheFile.writeStrings(groupedFeatures.values());
+		cacheFile.writeStrings(featureStatsMap.keySet());
+		for (FeatureStats featureStats : featureStatsMap.values()) {
+			cacheFile.writeFloat(featureStats.max);
+			cacheFile.writeFloat(featureStats.total);
+			cacheFile.writeInt(featureStats.count);
+		}
+		
+		cacheFile.writeInt(rowsPerFeatureCount.length);
+		for (long rowCount : rowsPerFeatureCount)
+			cacheFile.writeLong(rowCount);
+	}
+	
+	/**
+	 * Write a list of events. If masterIndexes is provided, events which are views of a master event
+	 * are written as the index of their master event, and all others as their identifier.
+	 */
+	private void writeEvents(EventCacheFile cacheFile, List<GenericEvent> eventList, Map<GenericEvent,Integer> masterIndexes) throws IOException {
+		cacheFile.writeInt(eventList.size());
+		if (masterIndexes==null) {
+			Map<String,Integer> outcomeIndexes = new HashMap<String, Integer>();
+			List<String> eventOutcomes = new ArrayList<String>();
+			for (GenericEvent event : eventList) {
+				if (!outcomeIndexes.containsKey(event.getOutcome())) {
+					outcomeIndexes.put(event.getOutcome(), eventOutcomes.size());
+					eventOutcomes.add(event.getOutcome());
+				}
+			}
+			cacheFile.writeStrings(eventOutcomes);
+			for (GenericEvent event : eventList) {
+				cacheFile.writeString(event.getIdentifier());
+				cacheFile.writeInt(outcomeIndexes.get(event.getOutcome()));
+			}
+		} else {
+			for (GenericEvent event : eventList) {
+				if (event instanceof FileEventView) {
+					cacheFile.writeInt(masterIndexes.get(((FileEventView) event).getMasterEvent()));
+				} else {
+					cacheFile.writeInt(-1);
+					cacheFile.writeString(event.getIdentifier());
+				}
+			}
+		}
+		
+		// the features, in CSR layout
+		for (GenericEvent event : eventList)
+			cacheFile.writeInt(event.getFeatureCount());
+		for (GenericEvent event : eventList)
+			for (int i=0; i<event.getFeatureCount(); i++)
+				cacheFile.writeInt(event.getFeatureId(i));
+		for (GenericEvent event : eventList)
+			for (int i=0; i<event.getFeatureCount(); i++)
+				cacheFile.writeFloat(event.getWeight(i));
+	}
+	
+	/**
+	 * Load the contents written by writeEventCache, recalculating the test flags for the current options.
+	 */
+	private void readEventCache(EventCacheFile cacheFile) throws IOException {
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		int dictionarySize = cacheFile.readInt();
+		int[] featureIds = new int[dictionarySize];
+		for (int i=0; i<dictionarySize; i++)
+			featureIds[i] = dictionary.getId(cacheFile.readString());
+		
+		outcomes.addAll(cacheFile.readStrings());
+		
+		int resultEventCount = cacheFile.readInt();
+		List<GenericEvent> masterEvents = this.readEvents(cacheFile, featureIds, null);
+		for (int i=0; i<masterEvents.size(); i++) {
+			GenericEvent event = masterEvents.get(i);
+			event.setTest(i<resultEventCount ? this.isTestEvent(event.getIdentifier(), i) : true);
+			eventMap.put(event.getIdentifier(), event);
+			if (i<resultEventCount)
+				resultEvents.add(event);
+		}
+		
+		int fileCount = cacheFile.readInt();
+		if (fileCount>=0) {
+			eventFileMap = new TreeMap<String, Map<String,GenericEvent>>();
+			for (int f=0; f<fileCount; f++) {
+				String fileName = cacheFile.readString();
+				Map<String,GenericEvent> fileEventMap = new TreeMap<String, GenericEvent>();
+				for (GenericEvent event : this.readEvents(cacheFile, featureIds, masterEvents))
+					fileEventMap.put(event.getIdentifier(), event);
+				eventFileMap.put(fileName, fileEventMap);
+			}
+		}
+		
+		features.addAll(cacheFile.readStrings());
+		int fileToFeatureCount = cacheFile.readInt();
+		for (int f=0; f<fileToFeatureCount; f++) {
+			String fileName = cacheFile.readString();
+			fileToFeatureMap.put(fileName, new TreeSet<String>(cacheFile.readStrings()));
+		}
+		this.readMap(cacheFile, featureToFileMap);
+		groupedFiles.addAll(cacheFile.readStrings());
+		this.readMap(cacheFile, groupedFeatures);
+		for (String featureName : cacheFile.readStrings()) {
+			FeatureStats featureStats = new FeatureStats();
+			featureStats.max = cacheFile.readFloat();
+			featureStats.total = cacheFile.readFloat();
+			featureStats.count = cacheFile.readInt();
+			featureStatsMap.put(featureName, featureStats);
+		}
+		
+		// restore the row metrics, as if the rows had been read again
+		int featureCountLimit = cacheFile.readInt();
+		for (int cellCount=0; cellCount<featureCountLimit; cellCount++) {
+			long rowCount = cacheFile.readLong();
+			ROWS.add(rowCount);
+			FEATURES_PER_ROW.record(cellCount, rowCount);
+		}
+	}
+	
+	private void readMap(EventCacheFile cacheFile, Map<String,String> map) throws IOException {
+		List<String> keys = cacheFile.readStrings();
+		List<String> values = cacheFile.readStrings();
+		for (int i=0; i<keys.size(); i++)
+			map.put(keys.get(i), values.get(i));
+	}
+	
+	/**
+	 * Read a list of events written by writeEvents, mapping the cached feature ids to the current FeatureDictionary.
+	 */
+	private List<GenericEvent> readEvents(EventCacheFile cacheFile, int[] featureIds, List<GenericEvent> masterEvents) throws IOException {
+		int eventCount = cacheFile.readInt();
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>(eventCount);
+		if (masterEvents==null) {
+			List<String> eventOutcomes = cacheFile.readStrings();
+			for (int i=0; i<eventCount; i++) {
+				GenericEvent event = new GenericEvent(cacheFile.readString());
+				event.setOutcome(eventOutcomes.get(cacheFile.readInt()));
+				eventList.add(event);
+			}
+		} else {
+			for (int i=0; i<eventCount; i++) {
+				int masterIndex = cacheFile.readInt();
+				if (masterIndex>=0) {
+					eventList.add(new FileEventView(masterEvents.get(masterIndex)));
+				} else {
+					GenericEvent event = new GenericEvent(cacheFile.readString());
+					event.setTest(true);
+					eventList.add(event);
+				}
+			}
+		}
+		
+		int[] featureCounts = cacheFile.readInts(eventCount);
+		int valueCount = 0;
+		for (int featureCount : featureCounts)
+			valueCount += featureCount;
+		int[] eventFeatureIds = cacheFile.readInts(valueCount);
+		float[] weights = cacheFile.readFloats(valueCount);
+		int j = 0;
+		for (int i=0; i<eventCount; i++) {
+			GenericEvent event = eventList.get(i);
+			for (int k=0; k<featureCounts[i]; k++) {
+				event.addFeature(featureIds[eventFeatureIds[j]], weights[j]);
+				j++;
+			}
+			event.trimToSize();
+		}
+		return eventList;
+	}
+
 	/**
 	 * A CSV file giving correct result for each event. The top row is ignored.
 	 * Each other row contains the unique event id on the left column, and the
@@ -514,13 +1507,33 @@ public class CSVEventListReader {
 	
 	/**
 	 * The events found by this reader in each separate file.
+	 * If there is a result file, each file's events include every event in the result file:
+	 * events without a row in a given file have no features, and are shared by all such files.
 	 * @return
 	 */
 	public Map<String, GenericEvents> getEventsPerFile() {
 		if (eventsPerFile == null) {
 			eventsPerFile = new TreeMap<String, GenericEvents>();
+			List<GenericEvent> masterEvents = new ArrayList<GenericEvent>(eventMap.values());
+			GenericEvent[] emptyEvents = new GenericEvent[masterEvents.size()];
 			for (Entry<String, Map<String,GenericEvent>> entry : eventFileMap.entrySet()) {
-				eventsPerFile.put(entry.getKey(), new GenericEvents(entry.getValue().values()));
+				Map<String,GenericEvent> fileEventMap = entry.getValue();
+				if (masterEvents.isEmpty()) {
+					eventsPerFile.put(entry.getKey(), new GenericEvents(fileEventMap.values()));
+				} else {
+					List<GenericEvent> fileEvents = new ArrayList<GenericEvent>(masterEvents.size());
+					for (int i=0; i<emptyEvents.length; i++) {
+						GenericEvent masterEvent = masterEvents.get(i);
+						GenericEvent fileEvent = fileEventMap.get(masterEvent.getIdentifier());
+						if (fileEvent==null) {
+							if (emptyEvents[i]==null)
+								emptyEvents[i] = new FileEventView(masterEvent);
+							fileEvent = emptyEvents[i];
+						}
+						fileEvents.add(fileEvent);
+					}
+					eventsPerFile.put(entry.getKey(), new GenericEvents(fileEvents));
+				}
 			}
 		}
 		return eventsPerFile;
@@ -638,6 +1651,50 @@ public class CSVEventListReader {
 		this.testIds = testIds;
 	}
 
+	/**
+	 * The number of threads used to parse feature files concurrently.
+	 * The resulting events are identical regardless of the thread count. Default: 1.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * If provided, a directory in which the contents read are cached in a binary format,
+	 * so that the next read of the same files with the same options doesn't need to parse the CSV files again.
+	 * The cache is re-written whenever any of the files read has changed since it was written.
+	 * Should not be inside the feature directories. Default: null (no cache).
+	 * @return
+	 */
+	public String getEventCacheDirPath() {
+		return eventCacheDirPath;
+	}
+
+	public void setEventCacheDirPath(String eventCacheDirPath) {
+		this.eventCacheDirPath = eventCacheDirPath;
+	}
+
+	/**
+	 * If true, and an event cache directory has been provided, each feature file's parsed contents
+	 * are stored in a separate artefact in the cache directory, along with the file's fingerprint.
+	 * When the events need to be read again (because the complete event cache is stale),
+	 * only the files whose fingerprint has changed are parsed again, and the others are merged from their artefacts.
+	 * The resulting events and feature statistics are identical to a full read. Default: false.
+	 * @return
+	 */
+	public boolean isIncrementalRead() {
+		return incrementalRead;
+	}
+
+	public void setIncrementalRead(boolean incrementalRead) {
+		this.incrementalRead = incrementalRead;
+	}
+
 
 
 
@@ -24,6 +24,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.zip.ZipEntry;
@@ -71,23 +73,13 @@ public class CSVEventListWriter {
 				} else {
 					writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false),"UTF8"));
 				}
-				Set<String> features = new TreeSet<String>();
+				Collection<String> features = null;
 				if (!filePerEvent) {
 					if (isZip) {
 						zos.putNextEntry(new ZipEntry(file.getName().substring(0,file.getName().lastIndexOf('.'))+".csv"));
 					}
 
-					for (GenericEvent event: events) {
-						if (LOG.isTraceEnabled())
-							LOG.trace("Writing event: " + event.getIdentifier());
-						for (String feature : event.getFeatures()) {
-							int classIndex = feature.indexOf(CSVLearner.NOMINAL_MARKER);
-							if (classIndex<0||denominalise)
-								features.add(feature);
-							else
-								features.add(feature.substring(0, classIndex));
-						}
-					}
+					features = this.getColumns(events.getVocabulary());
 
 					writer.append("ID,");
 	
@@ -102,15 +94,18 @@ public class CSVEventListWriter {
 				}
 				
 				for (GenericEvent event : events) {
+					if (LOG.isTraceEnabled())
+						LOG.trace("Writing event: " + event.getIdentifier());
 					if (filePerEvent) {
-						features = new TreeSet<String>();
+						Set<String> eventFeatures = new TreeSet<String>();
 						for (String feature : event.getFeatures()) {
 							int classIndex = feature.indexOf(CSVLearner.NOMINAL_MARKER);
 							if (classIndex<0||denominalise)
-								features.add(feature);
+								eventFeatures.add(feature);
 							else
-								features.add(feature.substring(0, classIndex));
+								eventFeatures.add(feature.substring(0, classIndex));
 						}
+						features = eventFeatures;
 						
 						if (isZip)
 							zos.putNextEntry(new ZipEntry(event.getIdentifier()+".csv"));
@@ -130,19 +125,18 @@ public class CSVEventListWriter {
 						writer.append(CSVFormatter.format(event.getOutcome())+ ",");
 					
 					for (String feature : features) {
-						Integer featureIndexObj = event.getFeatureIndex(feature);
-						int featureIndex = featureIndexObj==null ? -1 : featureIndexObj.intValue();
+						int featureIndex = event.getFeatureIndex(feature);
 
 						if (featureIndex<0) {
 							writer.append(missingValueString + ",");
 						} else {
-							String eventFeature = event.getFeatures().get(featureIndex);
+							String eventFeature = event.getFeature(featureIndex);
 							if (!eventFeature.equals(feature)) {
 								int classIndex = eventFeature.indexOf(CSVLearner.NOMINAL_MARKER);
 								String clazz = eventFeature.substring(classIndex+CSVLearner.NOMINAL_MARKER.length());
 								writer.append(CSVFormatter.format(clazz)+",");
 							} else {
-								double value = event.getWeights().get(featureIndex);
+								double value = event.getWeight(featureIndex);
 								writer.append(CSVFormatter.format(value)+",");
 							}
 						}
@@ -169,6 +163,30 @@ public class CSVEventListWriter {
 		}
 	}
 
+	/**
+	 * The sorted column names for the events' vocabulary, in which nominal features
+	 * are replaced by their base feature name, unless denominalise is true.
+	 */
+	private Collection<String> getColumns(EventVocabulary vocabulary) {
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		int[] featureIds = vocabulary.getFeatureIds();
+		String[] featureNames = vocabulary.getFeatureNames();
+		if (!denominalise) {
+			for (int featureId : featureIds) {
+				if (dictionary.getBaseId(featureId)>=0) {
+					// base names may sort differently from the nominal features they replace
+					Set<String> columns = new TreeSet<String>();
+					for (int i=0; i<featureIds.length; i++) {
+						int baseId = dictionary.getBaseId(featureIds[i]);
+						columns.add(baseId<0 ? featureNames[i] : dictionary.getName(baseId));
+					}
+					return columns;
+				}
+			}
+		}
+		return Arrays.asList(featureNames);
+	}
+
 	/**
 	 * If true, when writing to a file with an extension of ".zip", will create a separate
 	 * csv file zip-entry for each event, instead of one single csv file zip-entry for all the events.
@@ -28,18 +28,26 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 import java.util.Set;
+import java.util.Stack;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.ArrayList;
@@ -50,6 +58,9 @@ import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import com.joliciel.csvLearner.CSVEventListReader.TrainingSetType;
 import com.joliciel.csvLearner.features.BestFeatureFinder;
 import com.joliciel.csvLearner.features.FayyadIraniSplitter;
+import com.joliciel.csvLearner.features.FeatureColumns;
+import com.joliciel.csvLearner.features.FeatureDiscreteLimitApplier;
+import com.joliciel.csvLearner.features.FeatureDiscreteLimitReader;
 import com.joliciel.csvLearner.features.FeatureDiscreteLimitWriter;
 import com.joliciel.csvLearner.features.FeatureEntropyWriter;
 import com.joliciel.csvLearner.features.FeatureSplitter;
@@ -73,7 +84,10 @@ import com.joliciel.csvLearner.maxent.MaxentOutcomeXmlWriter;
 import com.joliciel.csvLearner.maxent.MaxentTrainer;
 import com.joliciel.csvLearner.utils.CSVFormatter;
 import com.joliciel.csvLearner.utils.FScoreCalculator;
+import com.joliciel.csvLearner.utils.CSVMetricsReporter;
+import com.joliciel.csvLearner.utils.LogMetricsReporter;
 import com.joliciel.csvLearner.utils.LogUtils;
+import com.joliciel.csvLearner.utils.Metrics;
 
 import opennlp.model.MaxentModel;
 
@@ -130,6 +144,17 @@ public class CSVLearner {
 	String testIdFilePath = null;
 	boolean denominalise = false;
 	boolean balanceOutcomes = false;
+	int readerThreads = 1;
+	int crossValidationThreads = 1;
+	int trainerThreads = 1;
+	boolean streamEvents = false;
+	int analyserThreads = 1;
+	String eventCacheDir = null;
+	boolean incrementalRead = false;
+	int evaluatorThreads = 1;
+	boolean metrics = false;
+	String metricsFilePath = null;
+	String discreteLimitsPath = null;
 	
 	public static final String NOMINAL_MARKER = ":::";
 	
@@ -278,6 +303,29 @@ public class CSVLearner {
 				balanceOutcomes = argValue.equals("true");
 			} else if (argName.equals("testIdFile")) {
 				testIdFilePath = argValue;
+			} else if (argName.equals("readerThreads")) {
+				readerThreads = Integer.parseInt(argValue);
+			} else if (argName.equals("crossValidationThreads")) {
+				crossValidationThreads = Integer.parseInt(argValue);
+			} else if (argName.equals("trainerThreads")) {
+				trainerThreads = Integer.parseInt(argValue);
+			} else if (argName.equals("streamEvents")) {
+				streamEvents = argValue.equals("true");
+			} else if (argName.equals("analyserThreads")) {
+				analyserThreads = Integer.parseInt(argValue);
+			} else if (argName.equals("eventCacheDir")) {
+				eventCacheDir = argValue;
+			} else if (argName.equals("incrementalRead")) {
+				incrementalRead = argValue.equals("true");
+			} else if (argName.equals("evaluatorThreads")) {
+				evaluatorThreads = Integer.parseInt(argValue);
+			} else if (argName.equals("metrics")) {
+				metrics = argValue.equals("true");
+			} else if (argName.equals("metricsFile")) {
+				metricsFilePath = argValue;
+				metrics = true;
+			} else if (argName.equals("discreteLimits")) {
+				discreteLimitsPath = argValue;
 			}
 			else
 				throw new RuntimeException("Unknown argument: " + argName);
@@ -285,6 +333,8 @@ public class CSVLearner {
 
 		if (command==null)
 			throw new RuntimeException("Missing argument: command");
+		if (incrementalRead && eventCacheDir==null)
+			throw new RuntimeException("incrementalRead requires eventCacheDir");
 		
 		if (informationGainThreshold<0 || informationGainThreshold>=1)
 			throw new RuntimeException("informationGainThreshold must be in the range (0,1]: " + informationGainThreshold);		
@@ -294,7 +344,10 @@ public class CSVLearner {
 	 * @param args
 	 */
 	public void run() throws Exception {
-		long startTime = (new Date()).getTime();
+		Metrics.setEnabled(metrics);
+		long startTime = System.nanoTime();
+		Metrics.Timer commandTimer = Metrics.getTimer("command." + command);
+		long startTimeCommand = commandTimer.start();
 		
 		if (command.equals("evaluate")) {
 			this.doCommandEvaluate();
@@ -319,8 +372,16 @@ public class CSVLearner {
 		} else {
 			throw new RuntimeException("Unknown command: " + command);
 		}
-		long endTime = (new Date()).getTime() - startTime;
-		LOG.debug("Total runtime: " + ((double)endTime / 1000) + " seconds");
+		commandTimer.stop(startTimeCommand);
+		long endTime = System.nanoTime() - startTime;
+		LOG.debug("Total runtime: " + ((double)endTime / 1000000000) + " seconds");
+		
+		if (metrics) {
+			String title = "Metrics for command " + command;
+			Metrics.report(title, new LogMetricsReporter(LOG));
+			if (metricsFilePath!=null)
+				Metrics.report(title, new CSVMetricsReporter(new File(metricsFilePath)));
+		}
 	}
 	
 	private void doCommandGenerateCombination() {
@@ -409,50 +470,8 @@ public class CSVLearner {
 			} else {
 				DescriptiveStatistics accuracyStats = new DescriptiveStatistics();
 				Map<String,DescriptiveStatistics[]> outcomeFscoreStats = new TreeMap<String, DescriptiveStatistics[]>();
-				for (int segment = 0; segment<=9; segment++) {
-					outcomeFileWriter.write("Run " + segment + ",\n");
-					fscoreFileWriter.write("Run " + segment + ",\n");
-					if (balanceOutcomes) {
-						for (String outcome : reader.getOutcomes()) {
-							int i = 0;
-							for (GenericEvent event : events) {
-								if (event.getOutcome().equals(outcome)) {
-									boolean test = i % 10 == segment;
-									event.setTest(test);
-									i++;
-								}
-							}		
-						}
-					} else {
-						int i = 0;
-						for (GenericEvent event : events) {
-							boolean test = i % 10 == segment;
-							event.setTest(test);
-							i++;
-						}
-					}
-					
-					MaxentModel maxentModel = this.train(events, null);
-					FScoreCalculator<String> fscoreCalculator = this.evaluate(maxentModel, events, fscoreFileWriter, outcomeFileWriter);
-					
-					accuracyStats.addValue(fscoreCalculator.getTotalFScore());
-					for (String outcome : fscoreCalculator.getOutcomeSet()) {
-						DescriptiveStatistics[] stats = outcomeFscoreStats.get(outcome);
-						if (stats==null) {
-							stats = new DescriptiveStatistics[3];
-							stats[0] = new DescriptiveStatistics();
-							stats[1] = new DescriptiveStatistics();
-							stats[2] = new DescriptiveStatistics();
-							outcomeFscoreStats.put(outcome, stats);
-						}
-						stats[0].addValue(fscoreCalculator.getPrecision(outcome));
-						stats[1].addValue(fscoreCalculator.getRecall(outcome));
-						stats[2].addValue(fscoreCalculator.getFScore(outcome));
-					} // next outcome
-					
-					outcomeFileWriter.write("\n");
-					
-				} // next segment
+				
+				this.crossValidate(events, reader.getOutcomes(), fscoreFileWriter, outcomeFileWriter, accuracyStats, outcomeFscoreStats);
 			
 				fscoreFileWriter.write("outcome,precision avg., precision dev., recall avg., recall dev., f-score avg., f-score dev.,\n");
 				for (String outcome : outcomeFscoreStats.keySet()) {
@@ -482,6 +501,130 @@ public class CSVLearner {
 		LOG.info("#### Complete ####");		
 	}
 	
+	/**
+	 * Train and evaluate each of the ten cross-validation folds, writing the results of each fold
+	 * in segment order, and adding the total f-score and the precision, recall and f-score per outcome
+	 * of each fold to the statistics provided.
+	 */
+	void crossValidate(GenericEvents events, Set<String> outcomes, Writer fscoreFileWriter, Writer outcomeFileWriter,
+			DescriptiveStatistics accuracyStats, Map<String,DescriptiveStatistics[]> outcomeFscoreStats) throws IOException {
+		// each fold gets its own view of the events with a separate test mask, so the events are never modified
+		List<GenericEvents> foldEvents = new ArrayList<GenericEvents>();
+		for (int segment = 0; segment<=9; segment++)
+			foldEvents.add(new GenericEvents(events, this.getCrossValidationTestMask(events, outcomes, segment)));
+		
+		ExecutorService executor = null;
+		List<Future<FScoreCalculator<String>>> futures = null;
+		List<StringWriter> foldFscoreWriters = null;
+		List<StringWriter> foldOutcomeWriters = null;
+		if (crossValidationThreads>1) {
+			LOG.info("Running cross-validation folds using " + crossValidationThreads + " threads");
+			executor = Executors.newFixedThreadPool(crossValidationThreads);
+			futures = new ArrayList<Future<FScoreCalculator<String>>>();
+			foldFscoreWriters = new ArrayList<StringWriter>();
+			foldOutcomeWriters = new ArrayList<StringWriter>();
+			for (int segment = 0; segment<=9; segment++) {
+				final GenericEvents fold = foldEvents.get(segment);
+				final StringWriter foldFscoreWriter = new StringWriter();
+				final StringWriter foldOutcomeWriter = new StringWriter();
+				foldFscoreWriters.add(foldFscoreWriter);
+				foldOutcomeWriters.add(foldOutcomeWriter);
+				futures.add(executor.submit(new Callable<FScoreCalculator<String>>() {
+					@Override
+					public FScoreCalculator<String> call() throws Exception {
+						MaxentModel maxentModel = train(fold, null);
+						return evaluate(maxentModel, fold, foldFscoreWriter, foldOutcomeWriter);
+					}
+				}));
+			}
+		}
+		
+		try {
+			for (int segment = 0; segment<=9; segment++) {
+				outcomeFileWriter.write("Run " + segment + ",\n");
+				fscoreFileWriter.write("Run " + segment + ",\n");
+				
+				FScoreCalculator<String> fscoreCalculator = null;
+				if (executor==null) {
+					GenericEvents fold = foldEvents.get(segment);
+					MaxentModel maxentModel = this.train(fold, null);
+					fscoreCalculator = this.evaluate(maxentModel, fold, fscoreFileWriter, outcomeFileWriter);
+				} else {
+					// write the results in segment order, exactly as a sequential run would
+					fscoreCalculator = this.getFoldResult(futures.get(segment));
+					outcomeFileWriter.write(foldOutcomeWriters.get(segment).toString());
+					fscoreFileWriter.write(foldFscoreWriters.get(segment).toString());
+					foldOutcomeWriters.set(segment, null);
+					foldFscoreWriters.set(segment, null);
+				}
+				
+				accuracyStats.addValue(fscoreCalculator.getTotalFScore());
+				for (String outcome : fscoreCalculator.getOutcomeSet()) {
+					DescriptiveStatistics[] stats = outcomeFscoreStats.get(outcome);
+					if (stats==null) {
+						stats = new DescriptiveStatistics[3];
+						stats[0] = new DescriptiveStatistics();
+						stats[1] = new DescriptiveStatistics();
+						stats[2] = new DescriptiveStatistics();
+						outcomeFscoreStats.put(outcome, stats);
+					}
+					stats[0].addValue(fscoreCalculator.getPrecision(outcome));
+					stats[1].addValue(fscoreCalculator.getRecall(outcome));
+					stats[2].addValue(fscoreCalculator.getFScore(outcome));
+				} // next outcome
+			
+				outcomeFileWriter.write("\n");
+			
+			} // next segment
+		} finally {
+			if (executor!=null)
+				executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * The test events for a given cross-validation segment:
+	 * every tenth event starting at the segment, counted separately for each outcome if balanceOutcomes is true.
+	 */
+	private BitSet getCrossValidationTestMask(GenericEvents events, Set<String> outcomes, int segment) {
+		BitSet testMask = new BitSet(events.size());
+		Map<String,Integer> outcomeCounts = new HashMap<String, Integer>();
+		int i = 0;
+		int index = 0;
+		for (GenericEvent event : events) {
+			boolean test = event.isTest();
+			if (balanceOutcomes) {
+				String outcome = event.getOutcome();
+				if (outcomes.contains(outcome)) {
+					Integer outcomeCountObj = outcomeCounts.get(outcome);
+					int outcomeCount = outcomeCountObj==null ? 0 : outcomeCountObj.intValue();
+					test = outcomeCount % 10 == segment;
+					outcomeCounts.put(outcome, outcomeCount + 1);
+				}
+			} else {
+				test = i % 10 == segment;
+				i++;
+			}
+			testMask.set(index++, test);
+		}
+		return testMask;
+	}
+	
+	private FScoreCalculator<String> getFoldResult(Future<FScoreCalculator<String>> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ie) {
+			throw new RuntimeException(ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+	
 	private void doCommandTrain() throws IOException {
 		if (resultFilePath==null)
 			throw new RuntimeException("Missing argument: resultFile");
@@ -490,18 +633,35 @@ public class CSVLearner {
 		if (maxentModelFilePath==null)
 			throw new RuntimeException("Missing argument: maxentModel");
 
-		CSVEventListReader reader = this.getReader(TrainingSetType.ALL_TRAINING, false);
-		GenericEvents events = reader.getEvents();
+		if (streamEvents && generateEventFile)
+			throw new RuntimeException("eventFile cannot be used with streamEvents");
 
-		if (generateEventFile) {
-			File eventFile = new File(maxentModelFilePath + ".events.txt");	
-			this.generateEventFile(eventFile, events);
+		GenericEvents events = null;
+		if (!streamEvents) {
+			CSVEventListReader reader = this.getReader(TrainingSetType.ALL_TRAINING, false);
+			events = reader.getEvents();
+	
+			if (generateEventFile) {
+				File eventFile = new File(maxentModelFilePath + ".events.txt");	
+				this.generateEventFile(eventFile, events);
+			}
 		}
 
 		File modelFile = new File(maxentModelFilePath);
 		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(modelFile,false));
 		zos.putNextEntry(new ZipEntry(maxentModelBaseName + ".bin"));
-		this.train(events, zos);
+		if (streamEvents) {
+			// merge-join the sorted files while training, rather than reading all events into memory first
+			CSVEventListReader reader = this.createReader(TrainingSetType.ALL_TRAINING, false);
+			CSVEventListReader.SortedEventIterator eventIterator = reader.stream();
+			try {
+				this.train(eventIterator, zos);
+			} finally {
+				eventIterator.close();
+			}
+		} else {
+			this.train(events, zos);
+		}
 		zos.flush();
 		
 		Writer writer = new BufferedWriter(new OutputStreamWriter(zos));
@@ -538,6 +698,7 @@ public class CSVLearner {
 			
 			MaxentAnalyser analyser = new MaxentAnalyser();
 			analyser.setMaxentModel(model);
+			analyser.setThreadCount(analyserThreads);
 			if (preferredOutcome!=null) {
 				analyser.setPreferredOutcome(preferredOutcome);
 				analyser.setBias(bias);
@@ -695,6 +856,10 @@ public class CSVLearner {
 	}
 	
 	private void doCommandDiscretise() throws IOException {
+		if (discreteLimitsPath!=null) {
+			this.applyDiscreteLimits();
+			return;
+		}
 		if (resultFilePath==null)
 			throw new RuntimeException("Missing argument: resultFile");
 		if (featureDir==null)
@@ -713,13 +878,10 @@ public class CSVLearner {
 			String filename = fileEvents.getKey();
 			LOG.debug("Discretizing file: " + filename);
 			GenericEvents events = fileEvents.getValue();
-			Map<String,Set<Double>> classificationLimits = new TreeMap<String, Set<Double>>();
 			RealValueFeatureDiscretizer classifier = new RealValueFeatureDiscretizer();
 			classifier.setFeatureSplitter(this.getFeatureSplitter());
-			for (String feature : reader.getFileToFeatureMap().get(filename)) {
-				Set<Double> splitValues = classifier.discretizeFeature(events, feature);
-				classificationLimits.put(feature, splitValues);
-			}
+			classifier.setThreadCount(evaluatorThreads);
+			Map<String,Set<Double>> classificationLimits = classifier.discretizeFeatures(events, reader.getFileToFeatureMap().get(filename));
 			File file = new File(outDirPath + "/c_" + filename);
 			CSVEventListWriter eventListWriter = new CSVEventListWriter(file);
 			if (filename.endsWith(".zip"))
@@ -736,6 +898,46 @@ public class CSVLearner {
 		}
 	}
 	
+	/**
+	 * Discretize each feature file using previously written discretization limits,
+	 * streaming the files row by row rather than reading the events.
+	 */
+	private void applyDiscreteLimits() throws IOException {
+		if (featureDir==null)
+			throw new RuntimeException("Missing argument: featureDir");
+		if (outDirPath==null)
+			throw new RuntimeException("Missing argument: outDir");
+		new File(outDirPath).mkdirs();
+		
+		FeatureDiscreteLimitReader limitReader = new FeatureDiscreteLimitReader(new File(discreteLimitsPath));
+		Map<String,double[]> discreteLimits = limitReader.read();
+		LOG.info("Read discretization limits for " + discreteLimits.size() + " features");
+		FeatureDiscreteLimitApplier applier = new FeatureDiscreteLimitApplier(discreteLimits);
+		if (missingValueString!=null)
+			applier.setMissingValueString(missingValueString);
+		if (identifierPrefix!=null)
+			applier.setIdentifierPrefix(identifierPrefix);
+		
+		Stack<File> directoryStack = new Stack<File>();
+		directoryStack.push(new File(featureDir));
+		while (!directoryStack.isEmpty()) {
+			File[] files = directoryStack.pop().listFiles();
+			if (files==null)
+				continue;
+			for (File file : files) {
+				String filename = file.getName();
+				if (file.isDirectory()) {
+					directoryStack.push(file);
+				} else if (filename.endsWith(".dsc_limits.csv")||filename.endsWith(".nrm_limits.csv")) {
+					LOG.trace("Ignoring limits file: " + filename);
+				} else {
+					LOG.debug("Discretizing file: " + filename);
+					applier.applyLimits(file, new File(outDirPath + "/c_" + filename));
+				}
+			}
+		}
+	}
+	
 	private void doCommandEvaluateFeatures() throws IOException {
 		if (resultFilePath==null)
 			throw new RuntimeException("Missing argument: resultFile");
@@ -757,11 +959,14 @@ public class CSVLearner {
 			Map<String,List<Double>> featureEntropies = new TreeMap<String, List<Double>>();
 			RealValueFeatureEvaluator evaluator = new RealValueFeatureEvaluator();
 			evaluator.setFeatureSplitter(this.getFeatureSplitter());
+			evaluator.setThreadCount(evaluatorThreads);
 			Set<String> featuresPerFile = reader.getFileToFeatureMap().get(filename);
 			if (featuresPerFile!=null) {
-				for (String feature : featuresPerFile) {
-					List<Double> levelEntropies = evaluator.evaluateFeature(events, feature);
-					featureEntropies.put(feature, levelEntropies);
+				FeatureColumns columns = new FeatureColumns(events);
+				List<String> features = new ArrayList<String>(featuresPerFile);
+				List<List<Double>> levelEntropies = evaluator.evaluateFeatures(columns, features, null);
+				for (int i=0; i<features.size(); i++) {
+					featureEntropies.put(features.get(i), levelEntropies.get(i));
 				}
 				// we also need to write the entropies to a file
 				File featureEntropyFile = new File(outDirPath + "/c_" + filename + ".entropies.csv");
@@ -788,6 +993,7 @@ public class CSVLearner {
 		GenericEvents events = reader.getEvents();
 		FeatureSplitter featureSplitter = this.getFeatureSplitter();
 		BestFeatureFinder bestFeatureFinder = new BestFeatureFinder(featureSplitter);
+		bestFeatureFinder.setThreadCount(evaluatorThreads);
 		
 		File bestFeatureFile = new File(outDirPath + "/bestFeatures.csv");
 		bestFeatureFile.delete();
@@ -795,7 +1001,9 @@ public class CSVLearner {
 		
 		Map<String,Collection<NameValuePair>> bestFeatureMap = new HashMap<String, Collection<NameValuePair>>();
 		
-		List<NameValuePair> bestFeaturesAll = bestFeatureFinder.getBestFeatures(events, null, featureCount);
+		// transpose the events once, for all outcomes
+		FeatureColumns columns = new FeatureColumns(events);
+		List<NameValuePair> bestFeaturesAll = bestFeatureFinder.getBestFeatures(columns, null, featureCount);
 		String allKey = "### All";
 		bestFeatureMap.put(allKey, bestFeaturesAll);
 		
@@ -809,7 +1017,7 @@ public class CSVLearner {
 		}	
 		
 		for (String outcome : events.getOutcomes()) {
-			List<NameValuePair> bestFeatures = bestFeatureFinder.getBestFeatures(events, outcome, featureCount);
+			List<NameValuePair> bestFeatures = bestFeatureFinder.getBestFeatures(columns, outcome, featureCount);
 			bestFeatureMap.put(outcome, bestFeatures);
 			bestFeatureWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(bestFeatureFile, true),"UTF8"));
 			try {
@@ -951,6 +1159,12 @@ public class CSVLearner {
 	
 	private CSVEventListReader getReader(TrainingSetType trainingSetType, boolean splitEventsByFile) throws IOException {
 		LOG.info("Generating event list from CSV files...");
+		CSVEventListReader reader = this.createReader(trainingSetType, splitEventsByFile);
+		reader.read();
+		return reader;
+	}
+	
+	private CSVEventListReader createReader(TrainingSetType trainingSetType, boolean splitEventsByFile) throws IOException {
 		CSVEventListReader reader =  new CSVEventListReader();
 		reader.setResultFilePath(resultFilePath);
 		reader.setFeatureDirPath(featureDir);
@@ -961,6 +1175,9 @@ public class CSVLearner {
 		reader.setExcludedOutcomes(excludedOutcomes);
 		reader.setSkipUnknownEvents(skipUnknownEvents);
 		reader.setSplitEventsByFile(splitEventsByFile);
+		reader.setThreadCount(readerThreads);
+		reader.setEventCacheDirPath(eventCacheDir);
+		reader.setIncrementalRead(incrementalRead);
 		
 		if (featureFilePath!=null) {
 			File featureFile = new File(featureFilePath);
@@ -990,20 +1207,32 @@ public class CSVLearner {
 			reader.setTestIds(testIds);
 		}
 		
-		reader.read();
 		return reader;
 	}
 	
 	private MaxentModel train(GenericEvents events, OutputStream outputStream) {
 		LOG.info("Training model...");
+		MaxentTrainer trainer = this.getTrainer(outputStream);
+		MaxentModel model = trainer.train(events);
+		return model;
+	}
+	
+	private MaxentModel train(Iterator<GenericEvent> events, OutputStream outputStream) {
+		LOG.info("Training model from streamed events...");
+		MaxentTrainer trainer = this.getTrainer(outputStream);
+		MaxentModel model = trainer.train(events);
+		return model;
+	}
+	
+	private MaxentTrainer getTrainer(OutputStream outputStream) {
 		MaxentTrainer trainer = new MaxentTrainer();
 		trainer.setOutputStream(outputStream);
 		trainer.setIterations(iterations);
 		trainer.setCutoff(cutoff);
 		trainer.setSigma(sigma);
 		trainer.setSmoothing(smoothing);
-		MaxentModel model = trainer.train(events);
-		return model;
+		trainer.setThreadCount(trainerThreads);
+		return trainer;
 	}
 	
 	private void writeNormalisationLimits(Writer writer) {
@@ -1023,6 +1252,7 @@ public class CSVLearner {
 
 			MaxentAnalyser analyser = new MaxentAnalyser();
 			analyser.setMaxentModel(model);
+			analyser.setThreadCount(analyserThreads);
 			if (preferredOutcome!=null) {
 				analyser.setPreferredOutcome(preferredOutcome);
 				analyser.setBias(bias);
@@ -1078,8 +1308,8 @@ public class CSVLearner {
 		try {
 			for (GenericEvent event : events) {
 				eventFileWriter.append(event.getIdentifier() + "\t");
-				for (int i = 0; i < event.getFeatures().size(); i++) {
-					eventFileWriter.append(event.getFeatures().get(i) + "=" + CSVFormatter.format(event.getWeights().get(i)) + "\t");
+				for (int i = 0; i < event.getFeatureCount(); i++) {
+					eventFileWriter.append(event.getFeature(i) + "=" + CSVFormatter.format(event.getWeight(i)) + "\t");
 				}
 				eventFileWriter.append(event.getOutcome());
 				eventFileWriter.append("\n");
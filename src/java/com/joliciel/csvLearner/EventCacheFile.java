@@ -0,0 +1,359 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A binary file caching the contents read from a set of CSV files, so that they don't need to be parsed again
+ * by the next command reading the same files with the same options.<br/>
+ * The file starts with a header giving a signature of the reader options, and a fingerprint of each source file:
+ * its path, length, modification time and a CRC-32 hash of its contents. The cache is only considered fresh
+ * if the signature matches, and each source file has the same path and length, and either the same modification time
+ * or, failing that, the same hash (so that a file which was touched or re-copied without changes doesn't invalidate the cache).
+ * Hashes already known to the caller, e.g. calculated while parsing a source file, or read from a fresh header,
+ * are shared via setKnownHashes, so that a source file isn't read again just to hash it.<br/>
+ * The remaining contents are written and read in the same order by the CSVEventListReader, using the
+ * primitives provided here: ints, longs, floats, strings (as a length followed by UTF-8 bytes), and arrays.
+ * The file is written through a buffered stream to a temporary file, which replaces the cache once complete,
+ * and is read back through memory-mapped windows, so that files beyond 2 Gb can be read.
+ * @author Assaf Urieli
+ *
+ */
+final class EventCacheFile {
+	private static final Log LOG = LogFactory.getLog(EventCacheFile.class);
+	private static final int MAGIC = 0x4353564C; // "CSVL"
+	private static final int VERSION = 3;
+	private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+	
+	private File file;
+	private String signature;
+	private List<File> sourceFiles;
+	private Map<String,Long> knownHashes = null;
+	
+	private File tempFile = null;
+	private DataOutputStream out = null;
+	
+	private FileInputStream inputStream = null;
+	private FileChannel channel = null;
+	private long fileSize;
+	private long windowStart = 0;
+	private MappedByteBuffer window = null;
+	
+	/**
+	 * @param cacheDir the directory containing the cache files
+	 * @param prefix the prefix of the cache file name, which is followed by a hash of the signature
+	 * @param signature a description of the reader options which affect the cached contents
+	 * @param sourceFiles the files from which the cached contents were read
+	 */
+	public EventCacheFile(File cacheDir, String prefix, String signature, List<File> sourceFiles) {
+		this.file = new File(cacheDir, prefix + "_" + String.format("%08x", signature.hashCode()) + ".bin");
+		this.signature = signature;
+		this.sourceFiles = sourceFiles;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * The CRC-32 hashes already known for source files, keyed by getFingerprintKey(File),
+	 * to which any hashes read or calculated are added. Should be thread-safe if shared between threads.
+	 */
+	public Map<String, Long> getKnownHashes() {
+		return knownHashes;
+	}
+
+	public void setKnownHashes(Map<String, Long> knownHashes) {
+		this.knownHashes = knownHashes;
+	}
+	
+	/**
+	 * Open the cache for reading, if it is fresh, leaving it positioned after the header.
+	 * @return true if the cache was opened, false if it is missing or stale
+	 */
+	public boolean openForReading() throws IOException {
+		if (!file.exists())
+			return false;
+		
+		inputStream = new FileInputStream(file);
+		channel = inputStream.getChannel();
+		fileSize = channel.size();
+		windowStart = 0;
+		window = null;
+		boolean fresh = false;
+		try {
+			fresh = this.readHeader();
+		} finally {
+			if (!fresh)
+				this.close();
+		}
+		return fresh;
+	}
+	
+	private boolean readHeader() throws IOException {
+		if (fileSize < 8 || this.readInt()!=MAGIC || this.readInt()!=VERSION) {
+			LOG.debug("Not an event cache: " + file.getPath());
+			return false;
+		}
+		if (!signature.equals(this.readString())) {
+			LOG.debug("Event cache written with different options: " + file.getPath());
+			return false;
+		}
+		int sourceCount = this.readInt();
+		if (sourceCount!=sourceFiles.size())
+			return false;
+		for (File sourceFile : sourceFiles) {
+			String path = this.readString();
+			long length = this.readLong();
+			long lastModified = this.readLong();
+			long hash = this.readLong();
+			boolean changed = !path.equals(sourceFile.getAbsolutePath()) || length!=sourceFile.length();
+			if (!changed) {
+				if (lastModified!=sourceFile.lastModified())
+					changed = hash!=this.getKnownHash(sourceFile);
+				else if (knownHashes!=null)
+					knownHashes.put(getFingerprintKey(sourceFile), hash);
+			}
+			if (changed) {
+				LOG.debug("Event cache source file changed: " + sourceFile.getPath());
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Open a temporary file for writing, and write the header.
+	 */
+	public void openForWriting() throws IOException {
+		file.getParentFile().mkdirs();
+		tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile, false), 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		this.writeString(signature);
+		out.writeInt(sourceFiles.size());
+		for (File sourceFile : sourceFiles) {
+			this.writeString(sourceFile.getAbsolutePath());
+			out.writeLong(sourceFile.length());
+			out.writeLong(sourceFile.lastModified());
+			out.writeLong(this.getKnownHash(sourceFile));
+		}
+	}
+	
+	/**
+	 * The hash of a source file, taken from the known hashes if the file is unchanged since it was hashed,
+	 * or else calculated and added to them.
+	 */
+	private long getKnownHash(File sourceFile) throws IOException {
+		if (knownHashes==null)
+			return getHash(sourceFile);
+		String key = getFingerprintKey(sourceFile);
+		Long hash = knownHashes.get(key);
+		if (hash==null) {
+			hash = getHash(sourceFile);
+			knownHashes.put(key, hash);
+		}
+		return hash;
+	}
+	
+	/**
+	 * The key identifying a given version of a source file in the known hashes:
+	 * its path, length and modification time.
+	 */
+	static String getFingerprintKey(File sourceFile) {
+		return sourceFile.getAbsolutePath() + "|" + sourceFile.length() + "|" + sourceFile.lastModified();
+	}
+	
+	/**
+	 * The CRC-32 hash of a file's contents.
+	 */
+	static long getHash(File sourceFile) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] bytes = new byte[64 * 1024];
+		InputStream inputStream = new FileInputStream(sourceFile);
+		try {
+			int length;
+			while ((length = inputStream.read(bytes)) > 0)
+				crc.update(bytes, 0, length);
+		} finally {
+			inputStream.close();
+		}
+		return crc.getValue();
+	}
+	
+	/**
+	 * Close the file. If writing, the temporary file replaces the cache.
+	 */
+	public void close() throws IOException {
+		if (out!=null) {
+			out.close();
+			out = null;
+			if (file.exists() && !file.delete())
+				throw new IOException("Unable to replace event cache: " + file.getPath());
+			if (!tempFile.renameTo(file))
+				throw new IOException("Unable to write event cache: " + file.getPath());
+		}
+		if (inputStream!=null) {
+			window = null;
+			channel = null;
+			inputStream.close();
+			inputStream = null;
+		}
+	}
+	
+	/**
+	 * Close the file after a failed write, leaving no cache behind.
+	 */
+	public void abort() {
+		try {
+			if (out!=null)
+				out.close();
+		} catch (IOException ioe) {
+			// nothing to do
+		}
+		out = null;
+		if (tempFile!=null)
+			tempFile.delete();
+	}
+	
+	public void writeInt(int value) throws IOException {
+		out.writeInt(value);
+	}
+	
+	public void writeLong(long value) throws IOException {
+		out.writeLong(value);
+	}
+	
+	public void writeFloat(float value) throws IOException {
+		out.writeFloat(value);
+	}
+	
+	public void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Write a collection of strings, preceded by its size.
+	 */
+	public void writeStrings(Collection<String> values) throws IOException {
+		out.writeInt(values.size());
+		for (String value : values)
+			this.writeString(value);
+	}
+	
+	public int readInt() throws IOException {
+		this.ensure(4);
+		return window.getInt();
+	}
+	
+	public long readLong() throws IOException {
+		this.ensure(8);
+		return window.getLong();
+	}
+	
+	public float readFloat() throws IOException {
+		this.ensure(4);
+		return window.getFloat();
+	}
+	
+	public String readString() throws IOException {
+		int length = this.readInt();
+		this.ensure(length);
+		byte[] bytes = new byte[length];
+		window.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+	
+	/**
+	 * Read a collection of strings written by writeStrings.
+	 */
+	public List<String> readStrings() throws IOException {
+		int size = this.readInt();
+		List<String> values = new ArrayList<String>(size);
+		for (int i=0; i<size; i++)
+			values.add(this.readString());
+		return values;
+	}
+	
+	/**
+	 * Read count ints, written one after the other, into an array.
+	 */
+	public int[] readInts(int count) throws IOException {
+		int[] values = new int[count];
+		int i = 0;
+		while (i<count) {
+			this.ensure(4);
+			int n = Math.min(count - i, window.remaining() / 4);
+			window.asIntBuffer().get(values, i, n);
+			window.position(window.position() + n * 4);
+			i += n;
+		}
+		return values;
+	}
+	
+	/**
+	 * Read count floats, written one after the other, into an array.
+	 */
+	public float[] readFloats(int count) throws IOException {
+		float[] values = new float[count];
+		int i = 0;
+		while (i<count) {
+			this.ensure(4);
+			int n = Math.min(count - i, window.remaining() / 4);
+			window.asFloatBuffer().get(values, i, n);
+			window.position(window.position() + n * 4);
+			i += n;
+		}
+		return values;
+	}
+	
+	/**
+	 * Make sure the current window contains at least the next n bytes, mapping a new window if required.
+	 */
+	private void ensure(int n) throws IOException {
+		if (window!=null && window.remaining() >= n)
+			return;
+		long position = windowStart + (window==null ? 0 : window.position());
+		if (position + n > fileSize)
+			throw new IOException("Unexpected end of event cache: " + file.getPath());
+		long size = Math.min(Math.max(WINDOW_SIZE, n), fileSize - position);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		windowStart = position;
+	}
+}
@@ -0,0 +1,253 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The vocabulary of a collection of events: the distinct features, with the number of events containing each feature
+ * (its document frequency), and the distinct outcomes, with the number of events for each outcome.<br/>
+ * Counts are maintained incrementally as events are added or removed, in a primitive array indexed by FeatureDictionary id.
+ * Features are exposed as arrays sorted by name: when events are added, only the newly seen features
+ * are sorted, and merged into the existing arrays.<br/>
+ * The arrays returned are shared, and should not be modified by callers.
+ * @author Assaf Urieli
+ *
+ */
+public class EventVocabulary {
+	private int[] documentFrequencies = new int[0];
+	private int[] newFeatureIds = new int[16];
+	private int newFeatureCount = 0;
+	private boolean featuresRemoved = false;
+	private int[] featureIds = new int[0];
+	private String[] featureNames = new String[0];
+	private int[] featureFrequencies = null;
+	
+	private Map<String,int[]> outcomeCounts = new TreeMap<String, int[]>();
+	private String[] outcomes = null;
+	private int[] outcomeFrequencies = null;
+	private int eventCount = 0;
+	
+	public EventVocabulary() {
+	}
+	
+	public EventVocabulary(Iterable<GenericEvent> events) {
+		this.addAll(events);
+	}
+	
+	public synchronized void addAll(Iterable<GenericEvent> events) {
+		for (GenericEvent event : events)
+			this.add(event);
+	}
+	
+	/**
+	 * Add an event's features and outcome to the vocabulary.
+	 * @param event
+	 */
+	public synchronized void add(GenericEvent event) {
+		int featureCount = event.getFeatureCount();
+		for (int i=0; i<featureCount; i++) {
+			int featureId = event.getFeatureId(i);
+			if (featureId>=documentFrequencies.length)
+				documentFrequencies = Arrays.copyOf(documentFrequencies, Math.max(featureId + 1, documentFrequencies.length * 2));
+			if (documentFrequencies[featureId]++==0) {
+				if (newFeatureCount==newFeatureIds.length)
+					newFeatureIds = Arrays.copyOf(newFeatureIds, newFeatureCount * 2);
+				newFeatureIds[newFeatureCount++] = featureId;
+			}
+		}
+		featureFrequencies = null;
+		
+		int[] outcomeCount = outcomeCounts.get(event.getOutcome());
+		if (outcomeCount==null) {
+			outcomeCount = new int[1];
+			outcomeCounts.put(event.getOutcome(), outcomeCount);
+			outcomes = null;
+		}
+		outcomeCount[0]++;
+		outcomeFrequencies = null;
+		eventCount++;
+	}
+	
+	/**
+	 * Remove an event's features and outcome from the vocabulary, e.g. before modifying the event's features in place.
+	 * The event must previously have been added with its current features and outcome.
+	 * @param event
+	 */
+	public synchronized void remove(GenericEvent event) {
+		int featureCount = event.getFeatureCount();
+		for (int i=0; i<featureCount; i++) {
+			int featureId = event.getFeatureId(i);
+			if (--documentFrequencies[featureId]==0)
+				featuresRemoved = true;
+		}
+		featureFrequencies = null;
+		
+		int[] outcomeCount = outcomeCounts.get(event.getOutcome());
+		if (--outcomeCount[0]==0) {
+			outcomeCounts.remove(event.getOutcome());
+			outcomes = null;
+		}
+		outcomeFrequencies = null;
+		eventCount--;
+	}
+	
+	/**
+	 * The number of events in the vocabulary.
+	 * @return
+	 */
+	public synchronized int getEventCount() {
+		return eventCount;
+	}
+	
+	/**
+	 * The number of distinct features.
+	 * @return
+	 */
+	public synchronized int getFeatureCount() {
+		this.sortFeatures();
+		return featureIds.length;
+	}
+	
+	/**
+	 * The FeatureDictionary ids of the distinct features, sorted by feature name.
+	 * @return
+	 */
+	public synchronized int[] getFeatureIds() {
+		this.sortFeatures();
+		return featureIds;
+	}
+	
+	/**
+	 * The names of the distinct features, sorted, in the same order as getFeatureIds().
+	 * @return
+	 */
+	public synchronized String[] getFeatureNames() {
+		this.sortFeatures();
+		return featureNames;
+	}
+	
+	/**
+	 * The number of events containing each feature, in the same order as getFeatureIds().
+	 * @return
+	 */
+	public synchronized int[] getDocumentFrequencies() {
+		this.sortFeatures();
+		if (featureFrequencies==null) {
+			featureFrequencies = new int[featureIds.length];
+			for (int i=0; i<featureIds.length; i++)
+				featureFrequencies[i] = documentFrequencies[featureIds[i]];
+		}
+		return featureFrequencies;
+	}
+	
+	/**
+	 * The number of events containing a given feature.
+	 * @param featureId the feature's FeatureDictionary id
+	 * @return
+	 */
+	public synchronized int getDocumentFrequency(int featureId) {
+		return featureId < documentFrequencies.length ? documentFrequencies[featureId] : 0;
+	}
+	
+	/**
+	 * The distinct outcomes, sorted.
+	 * @return
+	 */
+	public synchronized String[] getOutcomes() {
+		if (outcomes==null)
+			outcomes = outcomeCounts.keySet().toArray(new String[outcomeCounts.size()]);
+		return outcomes;
+	}
+	
+	/**
+	 * The number of events for each outcome, in the same order as getOutcomes().
+	 * @return
+	 */
+	public synchronized int[] getOutcomeCounts() {
+		if (outcomeFrequencies==null) {
+			outcomeFrequencies = new int[outcomeCounts.size()];
+			int i = 0;
+			for (int[] outcomeCount : outcomeCounts.values())
+				outcomeFrequencies[i++] = outcomeCount[0];
+		}
+		return outcomeFrequencies;
+	}
+	
+	/**
+	 * The number of events for a given outcome.
+	 * @param outcome
+	 * @return
+	 */
+	public synchronized int getOutcomeCount(String outcome) {
+		int[] outcomeCount = outcomeCounts.get(outcome);
+		return outcomeCount==null ? 0 : outcomeCount[0];
+	}
+	
+	/**
+	 * Sort any features seen since the last call, and merge them into the sorted arrays,
+	 * dropping any features no longer contained in any event.
+	 */
+	private void sortFeatures() {
+		if (newFeatureCount==0 && !featuresRemoved)
+			return;
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		
+		// a feature removed and then added again is still in the sorted arrays
+		int addedCount = 0;
+		String[] addedNames = new String[newFeatureCount];
+		if (newFeatureCount>0) {
+			boolean[] sorted = new boolean[documentFrequencies.length];
+			for (int featureId : featureIds)
+				sorted[featureId] = true;
+			for (int i=0; i<newFeatureCount; i++) {
+				int featureId = newFeatureIds[i];
+				if (!sorted[featureId] && documentFrequencies[featureId]>0) {
+					sorted[featureId] = true;
+					addedNames[addedCount++] = dictionary.getName(featureId);
+				}
+			}
+			Arrays.sort(addedNames, 0, addedCount);
+		}
+		
+		int[] mergedIds = new int[featureIds.length + addedCount];
+		String[] mergedNames = new String[featureIds.length + addedCount];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i<featureIds.length || j<addedCount) {
+			if (i<featureIds.length && documentFrequencies[featureIds[i]]==0) {
+				i++;
+			} else if (j>=addedCount || (i<featureIds.length && featureNames[i].compareTo(addedNames[j])<0)) {
+				mergedIds[k] = featureIds[i];
+				mergedNames[k++] = featureNames[i++];
+			} else {
+				mergedIds[k] = dictionary.lookupId(addedNames[j]);
+				mergedNames[k++] = addedNames[j++];
+			}
+		}
+		featureIds = k < mergedIds.length ? Arrays.copyOf(mergedIds, k) : mergedIds;
+		featureNames = k < mergedNames.length ? Arrays.copyOf(mergedNames, k) : mergedNames;
+		featureFrequencies = null;
+		newFeatureCount = 0;
+		featuresRemoved = false;
+	}
+}
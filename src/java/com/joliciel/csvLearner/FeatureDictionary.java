@@ -0,0 +1,117 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global dictionary of feature names, assigning a unique int id to each feature name,
+ * so that events can store their features as primitive ids rather than strings.
+ * Ids are assigned in the order in which feature names are first seen, starting at 0.
+ * For nominal features (containing the nominal marker), the dictionary also keeps the id of the base feature name.
+ * Lookups can be performed concurrently with additions.
+ * @author Assaf Urieli
+ *
+ */
+public final class FeatureDictionary {
+	private static final FeatureDictionary INSTANCE = new FeatureDictionary();
+
+	private final ConcurrentHashMap<String, Integer> featureIds = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] names = new String[1024];
+	private volatile int[] baseIds = new int[1024];
+	private volatile int size = 0;
+
+	private FeatureDictionary() {
+	}
+
+	public static FeatureDictionary getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the id for a given feature name, adding it to the dictionary if required.
+	 * @param name
+	 * @return
+	 */
+	public int getId(String name) {
+		Integer idObj = featureIds.get(name);
+		if (idObj!=null)
+			return idObj.intValue();
+		return this.addName(name);
+	}
+
+	/**
+	 * Get the id for a given feature name, without adding it to the dictionary.
+	 * @param name
+	 * @return the id, or -1 if this feature name has never been seen
+	 */
+	public int lookupId(String name) {
+		Integer idObj = featureIds.get(name);
+		return idObj==null ? -1 : idObj.intValue();
+	}
+
+	/**
+	 * The feature name for a given id.
+	 * @param id
+	 * @return
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * For a nominal feature, the id of its base feature name (without the nominal marker and value).
+	 * @param id
+	 * @return the base feature id, or -1 if this feature isn't nominal
+	 */
+	public int getBaseId(int id) {
+		return baseIds[id];
+	}
+
+	/**
+	 * The number of feature names in the dictionary.
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	private synchronized int addName(String name) {
+		Integer idObj = featureIds.get(name);
+		if (idObj!=null)
+			return idObj.intValue();
+
+		int baseId = -1;
+		int nominalStartIndex = name.indexOf(CSVLearner.NOMINAL_MARKER);
+		if (nominalStartIndex>=0)
+			baseId = this.addName(name.substring(0, nominalStartIndex));
+
+		int id = size;
+		if (id==names.length) {
+			baseIds = Arrays.copyOf(baseIds, id * 2);
+			names = Arrays.copyOf(names, id * 2);
+		}
+		names[id] = name;
+		baseIds[id] = baseId;
+		size = id + 1;
+		featureIds.put(name, id);
+		return id;
+	}
+}
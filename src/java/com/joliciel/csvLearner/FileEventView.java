@@ -0,0 +1,63 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner;
+
+/**
+ * The features found for a given event in a single feature file,
+ * when the reader splits events by file.
+ * The identifier, outcome and test flag are shared with the master event read from the result file,
+ * so that changing them on either one is seen by the other.
+ * @author Assaf Urieli
+ *
+ */
+final class FileEventView extends GenericEvent {
+	private GenericEvent masterEvent;
+	
+	public FileEventView(GenericEvent masterEvent) {
+		super(masterEvent.getIdentifier());
+		this.masterEvent = masterEvent;
+	}
+
+	/**
+	 * The master event whose identifier, outcome and test flag are shared.
+	 */
+	GenericEvent getMasterEvent() {
+		return masterEvent;
+	}
+
+	@Override
+	public String getOutcome() {
+		return masterEvent.getOutcome();
+	}
+
+	@Override
+	public void setOutcome(String outcome) {
+		masterEvent.setOutcome(outcome);
+	}
+
+	@Override
+	public boolean isTest() {
+		return masterEvent.isTest();
+	}
+
+	@Override
+	public void setTest(boolean test) {
+		masterEvent.setTest(test);
+	}
+}
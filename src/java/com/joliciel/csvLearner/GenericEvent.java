@@ -18,21 +18,30 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.ArrayList;
 
 /**
- * A single event, corresponding to a uniquely identified row in the CSV files.
+ * A single event, corresponding to a uniquely identified row in the CSV files.<br/>
+ * Features are stored as ids from the global FeatureDictionary, in a primitive array sorted by id,
+ * with a parallel array of weights. The feature index of any given feature
+ * therefore corresponds to its position in id order, rather than the order in which it was added.
  * @author Assaf Urieli
  *
  */
 public class GenericEvent {
-	private List<String> features = new ArrayList<String>();
-	private List<Float> weights = new ArrayList<Float>();
-	private Map<String,Integer> featureIndex = new TreeMap<String, Integer>();
-	private int currentIndex = 0;
+	private static final int[] EMPTY_IDS = new int[0];
+	private static final float[] EMPTY_WEIGHTS = new float[0];
+	
+	private int[] featureIds = EMPTY_IDS;
+	private float[] weights = EMPTY_WEIGHTS;
+	private int featureCount = 0;
+	
+	// for events with nominal features: the base feature ids (sorted), and the nominal feature id for each
+	private int[] nominalBaseIds = null;
+	private int[] nominalFeatureIds = null;
+	private int nominalCount = 0;
 	
 	private String outcome = "";
 	private String identifier = "";
@@ -41,38 +50,224 @@ public class GenericEvent {
 	public GenericEvent(String identifier) {
 		this.identifier = identifier;
 	}
+	
+	/**
+	 * The index of a given feature in this event, or, for a nominal feature's base name,
+	 * the index of the nominal value held by this event.
+	 * @param feature
+	 * @return the index, or -1 if the feature isn't found
+	 */
 	public int getFeatureIndex(String feature) {
-		Integer featureIndexObj = this.featureIndex.get(feature);
-		int i = featureIndexObj==null ? -1 : featureIndexObj.intValue();
-		return i;
+		int featureId = FeatureDictionary.getInstance().lookupId(feature);
+		if (featureId<0)
+			return -1;
+		return this.getFeatureIndex(featureId);
+	}
+	
+	/**
+	 * As getFeatureIndex(String), for a feature given by its FeatureDictionary id.
+	 * @param featureId
+	 * @return the index, or -1 if the feature isn't found
+	 */
+	public int getFeatureIndex(int featureId) {
+		int i = Arrays.binarySearch(featureIds, 0, featureCount, featureId);
+		if (i>=0)
+			return i;
+		if (nominalCount>0) {
+			int j = Arrays.binarySearch(nominalBaseIds, 0, nominalCount, featureId);
+			if (j>=0)
+				return Arrays.binarySearch(featureIds, 0, featureCount, nominalFeatureIds[j]);
+		}
+		return -1;
 	}
 	
+	/**
+	 * The index of a given feature in this event, without the nominal base name lookup
+	 * performed by getFeatureIndex(String).
+	 * @param feature
+	 * @return the index, or -1 if the feature isn't found
+	 */
+	public int indexOf(String feature) {
+		int featureId = FeatureDictionary.getInstance().lookupId(feature);
+		if (featureId<0)
+			return -1;
+		int i = Arrays.binarySearch(featureIds, 0, featureCount, featureId);
+		return i>=0 ? i : -1;
+	}
+	
+	/**
+	 * Add a feature to this event. If the event already contains the feature, its weight is replaced.
+	 * @param feature
+	 * @param weight
+	 */
 	public void addFeature(String feature, float weight) {
-		this.features.add(feature);
-		// add the feature's base name if it's a nominal feature
-		int nominalStartIndex = feature.indexOf(CSVLearner.NOMINAL_MARKER);
-		if (nominalStartIndex>=0)
-			this.featureIndex.put(feature.substring(0, nominalStartIndex), currentIndex);
-		this.featureIndex.put(feature, currentIndex++);
-		this.weights.add(weight);
+		this.addFeature(FeatureDictionary.getInstance().getId(feature), weight);
+	}
+	
+	/**
+	 * Add a feature to this event by its FeatureDictionary id.
+	 * Adding features in increasing id order is the fastest.
+	 * @param featureId
+	 * @param weight
+	 */
+	void addFeature(int featureId, float weight) {
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		int i;
+		if (featureCount==0 || featureIds[featureCount-1] < featureId)
+			i = -(featureCount+1);
+		else
+			i = Arrays.binarySearch(featureIds, 0, featureCount, featureId);
+		if (i>=0) {
+			weights[i] = weight;
+		} else {
+			i = -(i+1);
+			if (featureCount==featureIds.length) {
+				int capacity = featureCount < 4 ? 4 : featureCount + (featureCount >> 1);
+				featureIds = Arrays.copyOf(featureIds, capacity);
+				weights = Arrays.copyOf(weights, capacity);
+			}
+			if (i<featureCount) {
+				System.arraycopy(featureIds, i, featureIds, i+1, featureCount - i);
+				System.arraycopy(weights, i, weights, i+1, featureCount - i);
+			}
+			featureIds[i] = featureId;
+			weights[i] = weight;
+			featureCount++;
+		}
+		
+		// index the feature's base name if it's a nominal feature
+		int baseId = dictionary.getBaseId(featureId);
+		if (baseId>=0)
+			this.putNominal(baseId, featureId);
 	}
 	
 	public void addFeature(String feature) {
 		this.addFeature(feature, 1);
 	}
 	
-	public List<String> getFeatures() {
-		return features;
+	/**
+	 * Remove the feature at a given index.
+	 * @param index
+	 */
+	public void removeFeature(int index) {
+		if (index<0 || index>=featureCount)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + featureCount);
+		int featureId = featureIds[index];
+		System.arraycopy(featureIds, index+1, featureIds, index, featureCount - index - 1);
+		System.arraycopy(weights, index+1, weights, index, featureCount - index - 1);
+		featureCount--;
+		
+		if (nominalCount>0) {
+			int baseId = FeatureDictionary.getInstance().getBaseId(featureId);
+			if (baseId>=0) {
+				int j = Arrays.binarySearch(nominalBaseIds, 0, nominalCount, baseId);
+				if (j>=0 && nominalFeatureIds[j]==featureId) {
+					System.arraycopy(nominalBaseIds, j+1, nominalBaseIds, j, nominalCount - j - 1);
+					System.arraycopy(nominalFeatureIds, j+1, nominalFeatureIds, j, nominalCount - j - 1);
+					nominalCount--;
+				}
+			}
+		}
 	}
-	public void setFeatures(List<String> features) {
-		this.features = features;
+	
+	/**
+	 * Replace all of this event's features in a single operation,
+	 * rather than removing and adding them one at a time.
+	 * @param featureIds the FeatureDictionary ids of the new features, in any order, without duplicates
+	 * @param weights the weight of each feature
+	 * @param count the number of features to take from the arrays
+	 */
+	public void setFeatures(int[] featureIds, float[] weights, int count) {
+		// sort the features by id, keeping track of each one's original position
+		long[] entries = new long[count];
+		for (int i=0; i<count; i++)
+			entries[i] = ((long) featureIds[i] << 32) | i;
+		Arrays.sort(entries);
+		int[] newFeatureIds = new int[count];
+		float[] newWeights = new float[count];
+		for (int i=0; i<count; i++) {
+			newFeatureIds[i] = (int) (entries[i] >>> 32);
+			newWeights[i] = weights[(int) entries[i]];
+		}
+		this.featureIds = newFeatureIds;
+		this.weights = newWeights;
+		this.featureCount = count;
+		
+		this.nominalCount = 0;
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		for (int i=0; i<count; i++) {
+			int baseId = dictionary.getBaseId(newFeatureIds[i]);
+			if (baseId>=0)
+				this.putNominal(baseId, newFeatureIds[i]);
+		}
 	}
-	public List<Float> getWeights() {
-		return weights;
+	
+	/**
+	 * Release any spare capacity once all features have been added.
+	 */
+	public void trimToSize() {
+		if (featureIds.length>featureCount) {
+			featureIds = Arrays.copyOf(featureIds, featureCount);
+			weights = Arrays.copyOf(weights, featureCount);
+		}
+		if (nominalBaseIds!=null && nominalBaseIds.length>nominalCount) {
+			nominalBaseIds = Arrays.copyOf(nominalBaseIds, nominalCount);
+			nominalFeatureIds = Arrays.copyOf(nominalFeatureIds, nominalCount);
+		}
+	}
+	
+	/**
+	 * The number of features in this event.
+	 * @return
+	 */
+	public int getFeatureCount() {
+		return featureCount;
 	}
-	public void setWeights(List<Float> weights) {
-		this.weights = weights;
+	
+	/**
+	 * The FeatureDictionary id of the feature at a given index.
+	 * @param index
+	 * @return
+	 */
+	public int getFeatureId(int index) {
+		if (index>=featureCount)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + featureCount);
+		return featureIds[index];
+	}
+	
+	public String getFeature(int index) {
+		return FeatureDictionary.getInstance().getName(this.getFeatureId(index));
+	}
+	
+	public float getWeight(int index) {
+		if (index>=featureCount)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + featureCount);
+		return weights[index];
 	}
+	
+	public void setWeight(int index, float weight) {
+		if (index>=featureCount)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + featureCount);
+		weights[index] = weight;
+	}
+	
+	/**
+	 * A read-only view of this event's feature names, in feature index order.
+	 * @return
+	 */
+	public List<String> getFeatures() {
+		return new FeatureList();
+	}
+	
+	/**
+	 * A view of this event's weights, in feature index order.
+	 * Weights can be replaced via set(int, Float), but not added or removed.
+	 * @return
+	 */
+	public List<Float> getWeights() {
+		return new WeightList();
+	}
+	
 	public String getOutcome() {
 		return outcome;
 	}
@@ -89,5 +284,73 @@ public class GenericEvent {
 		return identifier;
 	}
 	
+	private void putNominal(int baseId, int featureId) {
+		if (nominalBaseIds==null) {
+			nominalBaseIds = new int[2];
+			nominalFeatureIds = new int[2];
+		}
+		int j = Arrays.binarySearch(nominalBaseIds, 0, nominalCount, baseId);
+		if (j>=0) {
+			nominalFeatureIds[j] = featureId;
+		} else {
+			j = -(j+1);
+			if (nominalCount==nominalBaseIds.length) {
+				nominalBaseIds = Arrays.copyOf(nominalBaseIds, nominalCount * 2);
+				nominalFeatureIds = Arrays.copyOf(nominalFeatureIds, nominalCount * 2);
+			}
+			System.arraycopy(nominalBaseIds, j, nominalBaseIds, j+1, nominalCount - j);
+			System.arraycopy(nominalFeatureIds, j, nominalFeatureIds, j+1, nominalCount - j);
+			nominalBaseIds[j] = baseId;
+			nominalFeatureIds[j] = featureId;
+			nominalCount++;
+		}
+	}
 	
+	private final class FeatureList extends AbstractList<String> {
+		@Override
+		public String get(int index) {
+			return GenericEvent.this.getFeature(index);
+		}
+
+		@Override
+		public int size() {
+			return featureCount;
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			if (!(o instanceof String))
+				return -1;
+			return GenericEvent.this.indexOf((String) o);
+		}
+
+		@Override
+		public int lastIndexOf(Object o) {
+			return this.indexOf(o);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return this.indexOf(o)>=0;
+		}
+	}
+	
+	private final class WeightList extends AbstractList<Float> {
+		@Override
+		public Float get(int index) {
+			return GenericEvent.this.getWeight(index);
+		}
+
+		@Override
+		public Float set(int index, Float weight) {
+			float previous = GenericEvent.this.getWeight(index);
+			GenericEvent.this.setWeight(index, weight);
+			return previous;
+		}
+
+		@Override
+		public int size() {
+			return featureCount;
+		}
+	}
 }
@@ -18,10 +18,13 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.ArrayList;
 
 /**
@@ -31,9 +34,12 @@ import java.util.ArrayList;
  */
 public class GenericEvents implements Iterable<GenericEvent> {
 	private Collection<GenericEvent> events;
-	private Set<String> features;
-	private Set<String> outcomes;
+	private EventVocabulary vocabulary;
+	private GenericEvents source = null;
 	private int size = 0;
+	private BitSet testMask = null;
+	private volatile SortedArraySet featureSet = null;
+	private volatile SortedArraySet outcomeSet = null;
 	public GenericEvents() {
 		this.events = new ArrayList<GenericEvent>();
 		this.size = 0;
@@ -42,36 +48,130 @@ public class GenericEvents implements Iterable<GenericEvent> {
 		this.events = events;
 		this.size = events.size();
 	}
+	
+	/**
+	 * A view of the same events with a different split between training and test events,
+	 * in which the event at position i (in iteration order) is a test event if testMask.get(i) is true.
+	 * The events themselves are not modified, so several views can be used concurrently.
+	 * @param events
+	 * @param testMask
+	 */
+	public GenericEvents(GenericEvents events, BitSet testMask) {
+		this.events = events.events;
+		this.size = events.size;
+		this.source = events.source==null ? events : events.source;
+		this.testMask = testMask;
+	}
+	
 	@Override
 	public Iterator<GenericEvent> iterator() {
 		return events.iterator();
 	}
 	
 	/**
-	 * Returns an ordered set of features.
+	 * The features and outcomes of all events, with their counts.
+	 * Calculated on first call, and then maintained incrementally as events are added.
+	 * Views with a test mask share the vocabulary of the events they were created from.
+	 * If the features of events are modified in place, resetVocabulary() should be called.
+	 * @return
+	 */
+	public EventVocabulary getVocabulary() {
+		if (source!=null)
+			return source.getVocabulary();
+		synchronized (this) {
+			if (vocabulary==null)
+				vocabulary = new EventVocabulary(events);
+			return vocabulary;
+		}
+	}
+	
+	/**
+	 * Discard the vocabulary, so that it gets recalculated on the next call to getVocabulary().
+	 */
+	public void resetVocabulary() {
+		if (source!=null) {
+			source.resetVocabulary();
+		} else {
+			synchronized (this) {
+				vocabulary = null;
+			}
+		}
+	}
+	
+	/**
+	 * Returns an ordered, unmodifiable set of features.
+	 * The set is a view of the vocabulary's sorted feature array, which is only rebuilt
+	 * when the vocabulary changes (see resetVocabulary() and addAll()).
 	 * @return
 	 */
 	public Set<String> getFeatures() {
-		if (features==null) {
-			features = new TreeSet<String>();
-			for (GenericEvent event : events)
-				for (String feature : event.getFeatures())
-					features.add(feature);
+		String[] featureNames = this.getVocabulary().getFeatureNames();
+		SortedArraySet features = featureSet;
+		if (features==null || features.values!=featureNames) {
+			features = new SortedArraySet(featureNames);
+			featureSet = features;
 		}
 		return features;
 	}
 	
 	/**
-	 * Returns an ordered set of outcomes.
+	 * Returns an ordered, unmodifiable set of outcomes, as a view in the same way as getFeatures().
 	 * @return
 	 */
 	public Set<String> getOutcomes() {
-		if (outcomes==null) {
-			outcomes = new TreeSet<String>();
-			for (GenericEvent event : events)
-				outcomes.add(event.getOutcome());
+		String[] outcomes = this.getVocabulary().getOutcomes();
+		SortedArraySet outcomeNames = outcomeSet;
+		if (outcomeNames==null || outcomeNames.values!=outcomes) {
+			outcomeNames = new SortedArraySet(outcomes);
+			outcomeSet = outcomeNames;
+		}
+		return outcomeNames;
+	}
+	
+	/**
+	 * An unmodifiable set backed by a sorted array, which is never modified:
+	 * the vocabulary replaces its arrays rather than modifying them, so a new array means a new set.
+	 */
+	private static final class SortedArraySet extends AbstractSet<String> {
+		private final String[] values;
+		
+		public SortedArraySet(String[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				private int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return i<values.length;
+				}
+
+				@Override
+				public String next() {
+					if (i>=values.length)
+						throw new NoSuchElementException();
+					return values[i++];
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return (o instanceof String) && Arrays.binarySearch(values, (String) o)>=0;
 		}
-		return outcomes;
 	}
 	
 	public int size() {
@@ -81,12 +181,74 @@ public class GenericEvents implements Iterable<GenericEvent> {
 	public void addAll(Collection<GenericEvent> eventsToAdd) {
 		this.size += eventsToAdd.size();
 		this.events.addAll(eventsToAdd);
-		this.outcomes = null;
-		this.features = null;
+		GenericEvents owner = source==null ? this : source;
+		synchronized (owner) {
+			if (owner.vocabulary!=null)
+				owner.vocabulary.addAll(eventsToAdd);
+		}
 	}
 	public Collection<GenericEvent> getEvents() {
 		return events;
 	}
 	
+	/**
+	 * The events to be used for training, i.e. those which aren't test events.
+	 * @return
+	 */
+	public Iterable<GenericEvent> getTrainingEvents() {
+		return new TestEventFilter(false);
+	}
+	
+	/**
+	 * The test events, as given by event.isTest(), or by the test mask for a view with a test mask.
+	 * @return
+	 */
+	public Iterable<GenericEvent> getTestEvents() {
+		return new TestEventFilter(true);
+	}
+	
+	private final class TestEventFilter implements Iterable<GenericEvent> {
+		private boolean test;
+		
+		public TestEventFilter(boolean test) {
+			this.test = test;
+		}
+		
+		@Override
+		public Iterator<GenericEvent> iterator() {
+			return new Iterator<GenericEvent>() {
+				private Iterator<GenericEvent> eventIterator = events.iterator();
+				private int index = -1;
+				private GenericEvent nextEvent = null;
+
+				@Override
+				public boolean hasNext() {
+					while (nextEvent==null && eventIterator.hasNext()) {
+						GenericEvent event = eventIterator.next();
+						index++;
+						boolean isTest = testMask==null ? event.isTest() : testMask.get(index);
+						if (isTest==test)
+							nextEvent = event;
+					}
+					return nextEvent!=null;
+				}
+
+				@Override
+				public GenericEvent next() {
+					if (!this.hasNext())
+						throw new NoSuchElementException();
+					GenericEvent event = nextEvent;
+					nextEvent = null;
+					return event;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+	
 	
 }
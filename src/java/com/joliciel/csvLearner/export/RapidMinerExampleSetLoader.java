@@ -18,30 +18,52 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner.export;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
+import com.joliciel.csvLearner.EventVocabulary;
+import com.joliciel.csvLearner.FeatureDictionary;
 import com.joliciel.csvLearner.GenericEvent;
 import com.joliciel.csvLearner.GenericEvents;
 import com.rapidminer.example.Attribute;
 import com.rapidminer.example.ExampleSet;
 import com.rapidminer.example.table.AttributeFactory;
+import com.rapidminer.example.table.DataRow;
 import com.rapidminer.example.table.DoubleArrayDataRow;
+import com.rapidminer.example.table.DoubleSparseArrayDataRow;
 import com.rapidminer.example.table.MemoryExampleTable;
 import com.rapidminer.tools.Ontology;
-		
+
+/**
+ * Loads GenericEvents into a RapidMiner ExampleSet, with one real attribute per feature.<br/>
+ * Each row is filled from the event's own features, via a map from FeatureDictionary id to attribute column
+ * calculated once for all events, rather than looking up every feature in every event.
+ * If sparse is true, rows are stored as sparse data rows, holding only the non-zero values,
+ * which is required for large feature sets where most features are absent from any given event.
+ * @author Assaf Urieli
+ *
+ */
 public class RapidMinerExampleSetLoader {
+	private boolean sparse = false;
 
 	public ExampleSet createExampleSet(GenericEvents events) {
 		return this.createExampleSet(events, false, null);
 	}
 	
 	public ExampleSet createExampleSet(GenericEvents events, boolean forPrediction, Set<String> outcomes) {
-		// create attribute list
-		List <Attribute> attributes = new LinkedList<Attribute>();
-		for (String feature : events.getFeatures()) {
-			attributes.add( AttributeFactory.createAttribute (feature,Ontology.REAL));
+		// create attribute list, and map each feature's dictionary id to its column
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		List <Attribute> attributes = new ArrayList<Attribute>();
+		int[] columnByFeatureId = new int[dictionary.size()];
+		Arrays.fill(columnByFeatureId, -1);
+		EventVocabulary vocabulary = events.getVocabulary();
+		int[] featureIds = vocabulary.getFeatureIds();
+		String[] featureNames = vocabulary.getFeatureNames();
+		for (int i=0; i<featureIds.length; i++) {
+			columnByFeatureId[featureIds[i]] = attributes.size();
+			attributes.add( AttributeFactory.createAttribute (featureNames[i],Ontology.REAL));
 		}
 		
 		if (forPrediction) {
@@ -72,24 +94,54 @@ public class RapidMinerExampleSetLoader {
 		MemoryExampleTable table = new MemoryExampleTable(attributes);
 		// fill table (here : only real values )
 
+		int[] columns = new int[16];
+		double[] values = new double[16];
 		for (GenericEvent event : events) {
 			if ((!event.isTest()&&!forPrediction)||(event.isTest()&&forPrediction)) {
-				double[] data = new double[attributes.size()];
-				int a = 0;
-				for (String feature : events.getFeatures()) {
-					int featureIndex = event.getFeatureIndex(feature);
-					//fill with proper data here
-					if (featureIndex < 0)
-						data[a] = 0;
-					else
-						data[a] = event.getWeights().get(featureIndex);
-	
-					a++;
+				int cellCount = 0;
+				for (int i=0; i<event.getFeatureCount(); i++) {
+					if (cellCount + 2 > columns.length) {
+						columns = Arrays.copyOf(columns, columns.length * 2);
+						values = Arrays.copyOf(values, values.length * 2);
+					}
+					int featureId = event.getFeatureId(i);
+					int column = featureId < columnByFeatureId.length ? columnByFeatureId[featureId] : -1;
+					if (column>=0) {
+						columns[cellCount] = column;
+						values[cellCount] = event.getWeight(i);
+						cellCount++;
+					}
+					
+					// as with GenericEvent.getFeatureIndex, the column of a nominal feature's base name,
+					// if the event doesn't have the base feature itself, takes the nominal feature's weight
+					int baseId = dictionary.getBaseId(featureId);
+					if (baseId>=0 && baseId<columnByFeatureId.length && columnByFeatureId[baseId]>=0) {
+						String baseName = dictionary.getName(baseId);
+						if (event.indexOf(baseName)<0 && event.getFeatureIndex(baseName)==i) {
+							columns[cellCount] = columnByFeatureId[baseId];
+							values[cellCount] = event.getWeight(i);
+							cellCount++;
+						}
+					}
 				}
 				// maps the nominal classification to a double value
-				data[data.length - 1] = label.getMapping().mapString(event.getOutcome());
+				double outcome = label.getMapping().mapString(event.getOutcome());
+				
+				DataRow dataRow = null;
+				if (sparse) {
+					dataRow = new DoubleSparseArrayDataRow(cellCount + 1);
+					for (int j=0; j<cellCount; j++)
+						dataRow.set(attributes.get(columns[j]), values[j]);
+					dataRow.set(label, outcome);
+				} else {
+					double[] data = new double[attributes.size()];
+					for (int j=0; j<cellCount; j++)
+						data[columns[j]] = values[j];
+					data[data.length - 1] = outcome;
+					dataRow = new DoubleArrayDataRow(data);
+				}
 				//add data row
-				table.addDataRow(new DoubleArrayDataRow(data));
+				table.addDataRow(dataRow);
 			}
 		}
 		// create example set
@@ -106,4 +158,16 @@ public class RapidMinerExampleSetLoader {
 		return exampleSet;
 	}
 
+	/**
+	 * Whether rows should be stored as sparse data rows. Default: false.
+	 * @return
+	 */
+	public boolean isSparse() {
+		return sparse;
+	}
+
+	public void setSparse(boolean sparse) {
+		this.sparse = sparse;
+	}
+
 }
\ No newline at end of file
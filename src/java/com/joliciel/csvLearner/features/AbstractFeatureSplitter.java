@@ -18,6 +18,7 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner.features;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -29,8 +30,6 @@ import java.util.ArrayList;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import com.joliciel.csvLearner.NameValuePair;
-
 /**
  * A feature splitter that attempts to split at the point
  * giving maximum information gain, assuming a certain condition is met
@@ -44,83 +43,123 @@ public abstract class AbstractFeatureSplitter implements FeatureSplitter {
 	/** The natural logarithm of 2 */
 //	private static double LOG2 = Math.log(2);
 
+	/**
+	 * Information gains closer than this are considered equal, the first split being kept,
+	 * and gains below it are considered to be no gain.
+	 * The gains are calculated from running sums of c log c, which can differ in the last few bits
+	 * from the exact entropy of each side (see Split.getEntropy()), so that without this
+	 * a tie would be resolved differently from an exhaustive scan.
+	 */
+	static final double GAIN_EPSILON = 1e-10;
+
 	private int minNodeSize = 1;
 	private int maxDepth = -1;
 	private double minErrorRate = -1;
 
-	private double originalEntropy = -1;
-	private Map<Integer,Set<Split>> splitsByDepth = null;
+	private ThreadLocal<Map<Integer,Set<Split>>> splitsByDepthHolder = new ThreadLocal<Map<Integer,Set<Split>>>();
+	private ThreadLocal<double[]> countLogCountsHolder = new ThreadLocal<double[]>();
 
 	/* (non-Javadoc)
-	 * @see com.joliciel.csvLearner.features.FeatureSplitter#split(java.util.List)
+	 * @see com.joliciel.csvLearner.features.FeatureSplitter#split(com.joliciel.csvLearner.features.SortedFeatureColumn)
 	 */
 	@Override
-	public List<Integer> split(List<NameValuePair> featureValues) {
+	public List<Integer> split(SortedFeatureColumn column) {
 		Set<Integer> splits = new TreeSet<Integer>();
-		splitsByDepth = new TreeMap<Integer, Set<Split>>();
-		Split subset = new Split(featureValues, 0, featureValues.size()-1);
-		this.splitInternal(subset, splits, 1);
+		Map<Integer,Set<Split>> splitsByDepth = new TreeMap<Integer, Set<Split>>();
+		Split subset = new Split(column, 0, column.size()-1);
+		int[] boundaryPoints = this.getBoundaryPoints(subset);
+		this.splitInternal(subset, boundaryPoints, splits, splitsByDepth, 1);
+		splitsByDepthHolder.set(splitsByDepth);
 		List<Integer> splitList = new ArrayList<Integer>(splits);
 		return splitList;
 	}
 
-	void splitInternal(Split subset, Set<Integer> splits, int depth) {
+	void splitInternal(Split subset, int[] boundaryPoints, Set<Integer> splits, Map<Integer,Set<Split>> splitsByDepth, int depth) {
 		if (maxDepth>0 && depth>maxDepth)
 			return;
 		Collection<Split> theSplits = new ArrayList<Split>();
-		int splitIndex = this.split(subset, theSplits);
+		int splitIndex = this.split(subset, boundaryPoints, theSplits);
 
-		Set<Split> currentLevelSplits = this.splitsByDepth.get(depth);
+		Set<Split> currentLevelSplits = splitsByDepth.get(depth);
 		if (currentLevelSplits==null) {
 			currentLevelSplits = new TreeSet<Split>();
-			this.splitsByDepth.put(depth, currentLevelSplits);
+			splitsByDepth.put(depth, currentLevelSplits);
 		}
 		currentLevelSplits.addAll(theSplits);
 
 		if (splitIndex >= 0) {
 			splits.add(splitIndex);
 			if (splitIndex - subset.getStartIndex() >= minNodeSize * 2) {
-				Split leftSubset = new Split(subset.getFeatureValues(), subset.getStartIndex(), splitIndex);
-				this.splitInternal(leftSubset, splits, depth+1);
+				Split leftSubset = new Split(subset.getColumn(), subset.getStartIndex(), splitIndex);
+				this.splitInternal(leftSubset, boundaryPoints, splits, splitsByDepth, depth+1);
 			}
 			if (subset.getEndIndex() - (splitIndex+1) >= minNodeSize * 2) {
-				Split rightSubset = new Split(subset.getFeatureValues(), splitIndex+1, subset.getEndIndex());
-				this.splitInternal(rightSubset, splits, depth+1);
+				Split rightSubset = new Split(subset.getColumn(), splitIndex+1, subset.getEndIndex());
+				this.splitInternal(rightSubset, boundaryPoints, splits, splitsByDepth, depth+1);
 			}
 		}
 	}
 
 	/**
 	 * Splits a list at the index which gives the maximum information gain, if >= a certain threshold.
-	 * @param featureValues an ordered list of weighted outcomes (by weight)
-	 * @param startIndex the start index of the splittable range in featureValues
-	 * @param endIndex the end index of the splittable range in featureValues
+	 * @param subset the splittable range of a sorted column of feature values
 	 * @return the index at which to split the weightedOutcomes, or -1 if no split. Everything <= this index is in one class, the remainder in another class.
 	 */
 	int split(Split subset) {
-		return this.split(subset, null);
+		return this.split(subset, this.getBoundaryPoints(subset), null);
+	}
+	
+	/**
+	 * The boundary points of a subset, in the sense of Fayyad and Irani:
+	 * the indexes of the last data point of each value,
+	 * unless all of the data points for this value and the next one have the same outcome.
+	 * The split maximising information gain is always at a boundary point
+	 * (within the range allowed by minNodeSize),
+	 * and since a subset's boundary points remain boundary points in any split of that subset,
+	 * they only need to be calculated once per feature.
+	 * @param subset
+	 * @return the boundary points, in increasing order
+	 */
+	int[] getBoundaryPoints(Split subset) {
+		double[] values = subset.getColumn().getValues();
+		int[] outcomeIds = subset.getColumn().getOutcomeIds();
+		int[] boundaryPoints = new int[subset.getSize()];
+		int boundaryPointCount = 0;
+		int previousEnd = -1;
+		// the single outcome of the previous value's data points, or -1 if there are several
+		int previousOutcome = -1;
+		int i = subset.getStartIndex();
+		while (i <= subset.getEndIndex()) {
+			double value = values[i];
+			int outcome = outcomeIds[i];
+			int j = i;
+			while (j < subset.getEndIndex() && values[j+1]==value) {
+				j++;
+				if (outcomeIds[j]!=outcome)
+					outcome = -1;
+			}
+			if (i > subset.getStartIndex() && (outcome<0 || outcome!=previousOutcome))
+				boundaryPoints[boundaryPointCount++] = previousEnd;
+			previousEnd = j;
+			previousOutcome = outcome;
+			i = j+1;
+		}
+		return Arrays.copyOf(boundaryPoints, boundaryPointCount);
 	}
 
 	/**
 	 * Splits a list at the index which gives the maximum information gain, if >= a certain threshold.
-	 * @param featureValues an ordered list of weighted outcomes (by weight)
-	 * @param startIndex the start index of the splittable range in featureValues
-	 * @param endIndex the end index of the splittable range in featureValues
+	 * @param subset the splittable range of a sorted column of feature values
+	 * @param boundaryPoints the boundary points of the feature values (see getBoundaryPoints()), the only places where we look for a split
 	 * @param theSplits if not null, will store the two splits
 	 * @return the index at which to split the weightedOutcomes, or -1 if no split. Everything <= this index is in one class, the remainder in another class.
 	 */
-	int split(Split subset, Collection<Split> theSplits) {
-		// TODO: it seems likely that the information gain peaks at each level of recursion fall at the same places
-		// as the peaks at the previous levels of recursion. Therefore, if we pass in the positions of
-		// all the peaks, we could limit ourselves to looking at information gain at those positions only.
-		Map<String,Integer> outcomeCountsRight = new TreeMap<String, Integer>();
-		outcomeCountsRight.putAll(subset.getOutcomeCounts());
+	int split(Split subset, int[] boundaryPoints, Collection<Split> theSplits) {
+		int[] outcomeIds = subset.getColumn().getOutcomeIds();
+		int[] outcomeCountsRight = subset.getOutcomeIdCounts().clone();
+		int[] outcomeCountsLeft = new int[outcomeCountsRight.length];
 		int maxOutcomeCount = subset.getMaxOutcomeCount();
 		
-		Map<String,Integer> outcomeCountsLeft = new TreeMap<String, Integer>();
-		for (String outcome : outcomeCountsRight.keySet()) {
-			outcomeCountsLeft.put(outcome, 0);
-		}
 		int totalCount = (subset.getEndIndex() - subset.getStartIndex()) + 1;
 		int totalRight = totalCount;
 		int totalLeft = 0;
@@ -128,8 +167,6 @@ public abstract class AbstractFeatureSplitter implements FeatureSplitter {
 		double entropy = subset.getEntropy();
 		if (entropy==0)
 			return -1;
-		if (originalEntropy<0)
-			originalEntropy = entropy;
 
 		LOG.trace("Split size: " + totalCount);
 		double errorRateForMajorityOutcome = ((double)(totalCount - maxOutcomeCount) / (double) totalCount) * 100;
@@ -137,63 +174,94 @@ public abstract class AbstractFeatureSplitter implements FeatureSplitter {
 		if (this.minErrorRate>0 && errorRateForMajorityOutcome<this.minErrorRate)
 			return -1;
 
+		// The entropy on either side is (n log n - sum(c log c)) / n, with the sums kept up to date
+		// as each data point moves from right to left, so that each candidate split costs O(1).
+		double[] countLogCounts = this.getCountLogCounts(totalCount);
+		double sumCountLogCountLeft = 0;
+		double sumCountLogCountRight = 0;
+		for (int count : outcomeCountsRight)
+			sumCountLogCountRight += countLogCounts[count];
+
 		LOG.trace("startIndex: " + subset.getStartIndex());
 		LOG.trace("endIndex: " + subset.getEndIndex());
 		LOG.trace("entropy: " + entropy);
 		double maxInformationGain = 0;
 		int maxGainIndex = -1;
 		double maxGainValue = 0;
-		double maxGainEntropyLeft = 0;
-		double maxGainEntropyRight = 0;
-		for (int i = subset.getStartIndex(); i <= subset.getEndIndex() - 1; i++) {
-			NameValuePair dataPoint = subset.getFeatureValues().get(i);
-			LOG.trace("index "+ i);
-			String outcome = dataPoint.getName();
-			int leftCount = outcomeCountsLeft.get(outcome);
-			int rightCount = outcomeCountsRight.get(outcome);
-			outcomeCountsLeft.put(outcome, leftCount+1);
-			outcomeCountsRight.put(outcome, rightCount-1);
-			totalLeft += 1;
-			totalRight -= 1;
-			if (i<subset.getEndIndex()) {
-				// if the next outcome has the same value as the current one, then skip this one
-				if (subset.getFeatureValues().get(i+1).getValue()==dataPoint.getValue()) {
-					LOG.trace("Skipping");
-					continue;
-				}
+		double[] values = subset.getColumn().getValues();
+		int startIndex = subset.getStartIndex();
+		int endIndex = subset.getEndIndex();
+		
+		// If minNodeSize cuts off part of a run of non-boundary points, the end of the allowed range
+		// could give a better split than any boundary point, so these are considered as well.
+		int firstAllowedIndex = -1;
+		int lastAllowedIndex = -1;
+		if (minNodeSize > 1) {
+			int j = startIndex + minNodeSize - 1;
+			while (j < endIndex && values[j+1]==values[j])
+				j++;
+			if (j < endIndex)
+				firstAllowedIndex = j;
+			j = Math.min(endIndex - minNodeSize + 1, endIndex - 1);
+			while (j >= startIndex && values[j+1]==values[j])
+				j--;
+			if (j >= startIndex)
+				lastAllowedIndex = j;
+		}
+		
+		int b = Arrays.binarySearch(boundaryPoints, startIndex);
+		if (b < 0)
+			b = -b - 1;
+		int position = startIndex - 1;
+		while (true) {
+			int i = Integer.MAX_VALUE;
+			if (b < boundaryPoints.length && boundaryPoints[b] < endIndex)
+				i = boundaryPoints[b];
+			if (firstAllowedIndex > position && firstAllowedIndex < i)
+				i = firstAllowedIndex;
+			if (lastAllowedIndex > position && lastAllowedIndex < i)
+				i = lastAllowedIndex;
+			if (i==Integer.MAX_VALUE)
+				break;
+			if (b < boundaryPoints.length && boundaryPoints[b]==i)
+				b++;
+			
+			// move the data points up to this one from right to left
+			for (int j = position + 1; j <= i; j++) {
+				int outcomeId = outcomeIds[j];
+				int leftCount = outcomeCountsLeft[outcomeId];
+				int rightCount = outcomeCountsRight[outcomeId];
+				sumCountLogCountLeft += countLogCounts[leftCount+1] - countLogCounts[leftCount];
+				sumCountLogCountRight += countLogCounts[rightCount-1] - countLogCounts[rightCount];
+				outcomeCountsLeft[outcomeId] = leftCount+1;
+				outcomeCountsRight[outcomeId] = rightCount-1;
 			}
+			totalLeft += i - position;
+			totalRight -= i - position;
+			position = i;
+			
 			// only consider nodes >= minNodeSize
-			if ((i-subset.getStartIndex())+1 < minNodeSize)
+			if ((i-startIndex)+1 < minNodeSize)
 				continue;
-			if ((subset.getEndIndex()-i)+1 < minNodeSize)
+			if ((endIndex-i)+1 < minNodeSize)
 				continue;
-			double entropyLeft = EntropyCalculator.getEntropy(outcomeCountsLeft.values(), totalLeft);
-			LOG.trace("entropyLeft: " + entropyLeft);
-
-			double proportionalEntropyLeft = ((double)totalLeft / (double)totalCount) * entropyLeft;
-
-			double entropyRight = EntropyCalculator.getEntropy(outcomeCountsRight.values(), totalRight);
-
-			LOG.trace("entropyRight: " + entropyRight);
-
-			double proportionalEntropyRight = ((double)totalRight / (double)totalCount) * entropyRight;
-
-			double splitEntropy = proportionalEntropyLeft + proportionalEntropyRight;
+			
+			// the sum of the entropy on each side, weighted by the proportion of the data points on that side
+			double splitEntropy = ((countLogCounts[totalLeft] - sumCountLogCountLeft)
+					+ (countLogCounts[totalRight] - sumCountLogCountRight)) / (double) totalCount;
 			double informationGain = entropy - splitEntropy;
-			LOG.trace("Split at index " + i + ", value " +  dataPoint.getValue() + ": " + informationGain);
-			if (informationGain > maxInformationGain) {
+			if (LOG.isTraceEnabled())
+				LOG.trace("Split at index " + i + ", value " +  values[i] + ": " + informationGain);
+			if (informationGain > maxInformationGain + GAIN_EPSILON) {
 				maxInformationGain = informationGain;
 				maxGainIndex = i;
-				maxGainValue = dataPoint.getValue();
-				maxGainEntropyLeft = entropyLeft;
-				maxGainEntropyRight = entropyRight;
+				maxGainValue = values[i];
 			}
 		}
 
 		LOG.trace("maxInformationGain: " + maxInformationGain);
 		LOG.trace("maxGainIndex: " + maxGainIndex);
 		LOG.trace("maxGainValue: " + maxGainValue);
-		LOG.trace("originalEntropy: " + originalEntropy);
 		int splitIndex = -1;
 		
 		if (!this.checkStopCondition(subset, maxGainIndex, maxInformationGain))
@@ -202,12 +270,8 @@ public abstract class AbstractFeatureSplitter implements FeatureSplitter {
 		if (splitIndex>=0) {
 			LOG.trace("Adding split " + maxGainIndex);
 			if (theSplits!=null) {
-				Split leftSplit = new Split(subset.getFeatureValues(), subset.getStartIndex(), splitIndex);
-				leftSplit.setEntropy(maxGainEntropyLeft);
-				theSplits.add(leftSplit);
-				Split rightSplit = new Split(subset.getFeatureValues(), splitIndex+1, subset.getEndIndex());
-				rightSplit.setEntropy(maxGainEntropyRight);
-				theSplits.add(rightSplit);
+				theSplits.add(new Split(subset.getColumn(), subset.getStartIndex(), splitIndex));
+				theSplits.add(new Split(subset.getColumn(), splitIndex+1, subset.getEndIndex()));
 			}
 		} else {
 			if (theSplits!=null) {
@@ -219,6 +283,22 @@ public abstract class AbstractFeatureSplitter implements FeatureSplitter {
 		return splitIndex;
 	}
 
+	/**
+	 * A table of c log c for each count c up to maxCount,
+	 * kept for the current thread and extended as required.
+	 */
+	private double[] getCountLogCounts(int maxCount) {
+		double[] countLogCounts = countLogCountsHolder.get();
+		if (countLogCounts==null || countLogCounts.length<=maxCount) {
+			int fromCount = countLogCounts==null ? 0 : countLogCounts.length;
+			int length = Math.max(maxCount+1, fromCount*2);
+			countLogCounts = countLogCounts==null ? new double[length] : Arrays.copyOf(countLogCounts, length);
+			EntropyCalculator.fillCountLogCounts(countLogCounts, fromCount);
+			countLogCountsHolder.set(countLogCounts);
+		}
+		return countLogCounts;
+	}
+
 	/**
 	 * The min node size to allow for the splits.
 	 */
@@ -257,7 +337,7 @@ public abstract class AbstractFeatureSplitter implements FeatureSplitter {
 
 	@Override
 	public Map<Integer, Set<Split>> getSplitsByDepth() {
-		return splitsByDepth;
+		return splitsByDepthHolder.get();
 	}
 	
 	public abstract boolean checkStopCondition(Split subset, int proposedSplit, double informationGain);
@@ -20,6 +20,7 @@ package com.joliciel.csvLearner.features;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -41,46 +42,71 @@ public class BestFeatureFinder {
 	private static final Log LOG = LogFactory.getLog(BestFeatureFinder.class);
 	private static final String TOTAL_ENTROPY = "### Total Entropy ###";
 	private FeatureSplitter featureSplitter = null;
+	private int threadCount = 1;
 	
 	public BestFeatureFinder(FeatureSplitter featureSplitter) {
 		this.featureSplitter = featureSplitter;
 	}
 	
 	public List<NameValuePair> getBestFeatures(GenericEvents events, String testOutcome, int featureCount) {
+		return this.getBestFeatures(new FeatureColumns(events), testOutcome, featureCount);
+	}
+	
+	/**
+	 * Get the features giving the most information gain, from a columnar view of the events,
+	 * which can be shared by successive calls for different test outcomes.
+	 * @param columns the columnar view of the events
+	 * @param testOutcome if not null, the outcome to evaluate against all others
+	 * @param featureCount the number of features to return
+	 * @return the total entropy, followed by the best features with their information gain
+	 */
+	public List<NameValuePair> getBestFeatures(FeatureColumns columns, String testOutcome, int featureCount) {
 		LOG.debug("testOutcome: " + testOutcome);
 		List<NameValuePair> bestFeatures = new ArrayList<NameValuePair>();
 
 		RealValueFeatureEvaluator evaluator = new RealValueFeatureEvaluator();
 		evaluator.setFeatureSplitter(featureSplitter);
-		try {
-			Set<String> features = events.getFeatures();
+		evaluator.setThreadCount(threadCount);
+		List<String> features = Arrays.asList(columns.getFeatureNames());
+		List<List<Double>> entropies = evaluator.evaluateFeatures(columns, features, testOutcome);
 
-			PriorityQueue<NameValuePair> heap = new PriorityQueue<NameValuePair>(features.size(), new NameValueDescendingComparator());
-			double eventSpaceEntropy = -1;
-			for (String feature : features) {
-				List<Double> featureEntropies = evaluator.evaluateFeature(events, feature, testOutcome);
-				double informationGain = featureEntropies.get(0) - featureEntropies.get(featureEntropies.size()-1);
-				if (eventSpaceEntropy<0)
-					eventSpaceEntropy = featureEntropies.get(0);
-				NameValuePair pair = new NameValuePair(feature, informationGain);
-				heap.add(pair);
-			}
-			bestFeatures.add(new NameValuePair(TOTAL_ENTROPY, eventSpaceEntropy));
-			for (int i = 0; i< featureCount; i++) {
-				NameValuePair pair = heap.poll();
-				if (pair==null)
-					break;
-				LOG.debug("feature: " + pair.getName() + ", " + pair.getValue());
+		// the heap is filled in feature order, so that features with equal gain are ranked as in a sequential run
+		PriorityQueue<NameValuePair> heap = new PriorityQueue<NameValuePair>(features.size(), new NameValueDescendingComparator());
+		double eventSpaceEntropy = -1;
+		for (int j = 0; j < features.size(); j++) {
+			String feature = features.get(j);
+			List<Double> featureEntropies = entropies.get(j);
+			double informationGain = featureEntropies.get(0) - featureEntropies.get(featureEntropies.size()-1);
+			if (eventSpaceEntropy<0)
+				eventSpaceEntropy = featureEntropies.get(0);
+			NameValuePair pair = new NameValuePair(feature, informationGain);
+			heap.add(pair);
+		}
+		bestFeatures.add(new NameValuePair(TOTAL_ENTROPY, eventSpaceEntropy));
+		for (int i = 0; i< featureCount; i++) {
+			NameValuePair pair = heap.poll();
+			if (pair==null)
+				break;
+			LOG.debug("feature: " + pair.getName() + ", " + pair.getValue());
 	
-				bestFeatures.add(pair);
-			}
-			heap = null;
-		} finally {
-			evaluator.logPerformance();
+			bestFeatures.add(pair);
 		}
+		heap = null;
 		return bestFeatures;
 	}
 
+	/**
+	 * The number of threads used to evaluate the features. The ranking is identical to a single-threaded run. Default: 1.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
 	public FeatureSplitter getFeatureSplitter() {
 		return featureSplitter;
 	}
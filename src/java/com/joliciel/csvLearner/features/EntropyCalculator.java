@@ -40,4 +40,35 @@ public class EntropyCalculator {
 		// entropy = entropy / LOG2;
 		return entropy;
 	}
+	
+	/**
+	 * Calculates the entropy given an array of counts.
+	 * @param counts
+	 * @param totalCount
+	 * @return
+	 */
+	static double getEntropy(int[] counts, int totalCount) {
+		double entropy = 0;
+
+		for (int count : counts) {
+			if (count > 0) {
+				double proportion = ((double) count / (double) totalCount);
+				entropy -=  proportion * Math.log(proportion);
+			}
+		}
+		return entropy;
+	}
+	
+	/**
+	 * Fills an array with c * log(c) for each count c from 0 to the array's length - 1 (with 0 log 0 = 0).
+	 * The entropy of a set of counts summing up to n is then
+	 * (n log n - &Sigma; c log c) / n,
+	 * and the sum can be maintained incrementally as counts are moved from one set to another.
+	 * @param countLogCounts
+	 * @param fromCount the first count for which the array isn't yet filled
+	 */
+	static void fillCountLogCounts(double[] countLogCounts, int fromCount) {
+		for (int count = fromCount; count < countLogCounts.length; count++)
+			countLogCounts[count] = count==0 ? 0 : count * Math.log(count);
+	}
 }
@@ -1,16 +1,9 @@
 //Copyright (C) 2011 Assaf Urieli
 package com.joliciel.csvLearner.features;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import com.joliciel.csvLearner.NameValuePair;
-
 public class FayyadIraniSplitter extends AbstractFeatureSplitter {
 	private static final Log LOG = LogFactory.getLog(FayyadIraniSplitter.class);
 
@@ -22,29 +15,21 @@ public class FayyadIraniSplitter extends AbstractFeatureSplitter {
 		int numClassesTotal, numClassesRight, numClassesLeft;
 
 		// get the outcome counts for the whole set & for left and right splits
-		Map<String,Integer> outcomeCounts = new TreeMap<String, Integer>();
-		Map<String,Integer> outcomeCountsLeft = new TreeMap<String, Integer>();
-		Map<String,Integer> outcomeCountsRight = new TreeMap<String, Integer>();
-		Set<String> outcomes = new TreeSet<String>();
-		for (int i = subset.getStartIndex(); i <= subset.getEndIndex(); i++) {
-			outcomes.add(subset.getFeatureValues().get(i).getName());
-		}
-		for (String outcome : outcomes) {
-			outcomeCounts.put(outcome, 0);
-			outcomeCountsLeft.put(outcome, 0);
-			outcomeCountsRight.put(outcome, 0);
-		}
-		for (int i = subset.getStartIndex(); i <= subset.getEndIndex(); i++) {
-			NameValuePair dataPoint = subset.getFeatureValues().get(i);
-			int outcomeCount = outcomeCounts.get(dataPoint.getName());
-			outcomeCounts.put(dataPoint.getName(), outcomeCount+1);
-			if (i<=proposedSplit) {
-				int outcomeCountLeft = outcomeCountsLeft.get(dataPoint.getName());
-				outcomeCountsLeft.put(dataPoint.getName(), outcomeCountLeft+1);
-			} else {
-				int outcomeCountRight = outcomeCountsRight.get(dataPoint.getName());
-				outcomeCountsRight.put(dataPoint.getName(), outcomeCountRight+1);
-			}
+		// counting whichever side is smaller, and deducing the other
+		int[] outcomeIds = subset.getColumn().getOutcomeIds();
+		int[] outcomeCounts = subset.getOutcomeIdCounts();
+		int[] outcomeCountsLeft = new int[outcomeCounts.length];
+		int[] outcomeCountsRight = new int[outcomeCounts.length];
+		if (proposedSplit - subset.getStartIndex() < subset.getEndIndex() - proposedSplit) {
+			for (int i = subset.getStartIndex(); i <= proposedSplit; i++)
+				outcomeCountsLeft[outcomeIds[i]]++;
+			for (int j = 0; j < outcomeCounts.length; j++)
+				outcomeCountsRight[j] = outcomeCounts[j] - outcomeCountsLeft[j];
+		} else {
+			for (int i = proposedSplit+1; i <= subset.getEndIndex(); i++)
+				outcomeCountsRight[outcomeIds[i]]++;
+			for (int j = 0; j < outcomeCounts.length; j++)
+				outcomeCountsLeft[j] = outcomeCounts[j] - outcomeCountsRight[j];
 		}
 
 		int totalCount = (subset.getEndIndex()-subset.getStartIndex())+1;
@@ -55,12 +40,12 @@ public class FayyadIraniSplitter extends AbstractFeatureSplitter {
 		LOG.trace("rightCount: " + rightCount);
 
 		// Compute entropy before split.
-		priorEntropy = EntropyCalculator.getEntropy(outcomeCounts.values(), totalCount);
+		priorEntropy = subset.getEntropy();
 
 
 		// Compute entropy after split.
-		entropyLeft = EntropyCalculator.getEntropy(outcomeCountsLeft.values(), leftCount);
-		entropyRight = EntropyCalculator.getEntropy(outcomeCountsRight.values(), rightCount);
+		entropyLeft = EntropyCalculator.getEntropy(outcomeCountsLeft, leftCount);
+		entropyRight = EntropyCalculator.getEntropy(outcomeCountsRight, rightCount);
 		entropy = ((double) leftCount / (double) totalCount) * entropyLeft 
 			+ ((double) rightCount / (double) totalCount) * entropyRight ;
 
@@ -69,19 +54,17 @@ public class FayyadIraniSplitter extends AbstractFeatureSplitter {
 		LOG.trace("gain: " + gain);
 		
 		// Number of classes occuring in the set
-		numClassesTotal = outcomes.size();
-
+		numClassesTotal = 0;
 		// Number of classes occuring in the left subset
 		numClassesLeft = 0;
-		for (int i : outcomeCountsLeft.values()) {
-			if (i > 0)
-				numClassesLeft++;
-		}
-
 		// Number of classes occuring in the right subset
 		numClassesRight = 0;
-		for (int i : outcomeCountsRight.values()) {
-			if (i > 0)
+		for (int j = 0; j < outcomeCounts.length; j++) {
+			if (outcomeCounts[j] > 0)
+				numClassesTotal++;
+			if (outcomeCountsLeft[j] > 0)
+				numClassesLeft++;
+			if (outcomeCountsRight[j] > 0)
 				numClassesRight++;
 		}
 
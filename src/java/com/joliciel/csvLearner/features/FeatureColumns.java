@@ -0,0 +1,254 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.features;
+
+import java.util.Arrays;
+
+import com.joliciel.csvLearner.EventVocabulary;
+import com.joliciel.csvLearner.FeatureDictionary;
+import com.joliciel.csvLearner.GenericEvent;
+import com.joliciel.csvLearner.GenericEvents;
+
+/**
+ * A columnar view of the training events in a GenericEvents, giving for each feature
+ * the values of the events containing it in ascending order, together with each event's outcome.<br/>
+ * The events are transposed in a single pass, after which any feature can be evaluated
+ * for any outcome without looking the feature up in each event.<br/>
+ * As with GenericEvent.getFeatureIndex(String), the column for a nominal feature's base name includes
+ * the events which have a nominal value for this base name, without having the base feature itself.
+ * @author Assaf Urieli
+ *
+ */
+public class FeatureColumns {
+	private String[] featureNames;
+	private String[] outcomes;
+	private int[] outcomeCounts;
+	private int trainingEventCount = 0;
+	private int eventCount;
+	private int[] columnStarts;
+	private float[] values;
+	private int[] outcomeIndexes;
+	
+	public FeatureColumns(GenericEvents events) {
+		this(events, true);
+	}
+	
+	/**
+	 * @param events
+	 * @param includeNominalBaseNames if false, the column for a nominal feature's base name only includes
+	 * events having the base feature itself, as with GenericEvent.indexOf(String).
+	 */
+	public FeatureColumns(GenericEvents events, boolean includeNominalBaseNames) {
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		EventVocabulary vocabulary = events.getVocabulary();
+		this.featureNames = vocabulary.getFeatureNames();
+		this.outcomes = vocabulary.getOutcomes();
+		this.outcomeCounts = new int[outcomes.length];
+		this.eventCount = events.size();
+		
+		// count the values in each column
+		int columnCount = dictionary.size();
+		int[] columnSizes = new int[columnCount + 1];
+		int[] eventOutcomes = new int[events.size()];
+		for (GenericEvent event : events.getTrainingEvents()) {
+			int outcomeIndex = Arrays.binarySearch(outcomes, event.getOutcome());
+			outcomeCounts[outcomeIndex]++;
+			eventOutcomes[trainingEventCount++] = outcomeIndex;
+			for (int i=0; i<event.getFeatureCount(); i++) {
+				int featureId = event.getFeatureId(i);
+				columnSizes[featureId]++;
+				int baseId = dictionary.getBaseId(featureId);
+				if (includeNominalBaseNames && baseId>=0 && event.getFeatureIndex(baseId)==i)
+					columnSizes[baseId]++;
+			}
+		}
+		
+		columnStarts = new int[columnCount + 1];
+		for (int featureId=0; featureId<columnCount; featureId++)
+			columnStarts[featureId+1] = columnStarts[featureId] + columnSizes[featureId];
+		
+		// fill each column with its values and outcomes, packed into longs which sort by value, then by outcome
+		long[] entries = new long[columnStarts[columnCount]];
+		int[] positions = Arrays.copyOf(columnStarts, columnCount);
+		int e = 0;
+		for (GenericEvent event : events.getTrainingEvents()) {
+			int outcomeIndex = eventOutcomes[e++];
+			for (int i=0; i<event.getFeatureCount(); i++) {
+				int featureId = event.getFeatureId(i);
+				long entry = pack(event.getWeight(i), outcomeIndex);
+				entries[positions[featureId]++] = entry;
+				int baseId = dictionary.getBaseId(featureId);
+				if (includeNominalBaseNames && baseId>=0 && event.getFeatureIndex(baseId)==i)
+					entries[positions[baseId]++] = entry;
+			}
+		}
+		eventOutcomes = null;
+		positions = null;
+		
+		values = new float[entries.length];
+		outcomeIndexes = new int[entries.length];
+		for (int featureId=0; featureId<columnCount; featureId++) {
+			Arrays.sort(entries, columnStarts[featureId], columnStarts[featureId+1]);
+		}
+		for (int j=0; j<entries.length; j++) {
+			values[j] = unpackValue(entries[j]);
+			outcomeIndexes[j] = (int) entries[j];
+		}
+	}
+	
+	private static long pack(float value, int outcomeIndex) {
+		// -0.0 is equal to 0.0 when comparing values
+		int bits = Float.floatToIntBits(value==0 ? 0f : value);
+		bits ^= (bits >> 31) & 0x7fffffff;
+		return ((long) bits << 32) | outcomeIndex;
+	}
+	
+	private static float unpackValue(long entry) {
+		int bits = (int) (entry >> 32);
+		bits ^= (bits >> 31) & 0x7fffffff;
+		return Float.intBitsToFloat(bits);
+	}
+	
+	/**
+	 * The names of the features found in any event, sorted.
+	 * @return
+	 */
+	public String[] getFeatureNames() {
+		return featureNames;
+	}
+	
+	/**
+	 * The outcomes found in any event, sorted.
+	 * @return
+	 */
+	public String[] getOutcomes() {
+		return outcomes;
+	}
+	
+	/**
+	 * The number of training events for each outcome, in the same order as getOutcomes().
+	 * @return
+	 */
+	public int[] getOutcomeCounts() {
+		return outcomeCounts;
+	}
+	
+	/**
+	 * The number of training events for a given outcome.
+	 * @param outcome
+	 * @return
+	 */
+	public int getOutcomeCount(String outcome) {
+		int outcomeIndex = Arrays.binarySearch(outcomes, outcome);
+		return outcomeIndex<0 ? 0 : outcomeCounts[outcomeIndex];
+	}
+	
+	/**
+	 * The number of training events.
+	 * @return
+	 */
+	public int getTrainingEventCount() {
+		return trainingEventCount;
+	}
+	
+	/**
+	 * The total number of events, including test events.
+	 * @return
+	 */
+	public int getEventCount() {
+		return eventCount;
+	}
+	
+	/**
+	 * The first position of a given feature's column.
+	 * @param featureId the feature's FeatureDictionary id
+	 * @return
+	 */
+	public int getColumnStart(int featureId) {
+		return featureId < 0 || featureId >= columnStarts.length - 1 ? 0 : columnStarts[featureId];
+	}
+	
+	/**
+	 * The position following the end of a given feature's column.
+	 * @param featureId the feature's FeatureDictionary id
+	 * @return
+	 */
+	public int getColumnEnd(int featureId) {
+		return featureId < 0 || featureId >= columnStarts.length - 1 ? 0 : columnStarts[featureId+1];
+	}
+	
+	/**
+	 * The value at a given position, in ascending order within each column.
+	 * @param position
+	 * @return
+	 */
+	public float getValue(int position) {
+		return values[position];
+	}
+	
+	/**
+	 * The index in getOutcomes() of the event's outcome at a given position.
+	 * @param position
+	 * @return
+	 */
+	public int getOutcomeIndex(int position) {
+		return outcomeIndexes[position];
+	}
+	
+	/**
+	 * The values of a given feature as a sorted column, as expected by a FeatureSplitter.
+	 * If testOutcome is not null, the column only has two outcomes: the test outcome, and the empty string for any other outcome.
+	 * @param featureId the feature's FeatureDictionary id
+	 * @param testOutcome
+	 * @return
+	 */
+	public SortedFeatureColumn getFeatureColumn(int featureId, String testOutcome) {
+		int start = this.getColumnStart(featureId);
+		int end = this.getColumnEnd(featureId);
+		int size = end - start;
+		double[] columnValues = new double[size];
+		for (int j=start; j<end; j++)
+			columnValues[j-start] = values[j];
+		int[] columnOutcomeIds = null;
+		String[] columnOutcomes = null;
+		if (testOutcome==null) {
+			columnOutcomes = outcomes;
+			columnOutcomeIds = Arrays.copyOfRange(outcomeIndexes, start, end);
+		} else {
+			// the empty string is ordered before the test outcome, for equal values as well
+			columnOutcomes = new String[] { "", testOutcome };
+			columnOutcomeIds = new int[size];
+			int testOutcomeIndex = Arrays.binarySearch(outcomes, testOutcome);
+			int runStart = start;
+			while (runStart<end) {
+				int runEnd = runStart + 1;
+				while (runEnd<end && values[runEnd]==values[runStart])
+					runEnd++;
+				int otherCount = 0;
+				for (int j=runStart; j<runEnd; j++)
+					if (outcomeIndexes[j]!=testOutcomeIndex)
+						otherCount++;
+				for (int j=runStart + otherCount; j<runEnd; j++)
+					columnOutcomeIds[j-start] = 1;
+				runStart = runEnd;
+			}
+		}
+		return new SortedFeatureColumn(columnOutcomes, columnValues, columnOutcomeIds, size);
+	}
+}
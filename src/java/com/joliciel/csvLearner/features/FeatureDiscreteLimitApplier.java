@@ -0,0 +1,189 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.features;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.joliciel.csvLearner.CSVEventListReader;
+import com.joliciel.csvLearner.utils.CSVCellReader;
+import com.joliciel.csvLearner.utils.CSVFormatter;
+import com.joliciel.csvLearner.utils.FloatParser;
+import com.joliciel.csvLearner.utils.MappedCSVCellReader;
+import com.joliciel.csvLearner.utils.Metrics;
+
+/**
+ * Discretizes a feature file using previously calculated discretization limits,
+ * as read by the FeatureDiscreteLimitReader, without recalculating any splits.
+ * The file is transformed row by row, so that the events never need to be held in memory.
+ * Numeric values of a feature with limits are replaced by the same class names as
+ * the RealValueFeatureDiscretizer, numeric values &lt;= 0 are treated as missing,
+ * and all other cells are copied as is.
+ * @author Assaf Urieli
+ *
+ */
+public class FeatureDiscreteLimitApplier {
+	private static final Log LOG = LogFactory.getLog(FeatureDiscreteLimitApplier.class);
+	private static final Metrics.Timer APPLY_TIMER = Metrics.getTimer("featureDiscretizer.apply");
+	private static final Metrics.Counter ROWS = Metrics.getCounter("featureDiscretizer.applyRows");
+	
+	private Map<String,double[]> featureToLimitsMap;
+	private String missingValueString = "";
+	private String identifierPrefix = "";
+	
+	public FeatureDiscreteLimitApplier(Map<String,double[]> featureToLimitsMap) {
+		this.featureToLimitsMap = featureToLimitsMap;
+	}
+	
+	/**
+	 * Discretize a single .csv or .zip feature file into outFile.
+	 * For zip files, each zip entry is written to a zip entry of the same name.
+	 */
+	public void applyLimits(File inFile, File outFile) {
+		long startTime = APPLY_TIMER.start();
+		try {
+			LOG.debug("applyLimits: " + inFile.getName());
+			outFile.delete();
+			outFile.createNewFile();
+			if (inFile.getName().endsWith(".csv")) {
+				CSVCellReader cellReader = new MappedCSVCellReader(inFile);
+				Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile, false),"UTF8"));
+				try {
+					this.applyLimits(cellReader, writer);
+				} finally {
+					cellReader.close();
+					writer.flush();
+					writer.close();
+				}
+			} else if (inFile.getName().endsWith(".zip")) {
+				ZipInputStream zis = new ZipInputStream(new FileInputStream(inFile));
+				ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outFile, false));
+				Writer writer = new BufferedWriter(new OutputStreamWriter(zos,"UTF8"));
+				try {
+					ZipEntry zipEntry;
+					while ((zipEntry = zis.getNextEntry()) != null) {
+						LOG.trace("Discretizing zip entry " + zipEntry.getName());
+						zos.putNextEntry(new ZipEntry(zipEntry.getName()));
+						this.applyLimits(new CSVCellReader(zis), writer);
+						writer.flush();
+						zos.closeEntry();
+						zis.closeEntry();
+					}
+				} finally {
+					zis.close();
+					writer.flush();
+					writer.close();
+				}
+			} else {
+				throw new RuntimeException("Bad file extension in feature directory: " + inFile.getName());
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		} finally {
+			APPLY_TIMER.stop(startTime);
+		}
+	}
+	
+	void applyLimits(CSVCellReader cellReader, Writer writer) throws IOException {
+		FloatParser floatParser = new FloatParser();
+		double[][] limitsPerColumn = null;
+		int columnCount = 0;
+		while (cellReader.nextRow()) {
+			if (limitsPerColumn==null) {
+				List<double[]> columnLimits = new ArrayList<double[]>();
+				writer.append("ID,");
+				cellReader.nextCell();
+				while (cellReader.nextCell()) {
+					String featureName = CSVEventListReader.getFeatureName(cellReader.getCell());
+					columnLimits.add(featureToLimitsMap.get(featureName));
+					writer.append(CSVFormatter.format(featureName)+",");
+				}
+				writer.append("\n");
+				limitsPerColumn = columnLimits.toArray(new double[columnLimits.size()][]);
+				columnCount = limitsPerColumn.length;
+			} else if (cellReader.nextCell()) {
+				writer.append(CSVFormatter.format(identifierPrefix + cellReader.getCell())+",");
+				int i = 0;
+				while (cellReader.nextCell()) {
+					if (i==columnCount)
+						throw new RuntimeException("Too many cells on row: " + cellReader.getRow());
+					if (floatParser.parse(cellReader.getCellBuffer(), cellReader.getCellStart(), cellReader.getCellEnd())) {
+						float value = floatParser.getValue();
+						double[] limits = limitsPerColumn[i];
+						if (value <= 0)
+							// as when reading events, cells with a weight <= 0 are missing
+							writer.append(missingValueString + ",");
+						else if (limits!=null)
+							writer.append("c" + RealValueFeatureDiscretizer.getClassIndex(limits, value) + ",");
+						else
+							writer.append(CSVFormatter.format(value)+",");
+					} else if (cellReader.getCellLength() > 0) {
+						writer.append(CSVFormatter.format(cellReader.getCell())+",");
+					} else {
+						writer.append(missingValueString + ",");
+					}
+					i++;
+				}
+				for (; i<columnCount; i++)
+					writer.append(missingValueString + ",");
+				writer.append("\n");
+				ROWS.increment();
+			}
+		}
+	}
+
+	/**
+	 * The string to use when a particular feature is missing.
+	 * The default is the empty string.
+	 * @return
+	 */
+	public String getMissingValueString() {
+		return missingValueString;
+	}
+
+	public void setMissingValueString(String missingValueString) {
+		this.missingValueString = missingValueString;
+	}
+
+	/**
+	 * A prefix to add to the identifiers.
+	 * @return
+	 */
+	public String getIdentifierPrefix() {
+		return identifierPrefix;
+	}
+
+	public void setIdentifierPrefix(String identifierPrefix) {
+		this.identifierPrefix = identifierPrefix;
+	}
+}
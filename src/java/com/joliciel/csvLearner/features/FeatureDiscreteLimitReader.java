@@ -0,0 +1,135 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.features;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Stack;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.joliciel.csvLearner.utils.CSVCellReader;
+
+/**
+ * Reads a single file or all files from a given directory into a map of discretization limits,
+ * as written by the FeatureDiscreteLimitWriter.
+ * The limits for each feature are the ascending upper limits of each class except the last one,
+ * whose upper limit is infinity.
+ * @author Assaf Urieli
+ *
+ */
+public class FeatureDiscreteLimitReader {
+	private static final Log LOG = LogFactory.getLog(FeatureDiscreteLimitReader.class);
+	private static final String INFINITY = "infinity";
+	private File file;
+	private InputStream inputStream;
+
+	public FeatureDiscreteLimitReader(File file) {
+		this.file = file;
+	}
+	public FeatureDiscreteLimitReader(InputStream inputStream) {
+		this.inputStream = inputStream;
+	}
+	public Map<String,double[]> read() {
+		Map<String, double[]> featureToLimitsMap = new TreeMap<String, double[]>();
+		try {
+			if (inputStream!=null) {
+				this.readCSVFile(inputStream, featureToLimitsMap);
+			} else if (file.isDirectory()) {
+				Stack<File> directoryStack = new Stack<File>();
+				directoryStack.add(file);
+				while (!directoryStack.isEmpty()) {
+					File directory = directoryStack.pop();
+					LOG.debug("Scanning directory: " + directory.getName());
+					File[] files = directory.listFiles();
+					if (files==null) {
+						continue;
+					}
+					for (File oneFile : files) {
+						if (oneFile.isDirectory()) {
+							directoryStack.push(oneFile);
+						} else if (oneFile.getName().endsWith(".dsc_limits.csv")) {
+							LOG.debug("Scanning limits file : " + oneFile.getName());
+							this.readCSVFile(new FileInputStream(oneFile), featureToLimitsMap);
+						} else {
+							LOG.trace("Ignoring : " + oneFile.getName());
+						}
+					}
+	
+				}
+			} else {
+				LOG.debug("Scanning limits file : " + file.getName());
+				this.readCSVFile(new FileInputStream(file), featureToLimitsMap);
+			}
+		} catch (FileNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+		return featureToLimitsMap;
+	}
+	
+	private void readCSVFile(InputStream csvInputStream, Map<String, double[]> featureToLimitsMap) {
+		CSVCellReader cellReader = new CSVCellReader(csvInputStream);
+		try {
+			try {
+				boolean firstLine = true;
+				double[] limits = new double[16];
+				while (cellReader.nextRow()) {
+					if (!firstLine && cellReader.nextCell()) {
+						String featureName = cellReader.getCell();
+						int limitCount = 0;
+						boolean foundInfinity = false;
+						while (cellReader.nextCell()) {
+							String cell = cellReader.getCell();
+							if (cell.equals(INFINITY)) {
+								foundInfinity = true;
+								break;
+							}
+							double limit = 0;
+							try {
+								limit = Double.parseDouble(cell);
+							} catch (NumberFormatException nfe) {
+								throw new NumberFormatException("Limit for feature " + featureName + " is not numeric: " + cell);
+							}
+							if (limitCount>0 && limit<=limits[limitCount-1])
+								throw new RuntimeException("Limits for feature " + featureName + " are not in ascending order");
+							if (limitCount==limits.length)
+								limits = Arrays.copyOf(limits, limitCount*2);
+							limits[limitCount++] = limit;
+						}
+						if (!foundInfinity)
+							throw new RuntimeException("Missing infinity limit for feature " + featureName);
+						featureToLimitsMap.put(featureName, Arrays.copyOf(limits, limitCount));
+					}
+					firstLine = false;
+				}
+			} finally {
+				cellReader.close();
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.features;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Processes each of a list of features by index, concurrently in a fork/join pool if threadCount &gt; 1.
+ * The range of indexes is halved recursively until each task has at most FEATURES_PER_TASK features.
+ * Each index is processed exactly once, so that results written to a list by index
+ * are the same as for a sequential run, and are visible to the caller once run returns.
+ * @author Assaf Urieli
+ *
+ */
+abstract class FeatureRangeTask {
+	static final int FEATURES_PER_TASK = 16;
+	
+	/**
+	 * Process the feature at a given index. Called concurrently for different indexes if threadCount &gt; 1.
+	 */
+	abstract void process(int index);
+	
+	/**
+	 * Process the features with indexes from 0 to featureCount-1.
+	 */
+	void run(int featureCount, int threadCount) {
+		RangeAction action = new RangeAction(0, featureCount);
+		if (threadCount>1) {
+			ForkJoinPool pool = new ForkJoinPool(threadCount);
+			try {
+				pool.invoke(action);
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			action.processRange();
+		}
+	}
+	
+	private final class RangeAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int start;
+		private int end;
+		
+		public RangeAction(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= FEATURES_PER_TASK) {
+				this.processRange();
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new RangeAction(start, middle), new RangeAction(middle, end));
+			}
+		}
+		
+		void processRange() {
+			for (int i=start; i<end; i++)
+				process(i);
+		}
+	}
+}
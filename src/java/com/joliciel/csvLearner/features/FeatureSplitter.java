@@ -5,8 +5,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import com.joliciel.csvLearner.NameValuePair;
-
 public interface FeatureSplitter {
 	public enum FeatureSplitterType {
 		INFORMATION_GAIN_PERCENT,
@@ -15,16 +13,17 @@ public interface FeatureSplitter {
 	}
 
 	/**
-	 * Split a list multiple times, until no split is found with sufficient information gain.
-	 * @param featureValues
-	 * @return
+	 * Split a sorted column of feature values multiple times, until no split is found with sufficient information gain.
+	 * @param column
+	 * @return the indexes in the column after which to split
 	 */
-	public abstract List<Integer> split(List<NameValuePair> featureValues);
+	public abstract List<Integer> split(SortedFeatureColumn column);
 
 	/**
 	 * Returns the splits obtained at each level of splitting, where
 	 * each level results in at most 2 splits for each single split at the previous level.
-	 * Must be called immediately after split(List&lt;NameValuePair&gt;) to be reliable.
+	 * Must be called immediately after split(SortedFeatureColumn), on the same thread, to be reliable.
+	 * The splits are kept separately for each thread, so that a single splitter can be used concurrently.
 	 * @return
 	 */
 	public abstract Map<Integer, Set<Split>> getSplitsByDepth();
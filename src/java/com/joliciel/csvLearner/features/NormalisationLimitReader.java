@@ -21,17 +21,17 @@ package com.joliciel.csvLearner.features;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Stack;
 import java.util.TreeMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import com.joliciel.csvLearner.utils.CSVFormatter;
+import com.joliciel.csvLearner.utils.CSVCellReader;
+import com.joliciel.csvLearner.utils.FloatParser;
 
 /**
  * Reads a single file or all files from a given directory into a map of normalisation limits.
@@ -87,21 +87,28 @@ public class NormalisationLimitReader {
 	}
 	
 	private void readCSVFile(InputStream csvInputStream, Map<String, Float> featureToMaxMap) {
-		Scanner scanner = new Scanner(csvInputStream,"UTF-8");
+		CSVCellReader cellReader = new CSVCellReader(csvInputStream);
+		FloatParser floatParser = new FloatParser();
 		try {
-			boolean firstLine = true;
-			while (scanner.hasNextLine()) {
-				String line = scanner.nextLine();
-				if (!firstLine) {
-					List<String> cells = CSVFormatter.getCSVCells(line);
-					String featureName = cells.get(0);
-					float maxValue = Float.parseFloat(cells.get(1));
-					featureToMaxMap.put(featureName, maxValue);
+			try {
+				boolean firstLine = true;
+				while (cellReader.nextRow()) {
+					if (!firstLine) {
+						cellReader.nextCell();
+						String featureName = cellReader.getCell();
+						if (!cellReader.nextCell())
+							throw new RuntimeException("Missing limit for feature " + featureName);
+						if (!floatParser.parse(cellReader.getCellBuffer(), cellReader.getCellStart(), cellReader.getCellEnd()))
+							throw new NumberFormatException("Limit for feature " + featureName + " is not numeric: " + cellReader.getCell());
+						featureToMaxMap.put(featureName, floatParser.getValue());
+					}
+					firstLine = false;
 				}
-				firstLine = false;
+			} finally {
+				cellReader.close();
 			}
-		} finally {
-			scanner.close();
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
 		}
 	}
 }
@@ -18,19 +18,22 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner.features;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.ArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.joliciel.csvLearner.CSVLearner;
+import com.joliciel.csvLearner.FeatureDictionary;
 import com.joliciel.csvLearner.GenericEvent;
 import com.joliciel.csvLearner.GenericEvents;
-import com.joliciel.csvLearner.NameValuePair;
+import com.joliciel.csvLearner.utils.Metrics;
 
 /**
  * Take a real-valued feature, and converts it to a set of (binary) classifying features
@@ -40,8 +43,11 @@ import com.joliciel.csvLearner.NameValuePair;
  */
 public class RealValueFeatureDiscretizer {
 	private static final Log LOG = LogFactory.getLog(RealValueFeatureDiscretizer.class);
+	private static final Metrics.Timer SPLIT_VALUES_TIMER = Metrics.getTimer("featureDiscretizer.splitValues");
+	private static final Metrics.Timer REWRITE_TIMER = Metrics.getTimer("featureDiscretizer.rewrite");
 	
 	private FeatureSplitter featureSplitter = null;
+	private int threadCount = 1;
 
 	/**
 	 * Transform a given real-valued feature into a set of discrete features, each with a separate class name.
@@ -63,11 +69,10 @@ public class RealValueFeatureDiscretizer {
 		splitValues = this.findFeatureSplitValues(events, feature);
 
 		for (GenericEvent event : events) {
-			int featureIndex = event.getFeatures().indexOf(feature);
+			int featureIndex = event.indexOf(feature);
 			if (featureIndex>=0) {
-				double weight = event.getWeights().get(featureIndex);
-				event.getFeatures().remove(featureIndex);
-				event.getWeights().remove(featureIndex);
+				double weight = event.getWeight(featureIndex);
+				event.removeFeature(featureIndex);
 				int i = 0;
 				boolean foundCategory = false;
 				for (double splitValue : splitValues) {
@@ -82,27 +87,151 @@ public class RealValueFeatureDiscretizer {
 					event.addFeature(feature + CSVLearner.NOMINAL_MARKER + "c" + i);
 			}
 		}
+		events.resetVocabulary();
 
 		return splitValues;
 	}
 	
+	/**
+	 * Transform several real-valued features into discrete features, as per discretizeFeature(GenericEvents, String),
+	 * but in a single pass over the events for all of the features.
+	 * The split values are first found for every feature from a columnar view of the training events,
+	 * concurrently if threadCount &gt; 1, after which each event's features are rewritten once.
+	 * @param events the list of events
+	 * @param features the features to discretize - any nominal features are left as is
+	 * @return the set of upper-limit values for each feature
+	 */
+	public Map<String,Set<Double>> discretizeFeatures(GenericEvents events, Collection<String> features) {
+		final List<String> realValueFeatures = new ArrayList<String>(features.size());
+		Map<String,Set<Double>> splitValuesPerFeature = new TreeMap<String, Set<Double>>();
+		for (String feature : features) {
+			// don't split features that are already nominal
+			if (feature.contains(CSVLearner.NOMINAL_MARKER))
+				splitValuesPerFeature.put(feature, new TreeSet<Double>());
+			else
+				realValueFeatures.add(feature);
+		}
+		
+		long startTime = SPLIT_VALUES_TIMER.start();
+		final List<Set<Double>> splitValueList = new ArrayList<Set<Double>>(realValueFeatures.size());
+		for (int i=0; i<realValueFeatures.size(); i++)
+			splitValueList.add(null);
+		if (threadCount>1)
+			LOG.debug("Finding split values for " + realValueFeatures.size() + " features using " + threadCount + " threads");
+		final FeatureColumns columns = new FeatureColumns(events, false);
+		new FeatureRangeTask() {
+			@Override
+			void process(int index) {
+				splitValueList.set(index, findFeatureSplitValues(columns, realValueFeatures.get(index)));
+			}
+		}.run(realValueFeatures.size(), threadCount);
+		SPLIT_VALUES_TIMER.stop(startTime);
+		
+		startTime = REWRITE_TIMER.start();
+		// for each feature id, the upper limits of its classes and the feature id of each class
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		int idCount = dictionary.size();
+		double[][] limitsById = new double[idCount][];
+		int[][] classIdsById = new int[idCount][];
+		for (int i=0; i<realValueFeatures.size(); i++) {
+			String feature = realValueFeatures.get(i);
+			Set<Double> splitValues = splitValueList.get(i);
+			splitValuesPerFeature.put(feature, splitValues);
+			int featureId = dictionary.lookupId(feature);
+			if (featureId<0 || featureId>=idCount)
+				continue;
+			double[] limits = new double[splitValues.size()];
+			int j = 0;
+			for (double splitValue : splitValues)
+				limits[j++] = splitValue;
+			int[] classIds = new int[limits.length + 1];
+			for (j=0; j<classIds.length; j++)
+				classIds[j] = dictionary.getId(feature + CSVLearner.NOMINAL_MARKER + "c" + j);
+			limitsById[featureId] = limits;
+			classIdsById[featureId] = classIds;
+		}
+		
+		int[] featureIds = new int[16];
+		float[] weights = new float[16];
+		for (GenericEvent event : events) {
+			int featureCount = event.getFeatureCount();
+			boolean changed = false;
+			for (int i=0; i<featureCount && !changed; i++) {
+				int featureId = event.getFeatureId(i);
+				changed = featureId<idCount && limitsById[featureId]!=null;
+			}
+			if (!changed)
+				continue;
+			if (featureIds.length<featureCount) {
+				featureIds = new int[featureCount * 2];
+				weights = new float[featureCount * 2];
+			}
+			for (int i=0; i<featureCount; i++) {
+				int featureId = event.getFeatureId(i);
+				float weight = event.getWeight(i);
+				if (featureId<idCount && limitsById[featureId]!=null) {
+					featureIds[i] = classIdsById[featureId][getClassIndex(limitsById[featureId], weight)];
+					weights[i] = 1;
+				} else {
+					featureIds[i] = featureId;
+					weights[i] = weight;
+				}
+			}
+			event.setFeatures(featureIds, weights, featureCount);
+		}
+		events.resetVocabulary();
+		REWRITE_TIMER.stop(startTime);
+		
+		return splitValuesPerFeature;
+	}
+	
+	/**
+	 * The index of the first upper limit &gt;= a given value, or limits.length if there is none.
+	 */
+	static int getClassIndex(double[] limits, double value) {
+		int low = 0;
+		int high = limits.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (value <= limits[middle])
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return low;
+	}
+	
+	/**
+	 * Find the split values for a feature from a columnar view of the training events.
+	 * @param columns
+	 * @param feature
+	 * @return
+	 */
+	public Set<Double> findFeatureSplitValues(FeatureColumns columns, String feature) {
+		LOG.debug("Discretizing feature: " + feature);
+		int featureId = FeatureDictionary.getInstance().lookupId(feature);
+		SortedFeatureColumn column = columns.getFeatureColumn(featureId, null);
+		return this.findFeatureSplitValues(column);
+	}
+	
 	public Set<Double> findFeatureSplitValues(GenericEvents events, String feature) {
-		Collection<NameValuePair> featureValues = new TreeSet<NameValuePair>();
+		SortedFeatureColumn column = new SortedFeatureColumn();
 		for (GenericEvent event : events) {
 			if (!event.isTest()) {
-				int featureIndex = event.getFeatures().indexOf(feature);
+				int featureIndex = event.indexOf(feature);
 				if (featureIndex>=0)
-					featureValues.add(new NameValuePair(event.getOutcome(), event.getWeights().get(featureIndex)));
+					column.add(event.getOutcome(), event.getWeight(featureIndex));
 			}
 		}
-		List<NameValuePair> featureValueList = new ArrayList<NameValuePair>(featureValues);
-
-		List<Integer> splits = featureSplitter.split(featureValueList);
+		column.sort();
+		return this.findFeatureSplitValues(column);
+	}
+	
+	private Set<Double> findFeatureSplitValues(SortedFeatureColumn column) {
+		List<Integer> splits = featureSplitter.split(column);
 		Set<Double> splitValues = new TreeSet<Double>();
 		for (int split : splits) {
-			NameValuePair before = featureValueList.get(split);
-			NameValuePair after = featureValueList.get(split+1);
-			double splitValue = (before.getValue() + after.getValue()) / 2.0;
+			double splitValue = (column.getValue(split) + column.getValue(split+1)) / 2.0;
 			splitValues.add(splitValue);
 			LOG.debug("Split " + split + ", split value: " + splitValue);
 		}
@@ -117,6 +246,18 @@ public class RealValueFeatureDiscretizer {
 		this.featureSplitter = featureSplitter;
 	}
 
+	/**
+	 * The number of threads used by discretizeFeatures to find the split values. Default: 1.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
 	
 	
 }
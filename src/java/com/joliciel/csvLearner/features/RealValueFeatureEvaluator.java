@@ -18,12 +18,9 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner.features;
 
-import java.text.DecimalFormat;
-import java.util.Collection;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.ArrayList;
@@ -31,9 +28,10 @@ import java.util.ArrayList;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.joliciel.csvLearner.FeatureDictionary;
 import com.joliciel.csvLearner.GenericEvent;
 import com.joliciel.csvLearner.GenericEvents;
-import com.joliciel.csvLearner.NameValuePair;
+import com.joliciel.csvLearner.utils.Metrics;
 
 /**
  * Take a real-valued feature, and try to evaluate it's value based on potential information gain.
@@ -42,15 +40,16 @@ import com.joliciel.csvLearner.NameValuePair;
  */
 public class RealValueFeatureEvaluator {
 	private static final Log LOG = LogFactory.getLog(RealValueFeatureEvaluator.class);
+	private static final Metrics.Timer EVALUATE_TIMER = Metrics.getTimer("featureEvaluator.evaluate");
+	private static final Metrics.Timer INITIALISE_TIMER = Metrics.getTimer("featureEvaluator.initialise");
+	private static final Metrics.Timer FIND_FEATURE_TIMER = Metrics.getTimer("featureEvaluator.findFeature");
+	private static final Metrics.Timer ORDERING_TIMER = Metrics.getTimer("featureEvaluator.ordering");
+	private static final Metrics.Timer INITIAL_ENTROPY_TIMER = Metrics.getTimer("featureEvaluator.initialEntropy");
+	private static final Metrics.Timer SPLIT_TIMER = Metrics.getTimer("featureEvaluator.split");
+	private static final Metrics.Histogram FEATURE_VALUES = Metrics.getHistogram("featureEvaluator.featureValues");
 
 	private FeatureSplitter featureSplitter = null;
-	private long totalTime = 0;
-	private long totalTimeSplit = 0;
-	private long totalTimeInitialEntropy = 0;
-	private long totalTimeInitialise = 0;
-	private long totalTimeOrdering = 0;
-	private long totalTimeSplitEntropy = 0;
-	private long totalTimeFindFeature = 0;
+	private int threadCount = 1;
 	
 	public List<Double> evaluateFeature(GenericEvents events, String feature) {
 		return this.evaluateFeature(events, feature, null);
@@ -67,24 +66,19 @@ public class RealValueFeatureEvaluator {
 	 * @return 
 	 */
 	public List<Double> evaluateFeature(GenericEvents events, String feature, String testOutcome) {
-		long startTime = (new Date()).getTime();
+		long startTime = EVALUATE_TIMER.start();
 		
 		if (LOG.isTraceEnabled()) {
 			LOG.trace("Evaluating feature: " + feature);
 			LOG.trace("Test outcome: " + testOutcome);
 		}
-		long startTimeInitialise = (new Date()).getTime();
+		long startTimeInitialise = INITIALISE_TIMER.start();
 
-		PriorityQueue<NameValuePair> heap = new PriorityQueue<NameValuePair>(events.size());
-		Collection<NameValuePair> featureValues = new ArrayList<NameValuePair>();
-		Map<String,Integer> eventOutcomeMap = new TreeMap<String,Integer>();
-		Map<String,Integer> featureOutcomeMap = new TreeMap<String,Integer>();
-		Map<String,Integer> nonFeatureOutcomeMap = new TreeMap<String,Integer>();
+		SortedFeatureColumn column = new SortedFeatureColumn();
 		
 		List<String> outcomes = null;
 		if (testOutcome==null) {
-			Set<String> outcomeSet = events.getOutcomes();
-			outcomes = new ArrayList<String>(outcomeSet);
+			outcomes = Arrays.asList(events.getVocabulary().getOutcomes());
 		} else {
 			outcomes = new ArrayList<String>();
 			outcomes.add(testOutcome);
@@ -111,15 +105,11 @@ public class RealValueFeatureEvaluator {
 					}
 				}
 				
-				long startTimeFindFeature = (new Date()).getTime();
+				long startTimeFindFeature = FIND_FEATURE_TIMER.start();
 				int featureIndex = event.getFeatureIndex(feature);
-				long endTimeFindFeature = (new Date()).getTime();
-				totalTimeFindFeature += (endTimeFindFeature - startTimeFindFeature);
+				FIND_FEATURE_TIMER.stop(startTimeFindFeature);
 				if (featureIndex>=0) {
-					long startTimeOrdering = (new Date()).getTime();
-					heap.add(new NameValuePair(outcome, event.getWeights().get(featureIndex)));
-					long endTimeOrdering = (new Date()).getTime();
-					totalTimeOrdering += (endTimeOrdering - startTimeOrdering);
+					column.add(outcome, event.getWeight(featureIndex));
 					featureOutcomeCounts[outcomeIndex]++;
 					featureCount++;
 				} else {
@@ -128,14 +118,111 @@ public class RealValueFeatureEvaluator {
 				eventOutcomeCounts[outcomeIndex]++;
 			}
 		}
-		int nonFeatureCount = eventCount - featureCount;
 
-		long startTimeOrdering = (new Date()).getTime();
-		while (!heap.isEmpty())
-			featureValues.add(heap.poll());
-		long endTimeOrdering = (new Date()).getTime();
-		totalTimeOrdering += (endTimeOrdering - startTimeOrdering);
+		long startTimeOrdering = ORDERING_TIMER.start();
+		column.sort();
+		ORDERING_TIMER.stop(startTimeOrdering);
+		
+		INITIALISE_TIMER.stop(startTimeInitialise);
+		
+		List<Double> entropyByLevel = this.getEntropyByLevel(outcomes, eventOutcomeCounts, featureOutcomeCounts, nonFeatureOutcomeCounts,
+				eventCount, featureCount, column);
+		EVALUATE_TIMER.stop(startTime);
+
+		return entropyByLevel;
+	}
+	
+	/**
+	 * As evaluateFeature(GenericEvents, String, String), but reading the feature's values
+	 * from a columnar view of the events, which can be shared by all features and all test outcomes.
+	 * @param columns the columnar view of the events
+	 * @param feature the feature to consider for splitting
+	 * @param testOutcome if not null, the outcome to evaluate against all others
+	 * @return
+	 */
+	public List<Double> evaluateFeature(FeatureColumns columns, String feature, String testOutcome) {
+		long startTime = EVALUATE_TIMER.start();
 		
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("Evaluating feature: " + feature);
+			LOG.trace("Test outcome: " + testOutcome);
+		}
+		long startTimeInitialise = INITIALISE_TIMER.start();
+		int featureId = FeatureDictionary.getInstance().lookupId(feature);
+		int start = columns.getColumnStart(featureId);
+		int end = columns.getColumnEnd(featureId);
+
+		List<String> outcomes = null;
+		int[] eventOutcomeCounts = null;
+		int[] featureOutcomeCounts = null;
+		if (testOutcome==null) {
+			outcomes = Arrays.asList(columns.getOutcomes());
+			eventOutcomeCounts = columns.getOutcomeCounts().clone();
+			featureOutcomeCounts = new int[outcomes.size()];
+			for (int j=start; j<end; j++)
+				featureOutcomeCounts[columns.getOutcomeIndex(j)]++;
+		} else {
+			outcomes = new ArrayList<String>();
+			outcomes.add(testOutcome);
+			outcomes.add("");
+			int testOutcomeCount = columns.getOutcomeCount(testOutcome);
+			eventOutcomeCounts = new int[] { testOutcomeCount, columns.getTrainingEventCount() - testOutcomeCount };
+			int testOutcomeIndex = Arrays.binarySearch(columns.getOutcomes(), testOutcome);
+			featureOutcomeCounts = new int[2];
+			for (int j=start; j<end; j++) {
+				if (columns.getOutcomeIndex(j)==testOutcomeIndex)
+					featureOutcomeCounts[0]++;
+				else
+					featureOutcomeCounts[1]++;
+			}
+		}
+		int[] nonFeatureOutcomeCounts = new int[outcomes.size()];
+		for (int i=0; i<nonFeatureOutcomeCounts.length; i++)
+			nonFeatureOutcomeCounts[i] = eventOutcomeCounts[i] - featureOutcomeCounts[i];
+		
+		SortedFeatureColumn column = columns.getFeatureColumn(featureId, testOutcome);
+		INITIALISE_TIMER.stop(startTimeInitialise);
+		
+		List<Double> entropyByLevel = this.getEntropyByLevel(outcomes, eventOutcomeCounts, featureOutcomeCounts, nonFeatureOutcomeCounts,
+				columns.getEventCount(), end - start, column);
+		EVALUATE_TIMER.stop(startTime);
+
+		return entropyByLevel;
+	}
+	
+	/**
+	 * Evaluate several features from a columnar view of the events, as per evaluateFeature(FeatureColumns, String, String).
+	 * If threadCount &gt; 1, the features are evaluated concurrently in a fork/join pool.
+	 * @param columns the columnar view of the events
+	 * @param features the features to evaluate
+	 * @param testOutcome if not null, the outcome to evaluate against all others
+	 * @return the entropies by level for each feature, in the same order as the features
+	 */
+	public List<List<Double>> evaluateFeatures(final FeatureColumns columns, final List<String> features, final String testOutcome) {
+		final List<List<Double>> featureEntropies = new ArrayList<List<Double>>(features.size());
+		for (int i=0; i<features.size(); i++)
+			featureEntropies.add(null);
+		if (threadCount>1)
+			LOG.debug("Evaluating " + features.size() + " features using " + threadCount + " threads");
+		new FeatureRangeTask() {
+			@Override
+			void process(int index) {
+				featureEntropies.set(index, evaluateFeature(columns, features.get(index), testOutcome));
+			}
+		}.run(features.size(), threadCount);
+		return featureEntropies;
+	}
+	
+	/**
+	 * Calculate the entropy after each level of splitting, given the outcome counts for all training events,
+	 * for those having the feature and for those which don't, and the sorted feature values.
+	 */
+	private List<Double> getEntropyByLevel(List<String> outcomes, int[] eventOutcomeCounts, int[] featureOutcomeCounts, int[] nonFeatureOutcomeCounts,
+			int eventCount, int featureCount, SortedFeatureColumn column) {
+		int nonFeatureCount = eventCount - featureCount;
+		Map<String,Integer> eventOutcomeMap = new TreeMap<String,Integer>();
+		Map<String,Integer> featureOutcomeMap = new TreeMap<String,Integer>();
+		Map<String,Integer> nonFeatureOutcomeMap = new TreeMap<String,Integer>();
 		int i = 0;
 		for (String outcome : outcomes) {
 			eventOutcomeMap.put(outcome, eventOutcomeCounts[i]);
@@ -144,15 +231,11 @@ public class RealValueFeatureEvaluator {
 			i++;
 		}
 		
-		long endTimeInitialise = (new Date()).getTime();
-		totalTimeInitialise+= (endTimeInitialise - startTimeInitialise);
-		
-		long startTimeInitialEntropy = (new Date()).getTime();
+		long startTimeInitialEntropy = INITIAL_ENTROPY_TIMER.start();
 		double eventSpaceEntropy = EntropyCalculator.getEntropy(eventOutcomeMap.values(), eventCount);
 		double featureEntropy = EntropyCalculator.getEntropy(featureOutcomeMap.values(), featureCount);
 		double nonFeatureEntropy = EntropyCalculator.getEntropy(nonFeatureOutcomeMap.values(), nonFeatureCount);
-		long endTimeInitialEntropy = (new Date()).getTime();
-		totalTimeInitialEntropy += (endTimeInitialEntropy - startTimeInitialEntropy);
+		INITIAL_ENTROPY_TIMER.stop(startTimeInitialEntropy);
 		
 		List<Double> entropyByLevel = new ArrayList<Double>();
 		entropyByLevel.add(eventSpaceEntropy);
@@ -169,11 +252,10 @@ public class RealValueFeatureEvaluator {
 			LOG.trace("level 0 Entropy: " + level0Entropy);
 		}
 		
-		List<NameValuePair> featureValueList = new ArrayList<NameValuePair>(featureValues);
-		long startTimeSplit = (new Date()).getTime();
-		featureSplitter.split(featureValueList);
-		long endTimeSplit = (new Date()).getTime();
-		totalTimeSplit += (endTimeSplit - startTimeSplit);
+		FEATURE_VALUES.record(column.size());
+		long startTimeSplit = SPLIT_TIMER.start();
+		featureSplitter.split(column);
+		SPLIT_TIMER.stop(startTimeSplit);
 		
 		Map<Integer,Set<Split>> splitsByDepth = featureSplitter.getSplitsByDepth();
 		
@@ -183,10 +265,7 @@ public class RealValueFeatureEvaluator {
 				levelEntropy += proportionalFeatureEntropy;
 			else {
 				for (Split split : splitsByDepth.get(level)) {
-					long startTimeSplitEntropy = (new Date()).getTime();
 					double proprotionalEntropy = ((double) split.getSize() / (double) eventCount) * split.getEntropy();
-					long endTimeSplitEntropy = (new Date()).getTime();
-					totalTimeSplitEntropy += (endTimeSplitEntropy - startTimeSplitEntropy);
 					levelEntropy += proprotionalEntropy;
 				}
 			}
@@ -194,23 +273,22 @@ public class RealValueFeatureEvaluator {
 			if (LOG.isTraceEnabled())
 				LOG.trace("level " + level + " Entropy: " + levelEntropy);
 		}
-		long endTime = (new Date()).getTime();
-		totalTime += (endTime - startTime);
 
 		return entropyByLevel;
 	}
 
-	public void logPerformance() {
-		DecimalFormat df = new DecimalFormat("0.00");
-		LOG.info("total time: " + totalTime + " milliseconds");
-		LOG.info("total initialise time: " + totalTimeInitialise + " milliseconds. " + df.format(((double)totalTimeInitialise/(double)totalTime)*100.0) + "%");
-		LOG.info("total find feature time: " + totalTimeFindFeature + " milliseconds. " + df.format(((double)totalTimeFindFeature/(double)totalTime)*100.0) + "%");
-		LOG.info("total sort time: " + totalTimeOrdering + " milliseconds. " + df.format(((double)totalTimeOrdering/(double)totalTime)*100.0) + "%");
-		LOG.info("total split time: " + totalTimeSplit + " milliseconds. " + df.format(((double)totalTimeSplit/(double)totalTime)*100.0) + "%");
-		LOG.info("total initial entropy time: " + totalTimeInitialEntropy + " milliseconds. " + df.format(((double)totalTimeInitialEntropy/(double)totalTime)*100.0) + "%");
-		LOG.info("total split entropy time: " + totalTimeSplitEntropy + " milliseconds. " + df.format(((double)totalTimeSplitEntropy/(double)totalTime)*100.0) + "%");
+	/**
+	 * The number of threads used by evaluateFeatures. Default: 1.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
 	}
-	
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
 	public FeatureSplitter getFeatureSplitter() {
 		return featureSplitter;
 	}
@@ -18,10 +18,8 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner.features;
 
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.ArrayList;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -69,34 +67,31 @@ public class RealValueFeatureNormaliser {
 		for (GenericEvent event : this.events) {
 			if (LOG.isTraceEnabled())
 				LOG.trace("Normalising " + event.getIdentifier());
-			List<Float> newWeights = new ArrayList<Float>();
-			for (int j=0;j<event.getFeatures().size();j++) {
-				String featureName = event.getFeatures().get(j);
+			for (int j=0;j<event.getFeatureCount();j++) {
+				String featureName = event.getFeature(j);
 				boolean nominalFeature = featureName.contains(CSVLearner.NOMINAL_MARKER);
-				float weight = event.getWeights().get(j);
+				float weight = event.getWeight(j);
 				if (nominalFeature) {
-					newWeights.add(weight);
+					// leave nominal weights as they are
 				} else if (normaliseToPreviousMaxValues) {
 					Float maxValueObj = this.featureToMaxMap.get(featureName);
 					float maxValue = maxValueObj==null ? 0 : maxValueObj.floatValue();
 					float newWeight = maxValue==0 ? weight : (weight/maxValue) * this.normalisedMax;
-					newWeights.add(newWeight);
+					event.setWeight(j, newWeight);
 				} else if (this.normaliseMethod.equals(NormaliseMethod.NORMALISE_BY_MAX)) {
 					float maxValue = this.eventListReader.getMax(featureName);
 					float newWeight = (weight/maxValue) * this.normalisedMax;
-					newWeights.add(newWeight);
+					event.setWeight(j, newWeight);
 					if (!featureToMaxMap.containsKey(featureName))
 						featureToMaxMap.put(featureName, maxValue);
 				} else {
 					float meanValue = this.eventListReader.getMean(featureName);
 					float newWeight = (weight/meanValue) * (this.normalisedMax / 2);
-					newWeights.add(newWeight);
+					event.setWeight(j, newWeight);
 					if (!featureToMaxMap.containsKey(featureName))
 						featureToMaxMap.put(featureName, meanValue*2.0f);
 				}
 			}
-			event.getWeights().clear();
-			event.getWeights().addAll(newWeights);
 		}
 	}
 
@@ -8,8 +8,6 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.ArrayList;
 
-import com.joliciel.csvLearner.NameValuePair;
-
 /**
  * Split a list at regular value intervals, where the intervals are
  * determined by maxValue / 2 ^ maxDepth.
@@ -18,35 +16,36 @@ import com.joliciel.csvLearner.NameValuePair;
  */
 public class RegularIntervalSplitter implements FeatureSplitter {
 	int maxDepth = 1;
-	private Map<Integer,Set<Split>> splitsByDepth = null;
+	private ThreadLocal<Map<Integer,Set<Split>>> splitsByDepthHolder = new ThreadLocal<Map<Integer,Set<Split>>>();
 	
 	@Override
-	public List<Integer> split(List<NameValuePair> featureValues) {
-		splitsByDepth = new TreeMap<Integer, Set<Split>>();
-		double maxValue = featureValues.get(featureValues.size()-1).getValue();
+	public List<Integer> split(SortedFeatureColumn column) {
+		Map<Integer,Set<Split>> splitsByDepth = new TreeMap<Integer, Set<Split>>();
+		splitsByDepthHolder.set(splitsByDepth);
+		int size = column.size();
+		double maxValue = column.getValue(size-1);
 		
 		double interval = maxValue;
 		for (int depth = 1; depth<=maxDepth; depth++) {
 			interval = interval / 2;
 			double upperLimit = interval;
 			Set<Split> currentLevelSplits = new TreeSet<Split>();
-			this.splitsByDepth.put(depth, currentLevelSplits);
-			int i = 0;
+			splitsByDepth.put(depth, currentLevelSplits);
 			int lastSplit = 0;
-			for (NameValuePair pair : featureValues) {
-				if (pair.getValue()>upperLimit) {
+			for (int i = 0; i < size; i++) {
+				double value = column.getValue(i);
+				if (value>upperLimit) {
 					if (i>0)
-						currentLevelSplits.add(new Split(featureValues, lastSplit, i-1));
+						currentLevelSplits.add(new Split(column, lastSplit, i-1));
 					lastSplit = i;
-					while (pair.getValue()>upperLimit)
+					while (value>upperLimit)
 						upperLimit += interval;
 					if (upperLimit>=maxValue)
 						break;
 				}
-				i++;
 			}
-			if (lastSplit<featureValues.size()-1)
-				currentLevelSplits.add(new Split(featureValues, lastSplit, featureValues.size()-1));
+			if (lastSplit<size-1)
+				currentLevelSplits.add(new Split(column, lastSplit, size-1));
 		}
 		
 		List<Integer> splits = new ArrayList<Integer>();
@@ -57,7 +56,7 @@ public class RegularIntervalSplitter implements FeatureSplitter {
 
 	@Override
 	public Map<Integer, Set<Split>> getSplitsByDepth() {
-		return this.splitsByDepth;
+		return splitsByDepthHolder.get();
 	}
 
 	public int getMaxDepth() {
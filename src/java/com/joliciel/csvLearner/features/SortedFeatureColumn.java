@@ -0,0 +1,207 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.features;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The values of a single feature in ascending order, together with the outcome of each value,
+ * held in primitive arrays, as expected by a FeatureSplitter.
+ * Equal values are ordered by outcome.<br/>
+ * The column is either filled one value at a time via add(), and then sorted via sort(),
+ * or constructed directly from values which are already sorted (as in FeatureColumns).
+ * The outcomes are numbered in alphabetical order.
+ * @author Assaf Urieli
+ *
+ */
+public class SortedFeatureColumn {
+	private String[] outcomes;
+	private double[] values;
+	private int[] outcomeIds;
+	private int size = 0;
+	private Map<String,Integer> outcomeIndexes = null;
+	
+	public SortedFeatureColumn() {
+		this(16);
+	}
+	
+	/**
+	 * An empty column, to be filled via add() and then sorted.
+	 * @param capacity the number of values expected
+	 */
+	public SortedFeatureColumn(int capacity) {
+		this.values = new double[Math.max(capacity, 1)];
+		this.outcomeIds = new int[values.length];
+		this.outcomeIndexes = new HashMap<String, Integer>();
+	}
+	
+	/**
+	 * A column whose values are already sorted, and ordered by outcome id for equal values.
+	 * @param outcomes the outcomes, in alphabetical order
+	 * @param values
+	 * @param outcomeIds the index in outcomes of each value's outcome
+	 * @param size the number of values
+	 */
+	SortedFeatureColumn(String[] outcomes, double[] values, int[] outcomeIds, int size) {
+		this.outcomes = outcomes;
+		this.values = values;
+		this.outcomeIds = outcomeIds;
+		this.size = size;
+	}
+	
+	/**
+	 * Add a value to a column which hasn't yet been sorted.
+	 * @param outcome
+	 * @param value
+	 */
+	public void add(String outcome, double value) {
+		if (outcomeIndexes==null)
+			throw new IllegalStateException("Cannot add values to a sorted column");
+		if (size==values.length) {
+			values = Arrays.copyOf(values, size * 2);
+			outcomeIds = Arrays.copyOf(outcomeIds, size * 2);
+		}
+		Integer outcomeId = outcomeIndexes.get(outcome);
+		if (outcomeId==null) {
+			outcomeId = outcomeIndexes.size();
+			outcomeIndexes.put(outcome, outcomeId);
+		}
+		values[size] = value;
+		outcomeIds[size] = outcomeId;
+		size++;
+	}
+	
+	/**
+	 * Number the outcomes in alphabetical order, and sort the values added,
+	 * ordering equal values by outcome.<br/>
+	 * The values for each outcome are sorted separately by a primitive sort,
+	 * and then merged via a heap of outcomes, in O(n log k) for k outcomes.
+	 */
+	public void sort() {
+		if (outcomeIndexes==null)
+			return;
+		outcomes = new TreeSet<String>(outcomeIndexes.keySet()).toArray(new String[outcomeIndexes.size()]);
+		int outcomeCount = outcomes.length;
+		int[] newIds = new int[outcomeCount];
+		for (int i = 0; i < outcomeCount; i++)
+			newIds[outcomeIndexes.get(outcomes[i])] = i;
+		outcomeIndexes = null;
+		
+		// gather the values for each outcome into consecutive ranges, and sort each range
+		int[] outcomeStarts = new int[outcomeCount + 1];
+		for (int i = 0; i < size; i++)
+			outcomeStarts[newIds[outcomeIds[i]] + 1]++;
+		for (int j = 0; j < outcomeCount; j++)
+			outcomeStarts[j + 1] += outcomeStarts[j];
+		int[] positions = Arrays.copyOf(outcomeStarts, outcomeCount);
+		double[] outcomeValues = new double[size];
+		for (int i = 0; i < size; i++)
+			outcomeValues[positions[newIds[outcomeIds[i]]]++] = values[i];
+		for (int j = 0; j < outcomeCount; j++)
+			Arrays.sort(outcomeValues, outcomeStarts[j], outcomeStarts[j + 1]);
+		
+		// merge the ranges via a heap of the outcomes whose range isn't exhausted,
+		// ordered by each outcome's next value, taking the lowest outcome first for equal values
+		for (int j = 0; j < outcomeCount; j++)
+			positions[j] = outcomeStarts[j];
+		int[] heap = new int[outcomeCount];
+		int heapSize = 0;
+		for (int j = 0; j < outcomeCount; j++) {
+			if (outcomeStarts[j] < outcomeStarts[j + 1])
+				heap[heapSize++] = j;
+		}
+		for (int h = heapSize / 2 - 1; h >= 0; h--)
+			this.siftDown(heap, heapSize, h, outcomeValues, positions);
+		for (int i = 0; i < size; i++) {
+			int outcome = heap[0];
+			values[i] = outcomeValues[positions[outcome]++];
+			outcomeIds[i] = outcome;
+			if (positions[outcome] == outcomeStarts[outcome + 1])
+				heap[0] = heap[--heapSize];
+			this.siftDown(heap, heapSize, 0, outcomeValues, positions);
+		}
+	}
+	
+	private void siftDown(int[] heap, int heapSize, int h, double[] outcomeValues, int[] positions) {
+		int outcome = heap[h];
+		while (true) {
+			int child = 2 * h + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && this.precedes(heap[child + 1], heap[child], outcomeValues, positions))
+				child++;
+			if (!this.precedes(heap[child], outcome, outcomeValues, positions))
+				break;
+			heap[h] = heap[child];
+			h = child;
+		}
+		heap[h] = outcome;
+	}
+	
+	private boolean precedes(int outcome1, int outcome2, double[] outcomeValues, int[] positions) {
+		int comparison = Double.compare(outcomeValues[positions[outcome1]], outcomeValues[positions[outcome2]]);
+		return comparison < 0 || (comparison == 0 && outcome1 < outcome2);
+	}
+	
+	/**
+	 * The number of values in this column.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public double getValue(int index) {
+		return values[index];
+	}
+	
+	/**
+	 * The index in getOutcomes() of the outcome at a given index.
+	 */
+	public int getOutcomeId(int index) {
+		return outcomeIds[index];
+	}
+	
+	public String getOutcome(int index) {
+		return outcomes[outcomeIds[index]];
+	}
+	
+	/**
+	 * The outcomes in this column, in alphabetical order.
+	 */
+	public String[] getOutcomes() {
+		return outcomes;
+	}
+	
+	/**
+	 * The underlying values, of which only the first size() are used.
+	 */
+	double[] getValues() {
+		return values;
+	}
+	
+	/**
+	 * The underlying outcome ids, of which only the first size() are used.
+	 */
+	int[] getOutcomeIds() {
+		return outcomeIds;
+	}
+}
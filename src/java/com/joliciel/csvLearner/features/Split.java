@@ -1,29 +1,26 @@
 //Copyright (C) 2011 Assaf Urieli
 package com.joliciel.csvLearner.features;
 
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import com.joliciel.csvLearner.NameValuePair;
-
 class Split implements Comparable<Split> {
-	private List<NameValuePair> featureValues;
+	private SortedFeatureColumn column;
 	private int startIndex;
 	private int endIndex;
 	private double entropy;
 	private boolean entropyCalculated = false;
-	private Map<String,Integer> outcomeCounts = null;
+	private int[] outcomeCounts = null;
 	private int maxOutcomeCount = 0;
 	
-	public Split(List<NameValuePair> featureValues, int startIndex, int endIndex) {
-		this.featureValues = featureValues;
+	public Split(SortedFeatureColumn column, int startIndex, int endIndex) {
+		this.column = column;
 		this.startIndex = startIndex;
 		this.endIndex = endIndex;
 	}
 
-	public List<NameValuePair> getFeatureValues() {
-		return featureValues;
+	public SortedFeatureColumn getColumn() {
+		return column;
 	}
 
 	public int getStartIndex() {
@@ -38,25 +35,38 @@ class Split implements Comparable<Split> {
 		return (endIndex-startIndex)+1;
 	}
 	
-	public Map<String, Integer> getOutcomeCounts() {
+	/**
+	 * The number of feature values in this split for each outcome, indexed as in the column's outcomes.
+	 */
+	public int[] getOutcomeIdCounts() {
 		if (outcomeCounts==null) {
-			outcomeCounts = new TreeMap<String, Integer>();
-			for (int i = startIndex; i <= endIndex; i++) {
-				NameValuePair dataPoint = featureValues.get(i);
-				Integer outcomeCountObj = outcomeCounts.get(dataPoint.getName());
-				int outcomeCount = outcomeCountObj==null ? 0 : outcomeCountObj.intValue();
-				outcomeCount++;
-				if (outcomeCount>maxOutcomeCount)
-					maxOutcomeCount = outcomeCount;
-				outcomeCounts.put(dataPoint.getName(), outcomeCount);
+			int[] outcomeIds = column.getOutcomeIds();
+			int[] counts = new int[column.getOutcomes().length];
+			for (int i = startIndex; i <= endIndex; i++)
+				counts[outcomeIds[i]]++;
+			for (int count : counts) {
+				if (count>maxOutcomeCount)
+					maxOutcomeCount = count;
 			}
+			outcomeCounts = counts;
 		}
 		return outcomeCounts;
 	}
+	
+	public Map<String, Integer> getOutcomeCounts() {
+		int[] counts = this.getOutcomeIdCounts();
+		String[] outcomes = column.getOutcomes();
+		Map<String,Integer> outcomeCountMap = new TreeMap<String, Integer>();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i]>0)
+				outcomeCountMap.put(outcomes[i], counts[i]);
+		}
+		return outcomeCountMap;
+	}
 
 	public double getEntropy() {
 		if (!entropyCalculated) {
-			entropy = EntropyCalculator.getEntropy(this.getOutcomeCounts().values(), (endIndex-startIndex)+1);
+			entropy = EntropyCalculator.getEntropy(this.getOutcomeIdCounts(), (endIndex-startIndex)+1);
 			entropyCalculated = true;
 		}
 		return entropy;
@@ -68,6 +78,7 @@ class Split implements Comparable<Split> {
 	}
 
 	public int getMaxOutcomeCount() {
+		this.getOutcomeIdCounts();
 		return maxOutcomeCount;
 	}
 	
@@ -0,0 +1,117 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.maxent;
+
+import java.util.Arrays;
+
+import opennlp.maxent.GISModel;
+import opennlp.model.Context;
+import opennlp.model.EvalParameters;
+import opennlp.model.IndexHashTable;
+import opennlp.model.UniformPrior;
+
+import com.joliciel.csvLearner.FeatureDictionary;
+import com.joliciel.csvLearner.GenericEvent;
+
+/**
+ * Evaluates events against a GIS model directly from the model's parameters,
+ * using predicate indexes resolved from the events' FeatureDictionary ids,
+ * rather than hashing each feature name through the model's predicate table on each evaluation.<br/>
+ * The FeatureDictionary id to predicate index map is built once, when the evaluator is constructed,
+ * and is read-only afterwards, so that events can be evaluated concurrently.
+ * Features added to the dictionary after construction are looked up in the predicate table.
+ * @author Assaf Urieli
+ *
+ */
+class GISModelEvaluator {
+	private IndexHashTable<String> predicateTable;
+	private int[] predicateIndexes;
+	private EvalParameters evalParameters;
+	private String[] outcomeNames;
+	private UniformPrior prior;
+	
+	@SuppressWarnings("unchecked")
+	public GISModelEvaluator(GISModel model) {
+		Object[] dataStructures = model.getDataStructures();
+		Context[] modelParameters = (Context[]) dataStructures[0];
+		this.predicateTable = (IndexHashTable<String>) dataStructures[1];
+		this.outcomeNames = (String[]) dataStructures[2];
+		int correctionConstant = ((Integer) dataStructures[3]).intValue();
+		double correctionParam = ((Double) dataStructures[4]).doubleValue();
+		this.evalParameters = new EvalParameters(modelParameters, correctionParam, correctionConstant, outcomeNames.length);
+
+		String[] predicates = new String[predicateTable.size()];
+		predicateTable.toArray(predicates);
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		predicateIndexes = new int[dictionary.size()];
+		Arrays.fill(predicateIndexes, -1);
+		for (int i=0; i<predicates.length; i++) {
+			int featureId = dictionary.lookupId(predicates[i]);
+			if (featureId>=0 && featureId<predicateIndexes.length)
+				predicateIndexes[featureId] = i;
+		}
+		
+		// the prior used by GISModel when it isn't given one explicitly
+		prior = new UniformPrior();
+		prior.setLabels(outcomeNames, predicates);
+	}
+	
+	/**
+	 * The model's predicate index for each of the event's features, in the event's feature order,
+	 * or -1 for features unknown to the model.
+	 */
+	public int[] resolve(GenericEvent event) {
+		int featureCount = event.getFeatureCount();
+		int[] eventPredicateIndexes = new int[featureCount];
+		for (int i=0; i<featureCount; i++) {
+			int featureId = event.getFeatureId(i);
+			if (featureId<predicateIndexes.length)
+				eventPredicateIndexes[i] = predicateIndexes[featureId];
+			else
+				eventPredicateIndexes[i] = predicateTable.get(event.getFeature(i));
+		}
+		return eventPredicateIndexes;
+	}
+	
+	/**
+	 * Evaluate an event whose features have been resolved,
+	 * returning the probability of each outcome, indexed by outcome id.
+	 * Features unknown to the model are dropped before evaluation.
+	 */
+	public double[] eval(GenericEvent event, int[] eventPredicateIndexes) {
+		int knownCount = 0;
+		for (int predicateIndex : eventPredicateIndexes)
+			if (predicateIndex>=0)
+				knownCount++;
+		int[] contexts = new int[knownCount];
+		float[] values = new float[knownCount];
+		int j = 0;
+		for (int i=0; i<eventPredicateIndexes.length; i++) {
+			if (eventPredicateIndexes[i]>=0) {
+				contexts[j] = eventPredicateIndexes[i];
+				values[j] = event.getWeight(i);
+				j++;
+			}
+		}
+		
+		double[] outsums = new double[outcomeNames.length];
+		prior.logPrior(outsums, contexts, values);
+		return GISModel.eval(contexts, values, outsums, evalParameters);
+	}
+}
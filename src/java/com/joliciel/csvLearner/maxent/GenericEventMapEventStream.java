@@ -28,44 +28,47 @@ import opennlp.model.Event;
 import opennlp.model.EventStream;
 
 /**
- * Implementation of event stream that reads from a Map<String,GenericEvent> and 
- * returns any events that aren't marked as test.
+ * Implementation of event stream that reads the training events of a GenericEvents,
+ * as already filtered by its test flags or test mask.
+ * Can also read from an iterator of events, e.g. when streaming the events from sorted files,
+ * in which case any events marked as test are skipped.
  * @author Assaf Urieli
  *
  */
 class GenericEventMapEventStream implements EventStream {
-	private GenericEvents events = null;
 	private Iterator<GenericEvent> eventIterator = null;
 	private GenericEvent currentEvent = null;
+	private boolean skipTestEvents = true;
 	
 	public GenericEventMapEventStream(GenericEvents events) {
-		this.events = events;
-		eventIterator = this.events.iterator();
+		this.eventIterator = events.getTrainingEvents().iterator();
+		this.skipTestEvents = false;
+	}
+	
+	public GenericEventMapEventStream(Iterator<GenericEvent> eventIterator) {
+		this.eventIterator = eventIterator;
 	}
 	
 	@Override
 	public boolean hasNext() throws IOException {
 		currentEvent = null;
 		while (currentEvent==null && eventIterator.hasNext()) {
-			currentEvent = eventIterator.next();
-			if (currentEvent.isTest()) {
-				currentEvent = null;
-			}
+			GenericEvent event = eventIterator.next();
+			if (!skipTestEvents || !event.isTest())
+				currentEvent = event;
 		}
 		return (currentEvent!=null);
 	}
 
 	@Override
 	public Event next() throws IOException {
-		String[] contexts = new String[currentEvent.getFeatures().size()];
-		int i = 0;
-		for (String context : currentEvent.getFeatures()) {
-			contexts[i++] = context;
-		}
-		float[] weights = new float[currentEvent.getWeights().size()];
-		i = 0;
-		for (Float weight : currentEvent.getWeights()) {
-			weights[i++]  = weight;
+		int featureCount = currentEvent.getFeatureCount();
+		String[] contexts = new String[featureCount];
+		float[] weights = new float[featureCount];
+		int i;
+		for (i=0; i<featureCount; i++) {
+			contexts[i] = currentEvent.getFeature(i);
+			weights[i] = currentEvent.getWeight(i);
 		}
 		
 		Event event = new Event(currentEvent.getOutcome(), contexts, weights);
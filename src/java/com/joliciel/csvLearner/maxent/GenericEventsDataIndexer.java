@@ -0,0 +1,301 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.maxent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.joliciel.csvLearner.FeatureDictionary;
+import com.joliciel.csvLearner.GenericEvent;
+import com.joliciel.csvLearner.GenericEvents;
+
+import opennlp.model.DataIndexer;
+
+/**
+ * A data indexer which indexes the training events of a GenericEvents directly in memory,
+ * rather than writing them out to a temporary file and reading them back as the
+ * TwoPassRealValueDataIndexer does.<br/>
+ * Predicate counts are kept in a primitive array indexed by FeatureDictionary id.
+ * Predicates which pass the cutoff are numbered in increasing dictionary id order,
+ * so that each event's contexts (stored in dictionary id order) are already sorted.
+ * Identical events are merged, as in the other maxent indexers.
+ * @author Assaf Urieli
+ *
+ */
+class GenericEventsDataIndexer implements DataIndexer {
+    private static final Log LOG = LogFactory.getLog(GenericEventsDataIndexer.class);
+	private int[][] contexts;
+	private float[][] values;
+	private int[] outcomeList;
+	private int[] numTimesEventsSeen;
+	private String[] predLabels;
+	private int[] predCounts;
+	private String[] outcomeLabels;
+	private int numEvents;
+
+	public GenericEventsDataIndexer(GenericEvents events, int cutoff) {
+		LOG.info("Indexing events using cutoff of " + cutoff);
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		int[] featureCounts = new int[dictionary.size()];
+
+		// a single pass over the events, copying their feature ids and weights, and counting features
+		int[][] eventFeatureIds = new int[events.size()][];
+		float[][] eventWeights = new float[events.size()][];
+		int[] eventOutcomes = new int[events.size()];
+		int eventCount = 0;
+		Map<String,Integer> outcomeIndex = new HashMap<String, Integer>();
+		List<String> outcomes = new ArrayList<String>();
+		for (GenericEvent event : events.getTrainingEvents()) {
+			Integer outcomeId = outcomeIndex.get(event.getOutcome());
+			if (outcomeId==null) {
+				outcomeId = outcomes.size();
+				outcomeIndex.put(event.getOutcome(), outcomeId);
+				outcomes.add(event.getOutcome());
+			}
+			int featureCount = event.getFeatureCount();
+			int[] featureIds = new int[featureCount];
+			float[] weights = new float[featureCount];
+			for (int i = 0; i < featureCount; i++) {
+				int featureId = event.getFeatureId(i);
+				if (featureId >= featureCounts.length)
+					featureCounts = Arrays.copyOf(featureCounts, Math.max(featureId + 1, featureCounts.length * 2));
+				featureCounts[featureId]++;
+				featureIds[i] = featureId;
+				weights[i] = event.getWeight(i);
+			}
+			eventFeatureIds[eventCount] = featureIds;
+			eventWeights[eventCount] = weights;
+			eventOutcomes[eventCount] = outcomeId;
+			eventCount++;
+		}
+		outcomeLabels = outcomes.toArray(new String[outcomes.size()]);
+
+		// number the predicates which pass the cutoff
+		int[] predicateIds = new int[featureCounts.length];
+		int numPreds = 0;
+		for (int featureId = 0; featureId < featureCounts.length; featureId++) {
+			if (featureCounts[featureId] > 0 && featureCounts[featureId] >= cutoff) {
+				predicateIds[featureId] = numPreds++;
+			} else {
+				predicateIds[featureId] = -1;
+			}
+		}
+		predLabels = new String[numPreds];
+		predCounts = new int[numPreds];
+		for (int featureId = 0; featureId < featureCounts.length; featureId++) {
+			int predicateId = predicateIds[featureId];
+			if (predicateId >= 0) {
+				predLabels[predicateId] = dictionary.getName(featureId);
+				predCounts[predicateId] = featureCounts[featureId];
+			}
+		}
+
+		// replace feature ids by predicate ids, dropping any features below the cutoff, and events left with no features,
+		// compacting the arrays in place
+		int keptCount = 0;
+		for (int ei = 0; ei < eventCount; ei++) {
+			int[] featureIds = eventFeatureIds[ei];
+			float[] weights = eventWeights[ei];
+			int contextCount = 0;
+			for (int i = 0; i < featureIds.length; i++) {
+				int predicateId = predicateIds[featureIds[i]];
+				if (predicateId >= 0) {
+					featureIds[contextCount] = predicateId;
+					weights[contextCount] = weights[i];
+					contextCount++;
+				}
+			}
+			if (contextCount > 0) {
+				if (contextCount < featureIds.length) {
+					featureIds = Arrays.copyOf(featureIds, contextCount);
+					weights = Arrays.copyOf(weights, contextCount);
+				}
+				eventFeatureIds[keptCount] = featureIds;
+				eventWeights[keptCount] = weights;
+				eventOutcomes[keptCount] = eventOutcomes[ei];
+				keptCount++;
+			} else if (LOG.isDebugEnabled()) {
+				LOG.debug("Dropped event " + outcomeLabels[eventOutcomes[ei]]);
+			}
+		}
+		for (int ei = keptCount; ei < eventCount; ei++) {
+			eventFeatureIds[ei] = null;
+			eventWeights[ei] = null;
+		}
+
+		this.sortAndMerge(new EventSorter(eventFeatureIds, eventWeights, eventOutcomes), keptCount);
+	}
+
+	private void sortAndMerge(EventSorter sorter, int eventCount) {
+		numEvents = eventCount;
+		int[] order = new int[numEvents];
+		for (int ei = 0; ei < numEvents; ei++)
+			order[ei] = ei;
+		sorter.sort(order);
+
+		int[] seen = new int[numEvents];
+		int numUniqueEvents = 0;
+		int previous = -1;
+		for (int i = 0; i < numEvents; i++) {
+			if (previous >= 0 && sorter.compare(order[previous], order[i])==0) {
+				seen[previous]++;
+			} else {
+				order[numUniqueEvents] = order[i];
+				seen[numUniqueEvents] = 1;
+				previous = numUniqueEvents;
+				numUniqueEvents++;
+			}
+		}
+		LOG.info("Reduced " + numEvents + " events to " + numUniqueEvents + ".");
+
+		contexts = new int[numUniqueEvents][];
+		values = new float[numUniqueEvents][];
+		outcomeList = new int[numUniqueEvents];
+		numTimesEventsSeen = new int[numUniqueEvents];
+		for (int i = 0; i < numUniqueEvents; i++) {
+			int ei = order[i];
+			contexts[i] = sorter.contexts[ei];
+			values[i] = sorter.values[ei];
+			outcomeList[i] = sorter.outcomeIds[ei];
+			numTimesEventsSeen[i] = seen[i];
+		}
+	}
+	
+	/**
+	 * Sorts event indexes by outcome id, and then by contexts and values,
+	 * using a merge sort on a primitive index array, so that identical events end up next to each other.
+	 * Since identical events are merged, the resulting order of distinct events is the same as for any other sort.
+	 */
+	private static final class EventSorter {
+		private static final int INSERTION_SORT_SIZE = 16;
+		private int[][] contexts;
+		private float[][] values;
+		private int[] outcomeIds;
+		
+		public EventSorter(int[][] contexts, float[][] values, int[] outcomeIds) {
+			this.contexts = contexts;
+			this.values = values;
+			this.outcomeIds = outcomeIds;
+		}
+		
+		public void sort(int[] order) {
+			this.sort(order, order.clone(), 0, order.length);
+		}
+		
+		/**
+		 * Sort order[from..to), using the same range of buffer, which holds the same elements, as scratch space.
+		 */
+		private void sort(int[] order, int[] buffer, int from, int to) {
+			if (to - from <= INSERTION_SORT_SIZE) {
+				for (int i = from + 1; i < to; i++) {
+					int e = order[i];
+					int j = i;
+					while (j > from && this.compare(order[j-1], e) > 0) {
+						order[j] = order[j-1];
+						j--;
+					}
+					order[j] = e;
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			// sort each half of the buffer, and merge them into the order
+			this.sort(buffer, order, from, middle);
+			this.sort(buffer, order, middle, to);
+			int i = from;
+			int j = middle;
+			for (int k = from; k < to; k++) {
+				if (j >= to || (i < middle && this.compare(buffer[i], buffer[j]) <= 0))
+					order[k] = buffer[i++];
+				else
+					order[k] = buffer[j++];
+			}
+		}
+		
+		public int compare(int e1, int e2) {
+			int outcome1 = outcomeIds[e1];
+			int outcome2 = outcomeIds[e2];
+			if (outcome1 != outcome2)
+				return outcome1 < outcome2 ? -1 : 1;
+			int[] contexts1 = contexts[e1];
+			int[] contexts2 = contexts[e2];
+			float[] values1 = values[e1];
+			float[] values2 = values[e2];
+			int length = Math.min(contexts1.length, contexts2.length);
+			for (int i = 0; i < length; i++) {
+				if (contexts1[i] != contexts2[i])
+					return contexts1[i] < contexts2[i] ? -1 : 1;
+				if (values1[i] < values2[i])
+					return -1;
+				if (values1[i] > values2[i])
+					return 1;
+			}
+			if (contexts1.length != contexts2.length)
+				return contexts1.length < contexts2.length ? -1 : 1;
+			return 0;
+		}
+	}
+
+	@Override
+	public int[][] getContexts() {
+		return contexts;
+	}
+
+	@Override
+	public int[] getNumTimesEventsSeen() {
+		return numTimesEventsSeen;
+	}
+
+	@Override
+	public int[] getOutcomeList() {
+		return outcomeList;
+	}
+
+	@Override
+	public String[] getPredLabels() {
+		return predLabels;
+	}
+
+	@Override
+	public int[] getPredCounts() {
+		return predCounts;
+	}
+
+	@Override
+	public String[] getOutcomeLabels() {
+		return outcomeLabels;
+	}
+
+	@Override
+	public float[][] getValues() {
+		return values;
+	}
+
+	@Override
+	public int getNumEvents() {
+		return numEvents;
+	}
+
+}
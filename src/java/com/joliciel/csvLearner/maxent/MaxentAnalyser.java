@@ -18,19 +18,24 @@
 //////////////////////////////////////////////////////////////////////////////
 package com.joliciel.csvLearner.maxent;
 
-import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeSet;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.joliciel.csvLearner.GenericEvent;
 import com.joliciel.csvLearner.GenericEvents;
-import com.joliciel.csvLearner.NameValueDescendingComparator;
 import com.joliciel.csvLearner.NameValuePair;
+import com.joliciel.csvLearner.utils.Metrics;
 
+import opennlp.maxent.GISModel;
 import opennlp.model.MaxentModel;
 
 /**
@@ -44,66 +49,40 @@ public class MaxentAnalyser {
 	private List<MaxentObserver> observers = new ArrayList<MaxentObserver>();
 	private String preferredOutcome = null;
 	private double bias = 0.0;
+	private int threadCount = 1;
+	private GISModelEvaluator evaluator = null;
+	private static final int EVENTS_PER_BATCH = 256;
+	private int eventsPerBatch = EVENTS_PER_BATCH;
+	private static final Metrics.Timer SCORE_TIMER = Metrics.getTimer("maxentAnalyser.score");
+	private static final Metrics.Timer NOTIFY_TIMER = Metrics.getTimer("maxentAnalyser.notify");
+	private static final Metrics.Counter EVENTS = Metrics.getCounter("maxentAnalyser.events");
 	
 	/**
-	 * Analyse any event where event.isTest(),
+	 * Analyse the test events (see GenericEvents.getTestEvents()),
 	 * and call appropriate events on the MaxentObservers added.
+	 * If threadCount &gt; 1, the events are scored concurrently, but the observers
+	 * are always called on the calling thread, in the order of the events.
 	 * @param events
 	 */
 	public void analyse(GenericEvents events) {
 		try {
-			for (GenericEvent event : events) {
-				if (event.isTest()) {
-					LOG.trace("Test event: " + event.getIdentifier());
-					String[] contexts = new String[event.getFeatures().size()];
-					int i = 0;
-					for (String context : event.getFeatures()) {
-						contexts[i++] = context;
-					}
-					float[] weights = new float[event.getWeights().size()];
-					i = 0;
-					for (Float weight : event.getWeights()) {
-						weights[i++]  = weight;
-					}
-					
-					double[] probs = maxentModel.eval(contexts, weights);
-					String[] outcomes = new String[probs.length];
-					for (i=0;i<probs.length;i++)
-						outcomes[i]=maxentModel.getOutcome(i);
-					
-					Collection<NameValuePair> heap = new TreeSet<NameValuePair>(new NameValueDescendingComparator());
-					for (i=0;i<probs.length;i++) {
-						String outcome = outcomes[i];
-						double prob = probs[i];
-						if (this.preferredOutcome!=null && this.bias>0) {
-							if (this.preferredOutcome.equals(outcome)) {
-								prob = (prob + bias) / (1 + bias);
-							} else {
-								prob = (prob) / (1 + bias);
-							}
-						}
-						NameValuePair weightedOutcome = new NameValuePair(outcome, prob);
-						heap.add(weightedOutcome);
-					}
-					
-					for (MaxentObserver observer : observers) {
-						observer.onAnalyse(event, heap);
-					}
-					
-					if (LOG.isTraceEnabled()) {
-						NameValuePair bestOutcome = heap.iterator().next();
-						LOG.trace("Event " + event.getIdentifier());
-						LOG.trace("Real outcome: " + event.getOutcome());
-						LOG.trace("Guessed outcome: " + bestOutcome.getName());
-						for (i=0;i<contexts.length;i++) {
-							LOG.trace(contexts[i] + ": " + weights[i]);
-						}
-						
-						LOG.trace("Outcome list: ");
-						for (NameValuePair weightedOutcome : heap) {
-							LOG.trace("Outcome: " + weightedOutcome.getName() + ", Weight: " + weightedOutcome.getValue());
-						}
-					}
+			String[] outcomeNames = new String[maxentModel.getNumOutcomes()];
+			for (int i=0;i<outcomeNames.length;i++)
+				outcomeNames[i]=maxentModel.getOutcome(i);
+			if (maxentModel instanceof GISModel)
+				evaluator = new GISModelEvaluator((GISModel) maxentModel);
+			else
+				evaluator = null;
+			
+			if (threadCount>1) {
+				this.analyseInParallel(events, outcomeNames);
+			} else {
+				// a single result and scored event holder, reused for each event
+				MaxentResult result = new MaxentResult(outcomeNames, null);
+				ScoredEvents scoredEvents = new ScoredEvents(1);
+				for (GenericEvent event : events.getTestEvents()) {
+					this.score(event, outcomeNames, scoredEvents, 0);
+					this.notifyObservers(event, result, scoredEvents, 0);
 				}
 			}
 		} finally {
@@ -112,6 +91,145 @@ public class MaxentAnalyser {
 			}
 		}
 	}
+	
+	private void analyseInParallel(GenericEvents events, String[] outcomeNames) {
+		LOG.debug("Analysing events using " + threadCount + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			// a bounded window of batches being scored, delivered in the order they were submitted
+			LinkedList<List<GenericEvent>> batches = new LinkedList<List<GenericEvent>>();
+			LinkedList<Future<ScoredEvents>> futures = new LinkedList<Future<ScoredEvents>>();
+			// the observers are all notified on this thread, so a single result can be reused for each event
+			MaxentResult result = new MaxentResult(outcomeNames, null);
+			int maxBatchesInProgress = threadCount * 2;
+			List<GenericEvent> batch = new ArrayList<GenericEvent>(eventsPerBatch);
+			for (GenericEvent event : events.getTestEvents()) {
+				batch.add(event);
+				if (batch.size()==eventsPerBatch) {
+					batches.add(batch);
+					futures.add(executor.submit(this.getScoringTask(batch, outcomeNames)));
+					batch = new ArrayList<GenericEvent>(eventsPerBatch);
+					if (futures.size()>=maxBatchesInProgress)
+						this.notifyObservers(batches.removeFirst(), futures.removeFirst(), result);
+				}
+			}
+			if (batch.size()>0) {
+				batches.add(batch);
+				futures.add(executor.submit(this.getScoringTask(batch, outcomeNames)));
+			}
+			while (!futures.isEmpty())
+				this.notifyObservers(batches.removeFirst(), futures.removeFirst(), result);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private Callable<ScoredEvents> getScoringTask(final List<GenericEvent> batch, final String[] outcomeNames) {
+		return new Callable<ScoredEvents>() {
+			@Override
+			public ScoredEvents call() throws Exception {
+				ScoredEvents scoredEvents = new ScoredEvents(batch.size());
+				for (int i=0; i<batch.size(); i++)
+					score(batch.get(i), outcomeNames, scoredEvents, i);
+				return scoredEvents;
+			}
+		};
+	}
+	
+	private void notifyObservers(List<GenericEvent> batch, Future<ScoredEvents> future, MaxentResult result) {
+		ScoredEvents scoredEvents = null;
+		try {
+			scoredEvents = future.get();
+		} catch (InterruptedException ie) {
+			throw new RuntimeException(ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		for (int i=0; i<batch.size(); i++)
+			this.notifyObservers(batch.get(i), result, scoredEvents, i);
+	}
+	
+	/**
+	 * The probabilities and predicate indexes of a batch of scored events,
+	 * which are only wrapped in a MaxentResult when the observers are notified.
+	 */
+	private static final class ScoredEvents {
+		private double[][] probabilities;
+		private int[][] predicateIndexes;
+		
+		public ScoredEvents(int size) {
+			probabilities = new double[size][];
+			predicateIndexes = new int[size][];
+		}
+	}
+	
+	/**
+	 * Score a single event, storing the probability of each outcome, indexed by outcome id,
+	 * at a given index of the scored events.
+	 * For GIS models, the event's features are resolved to predicate indexes once,
+	 * and these are passed on to the observers in the result.
+	 * Only reads the model, and can safely be called concurrently for different scored events.
+	 */
+	private void score(GenericEvent event, String[] outcomeNames, ScoredEvents scoredEvents, int index) {
+		long startTime = SCORE_TIMER.start();
+		double[] probs = null;
+		int[] predicateIndexes = null;
+		int i;
+		if (evaluator!=null) {
+			predicateIndexes = evaluator.resolve(event);
+			probs = evaluator.eval(event, predicateIndexes);
+		} else {
+			int featureCount = event.getFeatureCount();
+			String[] contexts = new String[featureCount];
+			float[] weights = new float[featureCount];
+			for (i=0; i<featureCount; i++) {
+				contexts[i] = event.getFeature(i);
+				weights[i] = event.getWeight(i);
+			}
+			probs = maxentModel.eval(contexts, weights);
+		}
+		
+		if (this.preferredOutcome!=null && this.bias>0) {
+			for (i=0;i<probs.length;i++) {
+				if (this.preferredOutcome.equals(outcomeNames[i])) {
+					probs[i] = (probs[i] + bias) / (1 + bias);
+				} else {
+					probs[i] = (probs[i]) / (1 + bias);
+				}
+			}
+		}
+		scoredEvents.probabilities[index] = probs;
+		scoredEvents.predicateIndexes[index] = predicateIndexes;
+		SCORE_TIMER.stop(startTime);
+	}
+	
+	private void notifyObservers(GenericEvent event, MaxentResult result, ScoredEvents scoredEvents, int index) {
+		LOG.trace("Test event: " + event.getIdentifier());
+		result.setProbabilities(scoredEvents.probabilities[index], scoredEvents.predicateIndexes[index]);
+		long startTime = NOTIFY_TIMER.start();
+		for (MaxentObserver observer : observers) {
+			observer.onAnalyse(event, result);
+		}
+		NOTIFY_TIMER.stop(startTime);
+		EVENTS.increment();
+		
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("Event " + event.getIdentifier());
+			LOG.trace("Real outcome: " + event.getOutcome());
+			LOG.trace("Guessed outcome: " + result.getBestOutcome());
+			for (int i=0;i<event.getFeatureCount();i++) {
+				LOG.trace(event.getFeature(i) + ": " + event.getWeight(i));
+			}
+			
+			LOG.trace("Outcome list: ");
+			for (NameValuePair weightedOutcome : result.getOutcomes()) {
+				LOG.trace("Outcome: " + weightedOutcome.getName() + ", Weight: " + weightedOutcome.getValue());
+			}
+		}
+	}
 
 	/**
 	 * Allows us to specify that one outcome is preferred to the others.
@@ -150,6 +268,25 @@ public class MaxentAnalyser {
 		this.maxentModel = maxentModel;
 	}
 	
+	/**
+	 * The number of threads used to score the events. Default: 1.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * The number of events scored together by each thread when threadCount &gt; 1. Default: 256.
+	 */
+	void setEventsPerBatch(int eventsPerBatch) {
+		this.eventsPerBatch = eventsPerBatch;
+	}
+
 	public void addObserver(MaxentObserver observer) {
 		this.observers.add(observer);
 	}
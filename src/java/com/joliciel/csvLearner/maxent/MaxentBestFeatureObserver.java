@@ -93,35 +93,40 @@ public class MaxentBestFeatureObserver implements MaxentObserver {
 	@Override
 	public void onAnalyse(GenericEvent event,
 			Collection<NameValuePair> outcomes) {
-
+		this.onAnalyse(event, new MaxentResult(outcomes));
+	}
+	
+	@Override
+	public void onAnalyse(GenericEvent event, MaxentResult result) {
 		Map<String,Double> featureTotals = featureMap.get(event.getOutcome());
 		if (featureTotals == null) {
 			featureTotals = new TreeMap<String, Double>();
 			featureMap.put(event.getOutcome(), featureTotals);
 		}
 		
-		for (int i=0; i<event.getFeatures().size(); i++ ) {
-			String feature = event.getFeatures().get(i);
-			double value = event.getWeights().get(i);
+		int outcomeIndex = -1;
+		for (int j=0;j<outcomeNames.length;j++) {
+			if (outcomeNames[j].equals(event.getOutcome())) {
+				outcomeIndex = j;
+				break;
+			}
+		}
+		
+		for (int i=0; i<event.getFeatureCount(); i++ ) {
+			String feature = event.getFeature(i);
+			double value = event.getWeight(i);
 			
 			double currentTotal = 0.0;
 			Double currentTotalObj = featureTotals.get(feature);
 			if (currentTotalObj!=null)
 				currentTotal = currentTotalObj.doubleValue();
 
-			int predicateIndex = predicateTable.get(feature);
+			int predicateIndex = result.hasPredicateIndexes() ? result.getPredicateIndex(i) : predicateTable.get(feature);
 			if (predicateIndex >=0) {
 				Context context = modelParameters[predicateIndex];
 				int[] outcomeIndexes = context.getOutcomes();
 				double[] parameters = context.getParameters();
 
-				int outcomeIndex = -1;
-				for (int j=0;j<outcomeNames.length;j++) {
-					if (outcomeNames[j].equals(event.getOutcome())) {
-						outcomeIndex = j;
-						break;
-					}
-				}
 				int paramIndex = -1;
 				for (int k=0;k<outcomeIndexes.length;k++) {
 					if (outcomeIndexes[k]==outcomeIndex) {
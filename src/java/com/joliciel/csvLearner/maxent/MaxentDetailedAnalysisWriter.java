@@ -87,7 +87,11 @@ public class MaxentDetailedAnalysisWriter implements MaxentObserver {
 	@Override
 	public void onAnalyse(GenericEvent event,
 			Collection<NameValuePair> outcomes) {
-		NameValuePair bestOutcome = outcomes.iterator().next();
+		this.onAnalyse(event, new MaxentResult(outcomes));
+	}
+	
+	@Override
+	public void onAnalyse(GenericEvent event, MaxentResult result) {
 		
 		try {
 			Map<String, Double> outcomeTotals = new TreeMap<String, Double>();
@@ -98,17 +102,17 @@ public class MaxentDetailedAnalysisWriter implements MaxentObserver {
 			
 			writer.append("####### Event " + event.getIdentifier() +"\n");
 			writer.append("Expected: " + event.getOutcome() +"\n");
-			writer.append("Guessed: " + bestOutcome.getName() +"\n");
+			writer.append("Guessed: " + result.getBestOutcome() +"\n");
 			
 			writer.append("### Feature list:\n");
-			for (int i=0; i<event.getFeatures().size(); i++ ) {
-				String feature = event.getFeatures().get(i);
-				double value = event.getWeights().get(i);
+			for (int i=0; i<event.getFeatureCount(); i++ ) {
+				String feature = event.getFeature(i);
+				double value = event.getWeight(i);
 				writer.append("#" + feature + "\t");
 				writer.append("value=" + CSVFormatter.format(value) + "\n");
 				
 				writer.append(String.format("%1$-30s", "outcome")  + String.format("%1$#15s","weight") +  String.format("%1$#15s","total") + "\n");
-				int predicateIndex = predicateTable.get(feature);
+				int predicateIndex = result.hasPredicateIndexes() ? result.getPredicateIndex(i) : predicateTable.get(feature);
 				if (predicateIndex >=0) {
 					Context context = modelParameters[predicateIndex];
 					int[] outcomeIndexes = context.getOutcomes();
@@ -162,8 +166,8 @@ public class MaxentDetailedAnalysisWriter implements MaxentObserver {
 			writer.append("\n");
 			
 			Map<String,Double> outcomeWeights = new TreeMap<String, Double>();
-			for (NameValuePair weightedOutcome : outcomes) {
-				outcomeWeights.put(weightedOutcome.getName(), weightedOutcome.getValue());
+			for (int i=0; i<result.getOutcomeCount(); i++) {
+				outcomeWeights.put(result.getOutcome(i), result.getProbability(i));
 			}
 			
 			writer.append("### Outcome list:\n");
@@ -36,6 +36,14 @@ public interface MaxentObserver {
 	 */
 	public void onAnalyse(GenericEvent event, Collection<NameValuePair> outcomes);
 	
+	/**
+	 * Called after maxent analysis, with the outcome probabilities indexed by model outcome id.
+	 * This is the method called by the MaxentAnalyser.
+	 * @param event the event analysed
+	 * @param result the analysis result, which may be reused once this method returns
+	 */
+	public void onAnalyse(GenericEvent event, MaxentResult result);
+	
 	/**
 	 * Called when analysis is complete.
 	 */
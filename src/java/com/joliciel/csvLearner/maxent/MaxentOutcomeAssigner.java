@@ -35,9 +35,13 @@ public class MaxentOutcomeAssigner implements MaxentObserver {
 	@Override
 	public void onAnalyse(GenericEvent event,
 			Collection<NameValuePair> outcomes) {
-		NameValuePair bestOutcome = outcomes.iterator().next();
-		String outcome = bestOutcome.getName();
-		if (bestOutcome.getValue() < minProbToConsider)
+		this.onAnalyse(event, new MaxentResult(outcomes));
+	}
+	
+	@Override
+	public void onAnalyse(GenericEvent event, MaxentResult result) {
+		String outcome = result.getBestOutcome();
+		if (result.getBestProbability() < minProbToConsider)
 			outcome = unknownOutcomeName;
 		event.setOutcome(outcome);
 	}
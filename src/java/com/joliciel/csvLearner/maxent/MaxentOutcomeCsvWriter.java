@@ -26,8 +26,8 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.ArrayList;
 
@@ -50,6 +50,8 @@ public class MaxentOutcomeCsvWriter implements MaxentObserver {
 	private List<String> outcomeList = new ArrayList<String>();
 	private double minProbToConsider = 0.0;
 	private String unknownOutcomeName = "";
+	private String[] columnOutcomeNames = null;
+	private int[] columnIndexes = null;
 
 	public MaxentOutcomeCsvWriter(MaxentModel maxentModel, File file) {
 		this.maxentModel = maxentModel;
@@ -91,23 +93,22 @@ public class MaxentOutcomeCsvWriter implements MaxentObserver {
 	@Override
 	public void onAnalyse(GenericEvent event,
 			Collection<NameValuePair> outcomes) {
-		NameValuePair bestOutcome =  outcomes.iterator().next();
-		String bestOutcomeName = bestOutcome.getName();
-		if (bestOutcome.getValue() < minProbToConsider)
+		this.onAnalyse(event, new MaxentResult(outcomes));
+	}
+	
+	@Override
+	public void onAnalyse(GenericEvent event, MaxentResult result) {
+		String bestOutcomeName = result.getBestOutcome();
+		if (result.getBestProbability() < minProbToConsider)
 			bestOutcomeName = unknownOutcomeName;
 		
 		try {
 			writer.append(event.getIdentifier() +",");
 			writer.append(event.getOutcome() +",");
 			writer.append(bestOutcomeName +",");
-			Map<String,Double> outcomeWeights = new TreeMap<String, Double>();
-			for (NameValuePair weightedOutcome : outcomes) {
-				outcomeWeights.put(weightedOutcome.getName(), weightedOutcome.getValue());
-			}
-	
-			for (String outcome : outcomeList) {
-				Double weightObj = outcomeWeights.get(outcome);
-				double weight = (weightObj==null ? 0.0 : weightObj.doubleValue());
+			int[] columnIndexes = this.getColumnIndexes(result.getOutcomeNames());
+			for (int columnIndex : columnIndexes) {
+				double weight = (columnIndex<0 ? 0.0 : result.getProbability(columnIndex));
 				writer.append(CSVFormatter.format(weight)+",");
 			}
 			writer.append("\n");
@@ -117,6 +118,25 @@ public class MaxentOutcomeCsvWriter implements MaxentObserver {
 		}
 	}
 	
+	/**
+	 * The outcome id for each column in the outcome list, or -1 if the outcome is missing.
+	 * Only recalculated when the result's outcome names change.
+	 */
+	private int[] getColumnIndexes(String[] outcomeNames) {
+		if (outcomeNames!=columnOutcomeNames) {
+			Map<String,Integer> outcomeIndexes = new HashMap<String, Integer>();
+			for (int i=0; i<outcomeNames.length; i++)
+				outcomeIndexes.put(outcomeNames[i], i);
+			columnIndexes = new int[outcomeList.size()];
+			for (int j=0; j<outcomeList.size(); j++) {
+				Integer outcomeIndex = outcomeIndexes.get(outcomeList.get(j));
+				columnIndexes[j] = (outcomeIndex==null ? -1 : outcomeIndex.intValue());
+			}
+			columnOutcomeNames = outcomeNames;
+		}
+		return columnIndexes;
+	}
+	
 	@Override
 	public void onTerminate() {
 		try {
@@ -0,0 +1,220 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.maxent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.joliciel.csvLearner.NameValuePair;
+
+/**
+ * The result of analysing a single event: the probability of each outcome,
+ * indexed by the model's outcome id.<br/>
+ * The best outcome and the top outcomes are only calculated when requested.
+ * Outcomes are ranked from highest to lowest probability, and by name
+ * for equal probabilities, as with the NameValueDescendingComparator.<br/>
+ * A result may be reused for another event by calling setProbabilities,
+ * so observers should not keep a reference to it after onAnalyse.
+ * @author Assaf Urieli
+ *
+ */
+public final class MaxentResult {
+	private String[] outcomeNames;
+	private double[] probabilities;
+	private int bestOutcomeIndex = -1;
+	private int[] ranking = null;
+	private int[] predicateIndexes = null;
+	
+	/**
+	 * @param outcomeNames the outcome names, indexed by outcome id
+	 * @param probabilities the probability of each outcome, indexed by outcome id
+	 */
+	public MaxentResult(String[] outcomeNames, double[] probabilities) {
+		this.outcomeNames = outcomeNames;
+		this.setProbabilities(probabilities);
+	}
+	
+	/**
+	 * @param outcomeNames the outcome names, indexed by outcome id
+	 * @param probabilities the probability of each outcome, indexed by outcome id
+	 * @param predicateIndexes the model predicate index for each of the event's features, or -1 if unknown
+	 */
+	public MaxentResult(String[] outcomeNames, double[] probabilities, int[] predicateIndexes) {
+		this(outcomeNames, probabilities);
+		this.predicateIndexes = predicateIndexes;
+	}
+	
+	/**
+	 * Construct a result from a collection of weighted outcomes,
+	 * the outcome ids being given by the collection's iteration order.
+	 */
+	public MaxentResult(Collection<NameValuePair> outcomes) {
+		this.outcomeNames = new String[outcomes.size()];
+		double[] probabilities = new double[outcomes.size()];
+		int i = 0;
+		for (NameValuePair outcome : outcomes) {
+			outcomeNames[i] = outcome.getName();
+			probabilities[i] = outcome.getValue();
+			i++;
+		}
+		this.setProbabilities(probabilities);
+	}
+	
+	/**
+	 * Replace the probabilities, for the same outcome names.
+	 */
+	public void setProbabilities(double[] probabilities) {
+		this.probabilities = probabilities;
+		this.bestOutcomeIndex = -1;
+		this.ranking = null;
+		this.predicateIndexes = null;
+	}
+	
+	/**
+	 * Replace the probabilities and predicate indexes, for the same outcome names.
+	 */
+	public void setProbabilities(double[] probabilities, int[] predicateIndexes) {
+		this.setProbabilities(probabilities);
+		this.predicateIndexes = predicateIndexes;
+	}
+	
+	/**
+	 * Whether the model's predicate indexes were resolved for the event's features.
+	 */
+	public boolean hasPredicateIndexes() {
+		return predicateIndexes!=null;
+	}
+	
+	/**
+	 * The model predicate index for the event's feature at a given index (see GenericEvent.getFeature(int)),
+	 * or -1 if the feature is unknown to the model.
+	 * Only available if hasPredicateIndexes() is true.
+	 */
+	public int getPredicateIndex(int featureIndex) {
+		return predicateIndexes[featureIndex];
+	}
+	
+	public int getOutcomeCount() {
+		return outcomeNames.length;
+	}
+	
+	/**
+	 * The outcome names, indexed by outcome id.
+	 * The array is shared, and should not be modified.
+	 */
+	public String[] getOutcomeNames() {
+		return outcomeNames;
+	}
+	
+	public String getOutcome(int outcomeIndex) {
+		return outcomeNames[outcomeIndex];
+	}
+	
+	public double getProbability(int outcomeIndex) {
+		return probabilities[outcomeIndex];
+	}
+	
+	/**
+	 * The probabilities, indexed by outcome id.
+	 * The array is shared, and should not be modified.
+	 */
+	public double[] getProbabilities() {
+		return probabilities;
+	}
+	
+	/**
+	 * The id of the most probable outcome.
+	 */
+	public int getBestOutcomeIndex() {
+		if (bestOutcomeIndex<0) {
+			int best = 0;
+			for (int i=1; i<probabilities.length; i++) {
+				if (this.compare(i, best)<0)
+					best = i;
+			}
+			bestOutcomeIndex = best;
+		}
+		return bestOutcomeIndex;
+	}
+	
+	public String getBestOutcome() {
+		return outcomeNames[this.getBestOutcomeIndex()];
+	}
+	
+	public double getBestProbability() {
+		return probabilities[this.getBestOutcomeIndex()];
+	}
+	
+	/**
+	 * The ids of the k most probable outcomes, from most to least probable.
+	 * If k is greater than the number of outcomes, all outcomes are returned,
+	 * and if k &lt;= 0, none are.
+	 */
+	public int[] getTopOutcomeIndexes(int k) {
+		if (k<=0)
+			return new int[0];
+		if (k>probabilities.length)
+			k = probabilities.length;
+		if (ranking!=null)
+			return ranking.length==k ? ranking : Arrays.copyOf(ranking, k);
+		
+		// insertion into a bounded array: the outcome counts are small
+		int[] top = new int[k];
+		int size = 0;
+		for (int i=0; i<probabilities.length; i++) {
+			if (size==k && this.compare(i, top[k-1])>0)
+				continue;
+			int j = (size<k) ? size++ : k-1;
+			while (j>0 && this.compare(i, top[j-1])<0) {
+				top[j] = top[j-1];
+				j--;
+			}
+			top[j] = i;
+		}
+		if (k==probabilities.length)
+			ranking = top;
+		return top;
+	}
+	
+	/**
+	 * All of the outcomes as weighted outcomes, from most to least probable.
+	 */
+	public List<NameValuePair> getOutcomes() {
+		int[] top = this.getTopOutcomeIndexes(probabilities.length);
+		List<NameValuePair> outcomes = new ArrayList<NameValuePair>(top.length);
+		for (int outcomeIndex : top)
+			outcomes.add(new NameValuePair(outcomeNames[outcomeIndex], probabilities[outcomeIndex]));
+		return outcomes;
+	}
+	
+	/**
+	 * Orders outcome ids from highest to lowest probability, and by name for equal probabilities.
+	 */
+	private int compare(int i, int j) {
+		if (probabilities[i]<probabilities[j]) {
+			return 1;
+		} else if (probabilities[i]>probabilities[j]) {
+			return -1;
+		} else {
+			return outcomeNames[i].compareTo(outcomeNames[j]);
+		}
+	}
+}
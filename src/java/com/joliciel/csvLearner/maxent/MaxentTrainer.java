@@ -21,13 +21,16 @@ package com.joliciel.csvLearner.maxent;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Iterator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.joliciel.csvLearner.CSVEventListReader;
+import com.joliciel.csvLearner.GenericEvent;
 import com.joliciel.csvLearner.GenericEvents;
 import com.joliciel.csvLearner.utils.LogUtils;
+import com.joliciel.csvLearner.utils.Metrics;
 
 import opennlp.maxent.GISTrainer;
 import opennlp.maxent.io.SuffixSensitiveGISModelWriter;
@@ -47,15 +50,57 @@ public class MaxentTrainer {
 	private int cutoff = 5;
 	private double sigma = 0;
 	private double smoothing = 0;
+	private int threadCount = 1;
+	private boolean indexInMemory = true;
 	private OutputStream outputStream = null;
 	private File outputFile = null;
+	private static final Metrics.Timer INDEX_TIMER = Metrics.getTimer("maxentTrainer.index");
+	private static final Metrics.Timer TRAIN_TIMER = Metrics.getTimer("maxentTrainer.train");
+	private static final Metrics.Timer WRITE_TIMER = Metrics.getTimer("maxentTrainer.write");
 
 	public MaxentModel train(GenericEvents events) {
 		try {
+			DataIndexer dataIndexer = null;
+			long startTime = INDEX_TIMER.start();
+			if (indexInMemory) {
+				dataIndexer = new GenericEventsDataIndexer(events, cutoff);
+			} else {
+				GenericEventMapEventStream eventStream = new GenericEventMapEventStream(events);
+				dataIndexer = new TwoPassRealValueDataIndexer(eventStream, cutoff);
+			}
+			INDEX_TIMER.stop(startTime);
+			return this.train(dataIndexer);
+		} catch (IOException ioe) {
+			LogUtils.logError(LOG, ioe);
+			throw new RuntimeException(ioe);
+		}
+	}
+	
+	/**
+	 * Train a model from events which are read one at a time, rather than held in memory,
+	 * skipping any events marked as test.
+	 * The events are indexed as they are read, via the maxent library's TwoPassRealValueDataIndexer.
+	 * @param events
+	 * @return
+	 */
+	public MaxentModel train(Iterator<GenericEvent> events) {
+		try {
+			long startTime = INDEX_TIMER.start();
 			GenericEventMapEventStream eventStream = new GenericEventMapEventStream(events);
 			DataIndexer dataIndexer = new TwoPassRealValueDataIndexer(eventStream, cutoff);
-
-			GISTrainer trainer = new GISTrainer(true);
+			INDEX_TIMER.stop(startTime);
+			return this.train(dataIndexer);
+		} catch (IOException ioe) {
+			LogUtils.logError(LOG, ioe);
+			throw new RuntimeException(ioe);
+		}
+	}
+	
+	private MaxentModel train(DataIndexer dataIndexer) throws IOException {
+		AbstractModel model = null;
+		long startTime = TRAIN_TIMER.start();
+		if (threadCount>1) {
+			ParallelGISTrainer trainer = new ParallelGISTrainer(threadCount);
 			if (sigma>0)
 				trainer.setGaussianSigma(sigma);
 			
@@ -64,22 +109,32 @@ public class MaxentTrainer {
 				trainer.setSmoothingObservation(smoothing);
 			}
 			
-			AbstractModel model =  trainer.trainModel(iterations, dataIndexer, cutoff);
-	
-			if (outputFile!=null) {
-				new SuffixSensitiveGISModelWriter(model, outputFile).persist();
-			} else if (outputStream!=null) {
-				new MaxentModelWriter(model, outputStream).persist();
+			model = trainer.trainModel(iterations, dataIndexer, cutoff);
+		} else {
+			GISTrainer trainer = new GISTrainer(true);
+			if (sigma>0)
+				trainer.setGaussianSigma(sigma);
+			
+			if (smoothing>0) {
+				trainer.setSmoothing(true);
+				trainer.setSmoothingObservation(smoothing);
 			}
 			
-			return model;
-		} catch (IOException ioe) {
-			LogUtils.logError(LOG, ioe);
-			throw new RuntimeException(ioe);
+			model =  trainer.trainModel(iterations, dataIndexer, cutoff);
 		}
+		TRAIN_TIMER.stop(startTime);
+
+		startTime = WRITE_TIMER.start();
+		if (outputFile!=null) {
+			new SuffixSensitiveGISModelWriter(model, outputFile).persist();
+		} else if (outputStream!=null) {
+			new MaxentModelWriter(model, outputStream).persist();
+		}
+		WRITE_TIMER.stop(startTime);
+		
+		return model;
 	}
 
-	
 	/**
 	 * An output file where the model should be written.
 	 * @return
@@ -155,4 +210,31 @@ public class MaxentTrainer {
 		this.smoothing = smoothing;
 	}
 
+	/**
+	 * The number of threads used to compute the model expectations at each training iteration.
+	 * If > 1, the events are divided among the threads, and the resulting model is equivalent
+	 * to the single-threaded model within floating-point rounding. Default: 1.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Whether the events should be indexed directly from memory (the default),
+	 * or via the maxent library's TwoPassRealValueDataIndexer, which goes through a temporary file.
+	 * @return
+	 */
+	public boolean isIndexInMemory() {
+		return indexInMemory;
+	}
+
+	public void setIndexInMemory(boolean indexInMemory) {
+		this.indexInMemory = indexInMemory;
+	}
+
 }
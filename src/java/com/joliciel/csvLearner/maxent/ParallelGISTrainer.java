@@ -0,0 +1,387 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.maxent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import opennlp.maxent.GISModel;
+import opennlp.model.DataIndexer;
+import opennlp.model.EvalParameters;
+import opennlp.model.MutableContext;
+import opennlp.model.Prior;
+import opennlp.model.UniformPrior;
+
+/**
+ * A GIS trainer which splits the events into contiguous blocks, one per thread,
+ * and computes the model expectations for each block concurrently.
+ * The per-thread expectations are summed in block order at the end of each iteration,
+ * before the parameters are updated on the calling thread.<br/>
+ * The algorithm (correction constant, active outcomes per predicate, additive and Gaussian smoothing,
+ * stopping rule) is the same as the one of opennlp.maxent.GISTrainer,
+ * so that the resulting model only differs from the single-threaded one by floating-point rounding.
+ * @author Assaf Urieli
+ *
+ */
+class ParallelGISTrainer {
+    private static final Log LOG = LogFactory.getLog(ParallelGISTrainer.class);
+	private static final double LL_THRESHOLD = 0.0001;
+	private static final double GAUSSIAN_CONVERGENCE = 0.000001;
+	private static final int GAUSSIAN_MAX_ITERATIONS = 50;
+
+	private int threadCount = 1;
+	private boolean useSimpleSmoothing = false;
+	private double smoothingObservation = 0.1;
+	private boolean useGaussianSmoothing = false;
+	private double sigma = 2.0;
+
+	private int[][] contexts;
+	private float[][] values;
+	private int[] outcomeList;
+	private int[] numTimesEventsSeen;
+	private int[] predicateCounts;
+	private int cutoff;
+	private int numOutcomes;
+	private Prior prior;
+	private MutableContext[] params;
+	private EvalParameters evalParams;
+	private double[][] observedExpects;
+	private double[][] modelExpects;
+
+	public ParallelGISTrainer(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	public GISModel trainModel(int iterations, DataIndexer dataIndexer, int cutoff) {
+		this.contexts = dataIndexer.getContexts();
+		this.values = dataIndexer.getValues();
+		this.outcomeList = dataIndexer.getOutcomeList();
+		this.numTimesEventsSeen = dataIndexer.getNumTimesEventsSeen();
+		this.predicateCounts = dataIndexer.getPredCounts();
+		this.cutoff = cutoff;
+
+		String[] outcomeLabels = dataIndexer.getOutcomeLabels();
+		String[] predLabels = dataIndexer.getPredLabels();
+		this.numOutcomes = outcomeLabels.length;
+		int numPreds = predLabels.length;
+		int numUniqueEvents = contexts.length;
+
+		this.prior = new UniformPrior();
+		this.prior.setLabels(outcomeLabels, predLabels);
+
+		// the correction constant is the largest total feature value for any event
+		float correctionConstant = 0;
+		for (int ei = 0; ei < numUniqueEvents; ei++) {
+			float total = 0;
+			if (values==null || values[ei]==null) {
+				total = contexts[ei].length;
+			} else {
+				for (int j = 0; j < values[ei].length; j++)
+					total += values[ei][j];
+			}
+			if (total > correctionConstant)
+				correctionConstant = total;
+		}
+
+		LOG.debug("Number of Event Tokens: " + numUniqueEvents);
+		LOG.debug("Number of Outcomes: " + numOutcomes);
+		LOG.debug("Number of Predicates: " + numPreds);
+
+		float[][] predCount = new float[numPreds][numOutcomes];
+		for (int ei = 0; ei < numUniqueEvents; ei++) {
+			for (int j = 0; j < contexts[ei].length; j++) {
+				if (values!=null && values[ei]!=null)
+					predCount[contexts[ei][j]][outcomeList[ei]] += numTimesEventsSeen[ei] * values[ei][j];
+				else
+					predCount[contexts[ei][j]][outcomeList[ei]] += numTimesEventsSeen[ei];
+			}
+		}
+
+		params = new MutableContext[numPreds];
+		observedExpects = new double[numPreds][];
+		modelExpects = new double[numPreds][];
+		evalParams = new EvalParameters(params, 0, 1, numOutcomes);
+
+		int[] allOutcomesPattern = new int[numOutcomes];
+		for (int oi = 0; oi < numOutcomes; oi++)
+			allOutcomesPattern[oi] = oi;
+		int[] activeOutcomes = new int[numOutcomes];
+		for (int pi = 0; pi < numPreds; pi++) {
+			int numActiveOutcomes = 0;
+			int[] outcomePattern;
+			if (useSimpleSmoothing) {
+				numActiveOutcomes = numOutcomes;
+				outcomePattern = allOutcomesPattern;
+			} else {
+				for (int oi = 0; oi < numOutcomes; oi++) {
+					if (predCount[pi][oi] > 0 && predicateCounts[pi] >= cutoff) {
+						activeOutcomes[numActiveOutcomes] = oi;
+						numActiveOutcomes++;
+					}
+				}
+				if (numActiveOutcomes==numOutcomes) {
+					outcomePattern = allOutcomesPattern;
+				} else {
+					outcomePattern = new int[numActiveOutcomes];
+					System.arraycopy(activeOutcomes, 0, outcomePattern, 0, numActiveOutcomes);
+				}
+			}
+			params[pi] = new MutableContext(outcomePattern, new double[numActiveOutcomes]);
+			modelExpects[pi] = new double[numActiveOutcomes];
+			observedExpects[pi] = new double[numActiveOutcomes];
+			for (int aoi = 0; aoi < numActiveOutcomes; aoi++) {
+				int oi = outcomePattern[aoi];
+				if (predCount[pi][oi] > 0)
+					observedExpects[pi][aoi] = predCount[pi][oi];
+				else if (useSimpleSmoothing)
+					observedExpects[pi][aoi] = smoothingObservation;
+			}
+		}
+		predCount = null;
+
+		this.findParameters(iterations, correctionConstant);
+
+		GISModel model = new GISModel(params, predLabels, outcomeLabels, 1, evalParams.getCorrectionParam());
+
+		contexts = null;
+		values = null;
+		observedExpects = null;
+		modelExpects = null;
+		return model;
+	}
+
+	private void findParameters(int iterations, float correctionConstant) {
+		int numUniqueEvents = contexts.length;
+		int numThreads = threadCount < numUniqueEvents ? threadCount : numUniqueEvents;
+		if (numThreads < 1)
+			numThreads = 1;
+		LOG.debug("Performing " + iterations + " iterations using " + numThreads + " threads.");
+
+		List<ExpectationWorker> workers = new ArrayList<ExpectationWorker>(numThreads);
+		for (int i = 0; i < numThreads; i++) {
+			int startEvent = (int) (((long) numUniqueEvents * i) / numThreads);
+			int endEvent = (int) (((long) numUniqueEvents * (i+1)) / numThreads);
+			workers.add(new ExpectationWorker(startEvent, endEvent));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			double previousLogLikelihood = 0.0;
+			for (int i = 1; i <= iterations; i++) {
+				double logLikelihood = this.nextIteration(executor, workers, correctionConstant, i);
+				if (i > 1) {
+					if (previousLogLikelihood > logLikelihood) {
+						LOG.error("Model Diverging: loglikelihood decreased");
+						break;
+					}
+					if (logLikelihood - previousLogLikelihood < LL_THRESHOLD)
+						break;
+				}
+				previousLogLikelihood = logLikelihood;
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private double nextIteration(ExecutorService executor, List<ExpectationWorker> workers, float correctionConstant, int iteration) {
+		List<Future<Double>> futures;
+		try {
+			futures = executor.invokeAll(workers);
+		} catch (InterruptedException ie) {
+			throw new RuntimeException(ie);
+		}
+
+		// reduce in block order, so that the result doesn't depend on thread scheduling
+		double logLikelihood = 0.0;
+		int numEvents = 0;
+		int numCorrect = 0;
+		for (int w = 0; w < workers.size(); w++) {
+			logLikelihood += this.getWorkerResult(futures.get(w));
+			ExpectationWorker worker = workers.get(w);
+			numEvents += worker.numEvents;
+			numCorrect += worker.numCorrect;
+			for (int pi = 0; pi < modelExpects.length; pi++) {
+				double[] workerExpects = worker.modelExpects[pi];
+				double[] predExpects = modelExpects[pi];
+				for (int aoi = 0; aoi < predExpects.length; aoi++)
+					predExpects[aoi] += workerExpects[aoi];
+			}
+		}
+
+		for (int pi = 0; pi < params.length; pi++) {
+			double[] observed = observedExpects[pi];
+			double[] model = modelExpects[pi];
+			for (int aoi = 0; aoi < model.length; aoi++) {
+				if (useGaussianSmoothing) {
+					params[pi].updateParameter(aoi, this.gaussianUpdate(pi, aoi, correctionConstant));
+				} else {
+					params[pi].updateParameter(aoi, (Math.log(observed[aoi]) - Math.log(model[aoi])) / correctionConstant);
+				}
+				model[aoi] = 0;
+			}
+		}
+
+		if (LOG.isDebugEnabled())
+			LOG.debug(iteration + ": loglikelihood=" + logLikelihood + ", accuracy=" + ((double) numCorrect / (double) numEvents));
+		return logLikelihood;
+	}
+
+	/**
+	 * Newton's method for the parameter update under a Gaussian prior.
+	 */
+	private double gaussianUpdate(int predicate, int outcomeIndex, double correctionConstant) {
+		double param = params[predicate].getParameters()[outcomeIndex];
+		double modelValue = modelExpects[predicate][outcomeIndex];
+		double observedValue = observedExpects[predicate][outcomeIndex];
+		double x0 = 0.0;
+		for (int i = 0; i < GAUSSIAN_MAX_ITERATIONS; i++) {
+			double tmp = modelValue * Math.exp(correctionConstant * x0);
+			double f = tmp + (param + x0) / sigma - observedValue;
+			double fp = tmp * correctionConstant + 1 / sigma;
+			if (fp==0)
+				break;
+			double x = x0 - f / fp;
+			if (Math.abs(x - x0) < GAUSSIAN_CONVERGENCE) {
+				x0 = x;
+				break;
+			}
+			x0 = x;
+		}
+		return x0;
+	}
+
+	private double getWorkerResult(Future<Double> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException ie) {
+			throw new RuntimeException(ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Computes the model expectations and log-likelihood for a contiguous block of events,
+	 * using its own distribution and expectation arrays.
+	 */
+	private final class ExpectationWorker implements Callable<Double> {
+		private final int startEvent;
+		private final int endEvent;
+		private final double[] modelDistribution;
+		private final double[][] modelExpects;
+		private int numEvents;
+		private int numCorrect;
+
+		public ExpectationWorker(int startEvent, int endEvent) {
+			this.startEvent = startEvent;
+			this.endEvent = endEvent;
+			this.modelDistribution = new double[numOutcomes];
+			this.modelExpects = new double[params.length][];
+			for (int pi = 0; pi < params.length; pi++)
+				this.modelExpects[pi] = new double[params[pi].getOutcomes().length];
+		}
+
+		@Override
+		public Double call() throws Exception {
+			for (double[] predExpects : modelExpects)
+				Arrays.fill(predExpects, 0.0);
+			numEvents = 0;
+			numCorrect = 0;
+			double logLikelihood = 0.0;
+			for (int ei = startEvent; ei < endEvent; ei++) {
+				float[] eventValues = values==null ? null : values[ei];
+				if (values!=null) {
+					prior.logPrior(modelDistribution, contexts[ei], eventValues);
+					GISModel.eval(contexts[ei], eventValues, modelDistribution, evalParams);
+				} else {
+					prior.logPrior(modelDistribution, contexts[ei]);
+					GISModel.eval(contexts[ei], modelDistribution, evalParams);
+				}
+				int timesSeen = numTimesEventsSeen[ei];
+				for (int j = 0; j < contexts[ei].length; j++) {
+					int pi = contexts[ei][j];
+					if (predicateCounts[pi] >= cutoff) {
+						int[] activeOutcomes = params[pi].getOutcomes();
+						double[] predExpects = modelExpects[pi];
+						for (int aoi = 0; aoi < activeOutcomes.length; aoi++) {
+							int oi = activeOutcomes[aoi];
+							if (eventValues!=null)
+								predExpects[aoi] += modelDistribution[oi] * eventValues[j] * timesSeen;
+							else
+								predExpects[aoi] += modelDistribution[oi] * timesSeen;
+						}
+					}
+				}
+				logLikelihood += Math.log(modelDistribution[outcomeList[ei]]) * timesSeen;
+				numEvents += timesSeen;
+
+				int best = 0;
+				for (int oi = 1; oi < numOutcomes; oi++)
+					if (modelDistribution[oi] > modelDistribution[best])
+						best = oi;
+				if (best==outcomeList[ei])
+					numCorrect += timesSeen;
+			}
+			return logLikelihood;
+		}
+	}
+
+	/**
+	 * The number of threads among which the events are divided.
+	 * @return
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Whether predicates should be given a parameter for every outcome,
+	 * unseen combinations receiving the smoothing observation.
+	 * @param smoothing
+	 */
+	public void setSmoothing(boolean smoothing) {
+		this.useSimpleSmoothing = smoothing;
+	}
+
+	public void setSmoothingObservation(double smoothingObservation) {
+		this.smoothingObservation = smoothingObservation;
+	}
+
+	public void setGaussianSigma(double sigma) {
+		this.useGaussianSmoothing = true;
+		this.sigma = sigma;
+	}
+}
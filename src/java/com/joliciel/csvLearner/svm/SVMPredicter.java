@@ -41,6 +41,7 @@ public class SVMPredicter {
 	
 	public void predict(GenericEvents events) {
 		RapidMinerExampleSetLoader exampleSetLoader = new RapidMinerExampleSetLoader();
+		exampleSetLoader.setSparse(true);
 		ExampleSet testSet = exampleSetLoader.createExampleSet(events, true, events.getOutcomes());
 		Attribute predicatedLabel = testSet.getAttributes().getPredictedLabel();
 
@@ -44,6 +44,7 @@ public class SVMTrainer {
 
 	public LibSVMModel train(GenericEvents events) {
 		RapidMinerExampleSetLoader exampleSetLoader = new RapidMinerExampleSetLoader();
+		exampleSetLoader.setSparse(true);
 		ExampleSet trainingSet = exampleSetLoader.createExampleSet(events);
 		return this.train(trainingSet);
 	}
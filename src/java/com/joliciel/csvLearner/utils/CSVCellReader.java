@@ -0,0 +1,261 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A streaming cursor over the rows and cells of a CSV file.
+ * Reads characters directly from the underlying reader into a re-usable buffer,
+ * without building intermediate lines or token lists,
+ * and applies exactly the same quoting and trimming rules as CSVFormatter.getCSVCells(String).<br/>
+ * Typical usage:<br/>
+ * <pre>
+ * while (cellReader.nextRow()) {
+ *   while (cellReader.nextCell()) {
+ *     String cell = cellReader.getCell();
+ *   }
+ * }
+ * </pre>
+ * Rows are separated by the same line separators as java.util.Scanner.nextLine(),
+ * regardless of whether we're inside a quote.
+ * @author Assaf Urieli
+ *
+ */
+public class CSVCellReader {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private Reader reader;
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int bufferPos = 0;
+	private int bufferLimit = 0;
+	private boolean endOfInput = false;
+
+	private char[] cell = new char[256];
+	private char[] cellChars = cell;
+	private int cellStart = 0;
+	private int cellEnd = 0;
+
+	private boolean inRow = false;
+	private boolean endOfRow = true;
+	private int row = 0;
+
+	public CSVCellReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	public CSVCellReader(InputStream inputStream) {
+		try {
+			this.reader = new InputStreamReader(inputStream, "UTF-8");
+		} catch (UnsupportedEncodingException uee) {
+			throw new RuntimeException(uee);
+		}
+	}
+	
+	/**
+	 * For subclasses which provide their own characters by overriding read(char[], int, int).
+	 */
+	protected CSVCellReader() {
+	}
+
+	/**
+	 * Move to the next row, skipping any unread cells in the current row.
+	 * @return false if there are no more rows.
+	 */
+	public boolean nextRow() throws IOException {
+		if (inRow) {
+			while (!endOfRow)
+				this.nextCell();
+		}
+		if (!this.fill()) {
+			inRow = false;
+			return false;
+		}
+		inRow = true;
+		endOfRow = false;
+		row++;
+		return true;
+	}
+
+	/**
+	 * Move to the next cell in the current row.
+	 * As in CSVFormatter.getCSVCells(String), an empty last cell is not returned.
+	 * @return false if there are no more cells in the current row.
+	 */
+	public boolean nextCell() throws IOException {
+		if (endOfRow)
+			return false;
+		
+		// fast path: an unquoted cell lying entirely within the buffer is returned in place, without copying
+		int start = bufferPos;
+		for (int i = start; i < bufferLimit; i++) {
+			char c = buffer[i];
+			if (c==',') {
+				bufferPos = i + 1;
+				this.trim(buffer, start, i);
+				return true;
+			} else if (c=='\n' || c=='\u2028' || c=='\u2029' || c=='\u0085' || (c=='\r' && i+1<bufferLimit)) {
+				bufferPos = i + 1;
+				if (c=='\r' && buffer[bufferPos]=='\n')
+					bufferPos++;
+				endOfRow = true;
+				if (i==start)
+					return false;
+				this.trim(buffer, start, i);
+				return true;
+			} else if (c=='"' || c=='\r') {
+				break;
+			}
+		}
+		
+		int length = 0;
+		boolean inQuote = false;
+		boolean lastWasQuote = false;
+		while (true) {
+			if (bufferPos==bufferLimit && !this.fill()) {
+				endOfRow = true;
+				break;
+			}
+			char c = buffer[bufferPos++];
+			if (c=='\n' || c=='\u2028' || c=='\u2029' || c=='\u0085') {
+				endOfRow = true;
+				break;
+			} else if (c=='\r') {
+				if ((bufferPos<bufferLimit || this.fill()) && buffer[bufferPos]=='\n')
+					bufferPos++;
+				endOfRow = true;
+				break;
+			} else if (c=='"') {
+				inQuote = !inQuote;
+				if (lastWasQuote) {
+					length = this.append(length, c);
+					lastWasQuote = false;
+				} else {
+					lastWasQuote = true;
+				}
+			} else if (c==',' && !inQuote) {
+				this.trim(cell, 0, length);
+				return true;
+			} else {
+				length = this.append(length, c);
+				lastWasQuote = false;
+			}
+		}
+		if (length==0)
+			return false;
+		this.trim(cell, 0, length);
+		return true;
+	}
+
+	/**
+	 * The contents of the current cell.
+	 * @return
+	 */
+	public String getCell() {
+		return new String(cellChars, cellStart, cellEnd - cellStart);
+	}
+
+	/**
+	 * The buffer containing the current cell's characters, from getCellStart() (inclusive)
+	 * to getCellEnd() (exclusive). Only valid until the next call to nextCell().
+	 * @return
+	 */
+	public char[] getCellBuffer() {
+		return cellChars;
+	}
+
+	public int getCellStart() {
+		return cellStart;
+	}
+
+	public int getCellEnd() {
+		return cellEnd;
+	}
+
+	public int getCellLength() {
+		return cellEnd - cellStart;
+	}
+
+	/**
+	 * The 1-based index of the current row.
+	 * @return
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+	/**
+	 * Read characters into a portion of the buffer, as per Reader.read(char[], int, int).
+	 * @return the number of characters read, or -1 if the end of input has been reached.
+	 */
+	protected int read(char[] buffer, int offset, int length) throws IOException {
+		return reader.read(buffer, offset, length);
+	}
+
+	private int append(int length, char c) {
+		if (length==cell.length) {
+			char[] newCell = new char[cell.length * 2];
+			System.arraycopy(cell, 0, newCell, 0, length);
+			cell = newCell;
+		}
+		cell[length] = c;
+		return length + 1;
+	}
+
+	/**
+	 * Set the current cell, trimmed the same way as String.trim().
+	 */
+	private void trim(char[] chars, int start, int end) {
+		while (start < end && chars[start] <= ' ')
+			start++;
+		while (end > start && chars[end-1] <= ' ')
+			end--;
+		cellChars = chars;
+		cellStart = start;
+		cellEnd = end;
+	}
+
+	/**
+	 * Ensure there are unread characters in the buffer.
+	 * @return false if the end of input has been reached.
+	 */
+	private boolean fill() throws IOException {
+		if (bufferPos<bufferLimit)
+			return true;
+		while (!endOfInput) {
+			int read = this.read(buffer, 0, buffer.length);
+			if (read<0) {
+				endOfInput = true;
+			} else if (read>0) {
+				bufferPos = 0;
+				bufferLimit = read;
+				return true;
+			}
+		}
+		return false;
+	}
+}
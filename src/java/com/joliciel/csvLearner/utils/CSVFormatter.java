@@ -26,29 +26,37 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class CSVFormatter {
-    private static DecimalFormat decFormat;
-    private static DecimalFormat intFormat;
+    // DecimalFormat isn't thread-safe, so each thread gets its own
+    private static ThreadLocal<DecimalFormat> decFormat = new ThreadLocal<DecimalFormat>() {
+		@Override
+		protected DecimalFormat initialValue() {
+			DecimalFormat format = (DecimalFormat) DecimalFormat.getNumberInstance(Locale.US);
+			format.applyPattern("##0.00000000");
+			return format;
+		}
+    };
+    private static ThreadLocal<DecimalFormat> intFormat = new ThreadLocal<DecimalFormat>() {
+		@Override
+		protected DecimalFormat initialValue() {
+			DecimalFormat format = (DecimalFormat) DecimalFormat.getNumberInstance(Locale.US);
+			format.applyPattern("##0");
+			return format;
+		}
+    };
     
 	private static Pattern csvSeparators = Pattern.compile("[,\"]");
 	private enum TokenType {
 		COMMA, QUOTE, OTHER
 	};
     
-    static {
-	    decFormat = (DecimalFormat) DecimalFormat.getNumberInstance(Locale.US);
-	    decFormat.applyPattern("##0.00000000");
-	    intFormat = (DecimalFormat) DecimalFormat.getNumberInstance(Locale.US);
-	    intFormat.applyPattern("##0");
-	    
-    }
     public static String format(double number) {
-		return decFormat.format(number);
+		return decFormat.get().format(number);
 	}
     public static String format(float number) {
-		return decFormat.format(number);
+		return decFormat.get().format(number);
 	}
     public static String format(int number) {
-		return intFormat.format(number);
+		return intFormat.get().format(number);
 	}
     
     public static String format(String string) {
@@ -0,0 +1,76 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the metrics to a CSV file, one row per metric, appending to the file if it already exists.
+ * Times are given in milliseconds.
+ * @author Assaf Urieli
+ *
+ */
+public class CSVMetricsReporter implements MetricsReporter {
+	private File file;
+	
+	public CSVMetricsReporter(File file) {
+		this.file = file;
+	}
+
+	@Override
+	public void report(String title, List<Metrics.Metric> metrics) {
+		try {
+			boolean newFile = !file.exists();
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),"UTF8"));
+			try {
+				if (newFile)
+					writer.append("report,metric,type,count,total,mean,p50,p90,p99,max\n");
+				for (Metrics.Metric metric : metrics) {
+					writer.append(CSVFormatter.format(title) + ",");
+					writer.append(CSVFormatter.format(metric.getName()) + ",");
+					if (metric instanceof Metrics.Histogram) {
+						Metrics.Histogram histogram = (Metrics.Histogram) metric;
+						double scale = metric instanceof Metrics.Timer ? 1000000.0 : 1.0;
+						writer.append(metric instanceof Metrics.Timer ? "timer," : "histogram,");
+						writer.append(histogram.getCount() + ",");
+						writer.append(CSVFormatter.format(histogram.getTotal() / scale) + ",");
+						writer.append(CSVFormatter.format(histogram.getMean() / scale) + ",");
+						writer.append(CSVFormatter.format(histogram.getPercentile(50) / scale) + ",");
+						writer.append(CSVFormatter.format(histogram.getPercentile(90) / scale) + ",");
+						writer.append(CSVFormatter.format(histogram.getPercentile(99) / scale) + ",");
+						writer.append(CSVFormatter.format(histogram.getMax() / scale) + "\n");
+					} else {
+						writer.append("counter," + metric.getCount() + ",,,,,,\n");
+					}
+				}
+			} finally {
+				writer.flush();
+				writer.close();
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
+	}
+}
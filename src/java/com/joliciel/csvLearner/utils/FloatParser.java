@@ -0,0 +1,180 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.utils;
+
+/**
+ * Parses numeric cells without throwing an exception for non-numeric ones,
+ * giving exactly the same values as Float.parseFloat(String) would.<br/>
+ * Plain decimals and scientific notation with up to 7 significant digits and a small exponent
+ * are parsed directly from the characters. Other numbers fall back on Float.parseFloat,
+ * and anything which isn't a number is recognised as such without throwing or creating any Strings.<br/>
+ * A single parser isn't thread-safe, since it holds the last value parsed.
+ * @author Assaf Urieli
+ *
+ */
+public final class FloatParser {
+	// all integers up to 2^24 are exactly representable as floats
+	private static final long MAX_EXACT_MANTISSA = 1L << 24;
+	// all powers of ten up to 10^10 are exactly representable as floats
+	private static final float[] POWERS_OF_TEN = new float[] {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+	
+	private float value;
+	
+	/**
+	 * Parse a String.
+	 * @return true if the String is numeric, in which case the value is given by getValue().
+	 */
+	public boolean parse(String string) {
+		return this.parse(string.toCharArray(), 0, string.length());
+	}
+	
+	/**
+	 * Parse the characters from start (inclusive) to end (exclusive).
+	 * As in Float.parseFloat(String), leading and trailing whitespace is ignored.
+	 * @return true if the characters are numeric, in which case the value is given by getValue().
+	 */
+	public boolean parse(char[] chars, int start, int end) {
+		while (start < end && chars[start] <= ' ')
+			start++;
+		while (end > start && chars[end-1] <= ' ')
+			end--;
+		if (start==end)
+			return false;
+		
+		int i = start;
+		boolean negative = false;
+		if (chars[i]=='-' || chars[i]=='+') {
+			negative = chars[i]=='-';
+			i++;
+		}
+		int afterSign = i;
+		
+		long mantissa = 0;
+		int exponent = 0;
+		boolean exact = true;
+		int digitCount = 0;
+		for (; i<end && chars[i]>='0' && chars[i]<='9'; i++) {
+			if (mantissa < MAX_EXACT_MANTISSA)
+				mantissa = mantissa * 10 + (chars[i] - '0');
+			else
+				exact = false;
+			digitCount++;
+		}
+		if (i<end && chars[i]=='.') {
+			i++;
+			for (; i<end && chars[i]>='0' && chars[i]<='9'; i++) {
+				if (mantissa < MAX_EXACT_MANTISSA) {
+					mantissa = mantissa * 10 + (chars[i] - '0');
+					exponent--;
+				} else {
+					exact = false;
+				}
+				digitCount++;
+			}
+		}
+		if (digitCount==0)
+			return this.parseNamed(chars, afterSign, end, negative);
+		
+		if (i<end && (chars[i]=='e' || chars[i]=='E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i<end && (chars[i]=='-' || chars[i]=='+')) {
+				negativeExponent = chars[i]=='-';
+				i++;
+			}
+			int exponentDigitCount = 0;
+			int explicitExponent = 0;
+			for (; i<end && chars[i]>='0' && chars[i]<='9'; i++) {
+				if (explicitExponent < 1000)
+					explicitExponent = explicitExponent * 10 + (chars[i] - '0');
+				else
+					exact = false;
+				exponentDigitCount++;
+			}
+			if (exponentDigitCount==0)
+				return false;
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		
+		if (i<end) {
+			if (i==end-1 && (chars[i]=='f' || chars[i]=='F' || chars[i]=='d' || chars[i]=='D')) {
+				// a trailing type suffix doesn't change the value
+			} else if (chars[i]=='x' || chars[i]=='X') {
+				return this.parseHexadecimal(chars, start, end);
+			} else {
+				return false;
+			}
+		}
+		
+		if (exact && mantissa <= MAX_EXACT_MANTISSA && exponent >= -10 && exponent <= 10) {
+			// a single correctly rounded operation on exact operands gives the correctly rounded result
+			float result = mantissa;
+			if (exponent < 0)
+				result = result / POWERS_OF_TEN[-exponent];
+			else if (exponent > 0)
+				result = result * POWERS_OF_TEN[exponent];
+			value = negative ? -result : result;
+		} else {
+			value = Float.parseFloat(new String(chars, start, end - start));
+		}
+		return true;
+	}
+	
+	/**
+	 * The value parsed by the last successful call to parse.
+	 */
+	public float getValue() {
+		return value;
+	}
+	
+	/**
+	 * NaN and Infinity, as written by Float.toString(float).
+	 */
+	private boolean parseNamed(char[] chars, int start, int end, boolean negative) {
+		if (this.matches(chars, start, end, "Infinity")) {
+			value = negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+			return true;
+		}
+		if (this.matches(chars, start, end, "NaN")) {
+			value = Float.NaN;
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean matches(char[] chars, int start, int end, String string) {
+		if (end - start != string.length())
+			return false;
+		for (int i=0; i<string.length(); i++)
+			if (chars[start+i]!=string.charAt(i))
+				return false;
+		return true;
+	}
+	
+	private boolean parseHexadecimal(char[] chars, int start, int end) {
+		try {
+			value = Float.parseFloat(new String(chars, start, end - start));
+			return true;
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.utils;
+
+import java.text.DecimalFormat;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Writes the metrics to a log at INFO level, one line per metric.
+ * Times are given in milliseconds.
+ * @author Assaf Urieli
+ *
+ */
+public class LogMetricsReporter implements MetricsReporter {
+	private Log log;
+	
+	public LogMetricsReporter(Log log) {
+		this.log = log;
+	}
+
+	@Override
+	public void report(String title, List<Metrics.Metric> metrics) {
+		DecimalFormat df = new DecimalFormat("0.000");
+		log.info(title);
+		for (Metrics.Metric metric : metrics) {
+			if (metric instanceof Metrics.Timer) {
+				Metrics.Timer timer = (Metrics.Timer) metric;
+				log.info(timer.getName() + ": count=" + timer.getCount()
+						+ ", total=" + df.format(timer.getTotal() / 1000000.0) + "ms"
+						+ ", mean=" + df.format(timer.getMean() / 1000000.0) + "ms"
+						+ ", p50<=" + df.format(timer.getPercentile(50) / 1000000.0) + "ms"
+						+ ", p99<=" + df.format(timer.getPercentile(99) / 1000000.0) + "ms"
+						+ ", max=" + df.format(timer.getMax() / 1000000.0) + "ms");
+			} else if (metric instanceof Metrics.Histogram) {
+				Metrics.Histogram histogram = (Metrics.Histogram) metric;
+				log.info(histogram.getName() + ": count=" + histogram.getCount()
+						+ ", total=" + histogram.getTotal()
+						+ ", mean=" + df.format(histogram.getMean())
+						+ ", p50<=" + histogram.getPercentile(50)
+						+ ", p99<=" + histogram.getPercentile(99)
+						+ ", max=" + histogram.getMax());
+			} else {
+				log.info(metric.getName() + ": " + metric.getCount());
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
+
+/**
+ * A CSVCellReader for uncompressed files, which memory-maps the file rather than reading it
+ * through an InputStream and Reader.<br/>
+ * This is not a zero-copy reader: each mapped window is bulk-copied in 64 Kb blocks into a byte array,
+ * whose UTF-8 bytes are decoded by hand (with a fast path for ASCII) into the cell reader's character buffer,
+ * without a CharsetDecoder or any line strings. Cell and row boundaries are then found by CSVCellReader
+ * on the decoded characters, so that the quoting rules are exactly the same as for streamed files.<br/>
+ * Large files are mapped in successive windows of 256 Mb, so that files beyond 2 Gb can be read.
+ * Java offers no way of unmapping a window explicitly: each window is released by the garbage collector
+ * once it is no longer referenced, i.e. after the next window has been mapped or the reader has been closed.
+ * @author Assaf Urieli
+ *
+ */
+public class MappedCSVCellReader extends CSVCellReader {
+	private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+	
+	private FileInputStream inputStream;
+	private FileChannel channel;
+	private long fileSize;
+	private long windowEnd = 0;
+	private MappedByteBuffer window = null;
+	private int pushedBackByte = -1;
+	private byte[] bytes = new byte[64 * 1024];
+	private int bytePos = 0;
+	private int byteLimit = 0;
+	private Checksum checksum = null;
+	
+	public MappedCSVCellReader(File file) throws IOException {
+		super();
+		this.inputStream = new FileInputStream(file);
+		this.channel = inputStream.getChannel();
+		this.fileSize = channel.size();
+	}
+
+	@Override
+	protected int read(char[] buffer, int offset, int length) throws IOException {
+		int pos = offset;
+		// leave room for a surrogate pair
+		int limit = offset + length - 1;
+		while (pos < limit) {
+			if (bytePos==byteLimit && pushedBackByte<0 && !this.fillBytes())
+				break;
+			// fast path for ASCII characters, once any byte pushed back by a malformed sequence has been read
+			if (pushedBackByte<0) {
+				int end = Math.min(byteLimit, bytePos + (limit - pos));
+				while (bytePos < end && bytes[bytePos] >= 0)
+					buffer[pos++] = (char) bytes[bytePos++];
+				if (pos==limit || (bytePos<byteLimit && bytes[bytePos] >= 0))
+					continue;
+			}
+			
+			int b = this.nextByte();
+			if (b<0)
+				break;
+			if (b < 0x80) {
+				buffer[pos++] = (char) b;
+			} else if (b >= 0xC2 && b <= 0xDF) {
+				int b2 = this.nextContinuationByte();
+				buffer[pos++] = b2<0 ? REPLACEMENT_CHAR : (char) (((b & 0x1F) << 6) | b2);
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				int b2 = this.nextContinuationByte();
+				int b3 = b2<0 ? -1 : this.nextContinuationByte();
+				int codePoint = ((b & 0x0F) << 12) | (b2 << 6) | b3;
+				if (b3<0 || codePoint < 0x800 || (codePoint >= 0xD800 && codePoint <= 0xDFFF))
+					buffer[pos++] = REPLACEMENT_CHAR;
+				else
+					buffer[pos++] = (char) codePoint;
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				int b2 = this.nextContinuationByte();
+				int b3 = b2<0 ? -1 : this.nextContinuationByte();
+				int b4 = b3<0 ? -1 : this.nextContinuationByte();
+				int codePoint = ((b & 0x07) << 18) | (b2 << 12) | (b3 << 6) | b4;
+				if (b4<0 || codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT) {
+					buffer[pos++] = REPLACEMENT_CHAR;
+				} else {
+					pos += Character.toChars(codePoint, buffer, pos);
+				}
+			} else {
+				buffer[pos++] = REPLACEMENT_CHAR;
+			}
+		}
+		if (pos==offset)
+			return -1;
+		return pos - offset;
+	}
+	
+	/**
+	 * The next byte in the file as an unsigned value, or -1 at the end of the file.
+	 */
+	private int nextByte() throws IOException {
+		if (pushedBackByte>=0) {
+			int b = pushedBackByte;
+			pushedBackByte = -1;
+			return b;
+		}
+		if (bytePos==byteLimit && !this.fillBytes())
+			return -1;
+		return bytes[bytePos++] & 0xFF;
+	}
+	
+	/**
+	 * Transfer the next block of bytes from the mapped window, mapping the next window if required.
+	 * @return false if the end of the file has been reached.
+	 */
+	private boolean fillBytes() throws IOException {
+		if (window==null || !window.hasRemaining()) {
+			if (windowEnd>=fileSize)
+				return false;
+			long windowStart = windowEnd;
+			windowEnd = Math.min(fileSize, windowStart + WINDOW_SIZE);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+		}
+		byteLimit = Math.min(bytes.length, window.remaining());
+		window.get(bytes, 0, byteLimit);
+		if (checksum!=null)
+			checksum.update(bytes, 0, byteLimit);
+		bytePos = 0;
+		return true;
+	}
+	
+	/**
+	 * The payload of the next UTF-8 continuation byte, or -1 if the next byte isn't a continuation byte,
+	 * in which case it is kept to be read again.
+	 */
+	private int nextContinuationByte() throws IOException {
+		int b = this.nextByte();
+		if (b<0)
+			return -1;
+		if ((b & 0xC0) != 0x80) {
+			pushedBackByte = b;
+			return -1;
+		}
+		return b & 0x3F;
+	}
+
+	/**
+	 * A checksum to update with the file's bytes as they are read, which covers the whole file once all rows have been read.
+	 */
+	public Checksum getChecksum() {
+		return checksum;
+	}
+
+	public void setChecksum(Checksum checksum) {
+		this.checksum = checksum;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+		inputStream.close();
+	}
+}
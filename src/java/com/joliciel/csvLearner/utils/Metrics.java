@@ -0,0 +1,307 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A global registry of performance metrics: counters, histograms, and timers with nanosecond resolution.<br/>
+ * Metrics are typically obtained once, as static fields of the class being measured, and are safe to update concurrently.
+ * Metrics are disabled by default, in which case updating a metric only reads a single flag,
+ * and timers don't read the clock.<br/>
+ * The values collected are passed to a MetricsReporter via report(), typically once at the end of each command.
+ * @author Assaf Urieli
+ *
+ */
+public final class Metrics {
+	private static volatile boolean enabled = false;
+	private static final Map<String,Metric> METRICS = new TreeMap<String, Metric>();
+	
+	private Metrics() {
+	}
+	
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enable or disable metrics collection. Default: false.
+	 * @param enabled
+	 */
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+	
+	/**
+	 * Get the counter with a given name, creating it if required.
+	 * @param name
+	 * @return
+	 */
+	public static Counter getCounter(String name) {
+		return getMetric(name, Counter.class);
+	}
+	
+	/**
+	 * Get the histogram with a given name, creating it if required.
+	 * @param name
+	 * @return
+	 */
+	public static Histogram getHistogram(String name) {
+		return getMetric(name, Histogram.class);
+	}
+	
+	/**
+	 * Get the timer with a given name, creating it if required.
+	 * @param name
+	 * @return
+	 */
+	public static Timer getTimer(String name) {
+		return getMetric(name, Timer.class);
+	}
+	
+	private static <T extends Metric> T getMetric(String name, Class<T> metricClass) {
+		synchronized (METRICS) {
+			Metric metric = METRICS.get(name);
+			if (metric==null) {
+				if (metricClass.equals(Counter.class))
+					metric = new Counter(name);
+				else if (metricClass.equals(Timer.class))
+					metric = new Timer(name);
+				else
+					metric = new Histogram(name);
+				METRICS.put(name, metric);
+			} else if (!metricClass.equals(metric.getClass())) {
+				throw new RuntimeException("Metric " + name + " is a " + metric.getClass().getSimpleName() + ", not a " + metricClass.getSimpleName());
+			}
+			return metricClass.cast(metric);
+		}
+	}
+	
+	/**
+	 * Pass all metrics which have been updated to a reporter, in order of name.
+	 * @param title a title for this report, e.g. the command being measured
+	 * @param reporter
+	 */
+	public static void report(String title, MetricsReporter reporter) {
+		List<Metric> metrics = new ArrayList<Metric>();
+		synchronized (METRICS) {
+			for (Metric metric : METRICS.values())
+				if (metric.getCount()>0)
+					metrics.add(metric);
+		}
+		reporter.report(title, metrics);
+	}
+	
+	/**
+	 * Reset all metrics to zero.
+	 */
+	public static void reset() {
+		synchronized (METRICS) {
+			for (Metric metric : METRICS.values())
+				metric.reset();
+		}
+	}
+	
+	/**
+	 * A named metric.
+	 */
+	public static abstract class Metric {
+		private String name;
+		
+		Metric(String name) {
+			this.name = name;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * The number of updates (for a counter, its value).
+		 * @return
+		 */
+		public abstract long getCount();
+		
+		abstract void reset();
+	}
+	
+	/**
+	 * A metric which counts occurrences.
+	 */
+	public static final class Counter extends Metric {
+		private final AtomicLong count = new AtomicLong();
+		
+		Counter(String name) {
+			super(name);
+		}
+		
+		public void increment() {
+			if (enabled)
+				count.incrementAndGet();
+		}
+		
+		public void add(long value) {
+			if (enabled)
+				count.addAndGet(value);
+		}
+
+		@Override
+		public long getCount() {
+			return count.get();
+		}
+
+		@Override
+		void reset() {
+			count.set(0);
+		}
+	}
+	
+	/**
+	 * A metric recording the distribution of non-negative values, in buckets of increasing powers of 2,
+	 * from which percentiles can be approximated.
+	 */
+	public static class Histogram extends Metric {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+		private final AtomicLongArray buckets = new AtomicLongArray(65);
+		
+		Histogram(String name) {
+			super(name);
+		}
+		
+		public void record(long value) {
+			if (enabled)
+				this.recordValue(value, 1);
+		}
+		
+		/**
+		 * Record the same value a given number of times, e.g. when restoring counts saved previously.
+		 * @param value
+		 * @param times
+		 */
+		public void record(long value, long times) {
+			if (enabled && times>0)
+				this.recordValue(value, times);
+		}
+		
+		final void recordValue(long value, long times) {
+			if (value<0)
+				value = 0;
+			count.addAndGet(times);
+			total.addAndGet(value * times);
+			buckets.addAndGet(64 - Long.numberOfLeadingZeros(value), times);
+			long currentMax = max.get();
+			while (value>currentMax && !max.compareAndSet(currentMax, value))
+				currentMax = max.get();
+		}
+
+		@Override
+		public long getCount() {
+			return count.get();
+		}
+		
+		public long getTotal() {
+			return total.get();
+		}
+		
+		public long getMax() {
+			return max.get();
+		}
+		
+		public double getMean() {
+			long count = this.getCount();
+			return count==0 ? 0 : (double) this.getTotal() / (double) count;
+		}
+		
+		/**
+		 * An upper bound for a given percentile of the values recorded, at most twice the actual value.
+		 * @param percentile in the range (0,100]
+		 * @return
+		 */
+		public long getPercentile(double percentile) {
+			long count = this.getCount();
+			if (count==0)
+				return 0;
+			long rank = (long) Math.ceil(count * percentile / 100.0);
+			long cumulative = 0;
+			for (int i=0; i<buckets.length(); i++) {
+				cumulative += buckets.get(i);
+				if (cumulative>=rank) {
+					long upperBound = i==0 ? 0 : (i==64 ? Long.MAX_VALUE : (1L << i) - 1);
+					return Math.min(upperBound, this.getMax());
+				}
+			}
+			return this.getMax();
+		}
+
+		@Override
+		void reset() {
+			count.set(0);
+			total.set(0);
+			max.set(0);
+			for (int i=0; i<buckets.length(); i++)
+				buckets.set(i, 0);
+		}
+	}
+	
+	/**
+	 * A histogram of elapsed times in nanoseconds. Typical usage:
+	 * <pre>
+	 * long startTime = timer.start();
+	 * ...
+	 * timer.stop(startTime);
+	 * </pre>
+	 */
+	public static final class Timer extends Histogram {
+		/**
+		 * The value returned by start() when metrics are disabled.
+		 * System.nanoTime() can return any value, including 0, but not in practice the minimum long,
+		 * which is hundreds of years away from any origin it uses.
+		 */
+		public static final long NOT_STARTED = Long.MIN_VALUE;
+		
+		Timer(String name) {
+			super(name);
+		}
+		
+		/**
+		 * The current time in nanoseconds, or NOT_STARTED if metrics are disabled.
+		 * @return
+		 */
+		public long start() {
+			return enabled ? System.nanoTime() : NOT_STARTED;
+		}
+		
+		/**
+		 * Record the time elapsed since a time returned by start(),
+		 * unless the timer wasn't started because metrics were disabled at the time.
+		 * @param startTime
+		 */
+		public void stop(long startTime) {
+			if (enabled && startTime!=NOT_STARTED)
+				this.recordValue(System.nanoTime() - startTime, 1);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+///////////////////////////////////////////////////////////////////////////////
+//Copyright (C) 2011 Assaf Urieli
+//
+//This file is part of csvLearner.
+//
+//csvLearner is free software: you can redistribute it and/or modify
+//it under the terms of the GNU Affero General Public License as published by
+//the Free Software Foundation, either version 3 of the License, or
+//(at your option) any later version.
+//
+//csvLearner is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU Affero General Public License for more details.
+//
+//You should have received a copy of the GNU Affero General Public License
+//along with csvLearner.  If not, see <http://www.gnu.org/licenses/>.
+//////////////////////////////////////////////////////////////////////////////
+package com.joliciel.csvLearner.utils;
+
+import java.util.List;
+
+/**
+ * Receives the metrics collected, e.g. at the end of a command, and reports them in some way.
+ * @author Assaf Urieli
+ *
+ */
+public interface MetricsReporter {
+	/**
+	 * Report a list of metrics, in order of name.
+	 * @param title a title for this report
+	 * @param metrics
+	 */
+	public void report(String title, List<Metrics.Metric> metrics);
+}
@@ -0,0 +1,221 @@
+package com.joliciel.csvLearner;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.CSVEventListReader.TrainingSetType;
+import com.joliciel.csvLearner.utils.Metrics;
+
+public class CSVEventListReaderTest {
+
+	@Test
+	public void testEventCacheRoundTrip() throws Exception {
+		File dir = this.createTempDir();
+		try {
+			File featureDir = new File(dir, "features");
+			featureDir.mkdirs();
+			StringBuilder results = new StringBuilder("ID,outcome\n");
+			StringBuilder csv = new StringBuilder("ID,f 1,f2,f3\n");
+			StringBuilder zipped = new StringBuilder("ID,z1,z2\n");
+			for (int i = 0; i < 30; i++) {
+				results.append("e" + i + "," + (i % 3 == 0 ? "A" : "B") + "\n");
+				csv.append("e" + i + "," + (i * 0.5) + "," + (i % 4 == 0 ? "" : "x" + (i % 3)) + "," + (i % 5) + "\n");
+				if (i % 2 == 0)
+					zipped.append("e" + i + "," + (30 - i) + ",y\n");
+			}
+			File resultFile = new File(dir, "results.csv");
+			this.write(resultFile, results.toString());
+			File csvFile = new File(featureDir, "f.csv");
+			this.write(csvFile, csv.toString());
+			File zipFile = new File(featureDir, "z.zip");
+			ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile));
+			zos.putNextEntry(new ZipEntry("z.csv"));
+			zos.write(zipped.toString().getBytes("UTF-8"));
+			zos.closeEntry();
+			zos.close();
+			
+			File cacheDir = new File(dir, "cache");
+			File incrementalCacheDir = new File(dir, "incrementalCache");
+			List<String> parsed = this.readEvents(resultFile, featureDir, null, false);
+			int eventCount = 0;
+			for (String line : parsed)
+				if (line.matches("e\\d+\\|.*"))
+					eventCount++;
+			assertEquals(30, eventCount);
+			
+			// written to the caches, and then loaded from them
+			assertEquals(parsed, this.readEvents(resultFile, featureDir, cacheDir, false));
+			assertEquals(parsed, this.readEvents(resultFile, featureDir, cacheDir, false));
+			assertEquals(parsed, this.readEvents(resultFile, featureDir, incrementalCacheDir, true));
+			assertEquals(parsed, this.readEvents(resultFile, featureDir, incrementalCacheDir, true));
+			
+			// a changed file is parsed again, and merged with the artefact of the unchanged one
+			this.write(csvFile, csv.toString().replace("e3,1.5,", "e3,12.5,"));
+			List<String> changed = this.readEvents(resultFile, featureDir, null, false);
+			assertFalse(parsed.equals(changed));
+			assertEquals(changed, this.readEvents(resultFile, featureDir, incrementalCacheDir, true));
+			
+			// touching the files doesn't invalidate the caches, since the hashes calculated while parsing are unchanged
+			for (File file : new File[] { resultFile, csvFile, zipFile })
+				file.setLastModified(file.lastModified() - 60000);
+			Metrics.setEnabled(true);
+			try {
+				assertEquals(changed, this.readEvents(resultFile, featureDir, incrementalCacheDir, true));
+				assertEquals(1, Metrics.getTimer("reader.cacheRead").getCount());
+				assertEquals(0, Metrics.getTimer("reader.featureFile").getCount());
+				// the rows are still counted when loaded from the cache
+				assertEquals(45, Metrics.getCounter("reader.rows").getCount());
+				assertEquals(45, Metrics.getHistogram("reader.featuresPerRow").getCount());
+				
+				// or replayed from the artefacts
+				Metrics.reset();
+				for (File file : incrementalCacheDir.listFiles())
+					if (file.getName().startsWith("events_"))
+						file.delete();
+				assertEquals(changed, this.readEvents(resultFile, featureDir, incrementalCacheDir, true));
+				assertEquals(0, Metrics.getTimer("reader.featureFile").getCount());
+				assertEquals(45, Metrics.getCounter("reader.rows").getCount());
+			} finally {
+				Metrics.setEnabled(false);
+				Metrics.reset();
+			}
+		} finally {
+			this.delete(dir);
+		}
+	}
+	
+	@Test
+	public void testThreadCount() throws Exception {
+		File dir = this.createTempDir();
+		try {
+			File featureDir = new File(dir, "features");
+			File subDir = new File(featureDir, "sub");
+			subDir.mkdirs();
+			StringBuilder results = new StringBuilder("ID,outcome\n");
+			StringBuilder f1 = new StringBuilder("ID,a1,a2\n");
+			StringBuilder f2 = new StringBuilder("ID,b1,b2,b3\n");
+			StringBuilder f3 = new StringBuilder("ID,c1\n");
+			StringBuilder zipped = new StringBuilder("ID,z1\n");
+			for (int i = 0; i < 40; i++) {
+				results.append("e" + i + "," + (i % 3 == 0 ? "A" : "B") + "\n");
+				f1.append("e" + i + "," + (i * 0.25) + "," + (i % 7) + "\n");
+				// rows in a different order from the result file, some of them missing
+				int j = 39 - i;
+				if (j % 5 != 0)
+					f2.append("e" + j + "," + (j % 4 == 0 ? "" : "x" + (j % 3)) + "," + (1.0 / (j + 1)) + ",0\n");
+				if (i % 2 == 0)
+					f3.append("e" + i + "," + (i + 100) + "\n");
+				if (i % 3 != 0)
+					zipped.append("e" + i + ",y" + (i % 2) + "\n");
+			}
+			File resultFile = new File(dir, "results.csv");
+			this.write(resultFile, results.toString());
+			this.write(new File(featureDir, "f1.csv"), f1.toString());
+			this.write(new File(featureDir, "f2.csv"), f2.toString());
+			this.write(new File(subDir, "f3.csv"), f3.toString());
+			ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(new File(subDir, "z.zip")));
+			zos.putNextEntry(new ZipEntry("z.csv"));
+			zos.write(zipped.toString().getBytes("UTF-8"));
+			zos.closeEntry();
+			zos.close();
+			
+			CSVEventListReader sequentialReader = this.newReader(resultFile, featureDir, null, false);
+			sequentialReader.read();
+			List<String> sequential = this.describe(sequentialReader);
+			assertEquals(4, sequentialReader.getFileToFeatureMap().size());
+			for (int threadCount : new int[] {2, 4}) {
+				CSVEventListReader parallelReader = this.newReader(resultFile, featureDir, null, false);
+				parallelReader.setThreadCount(threadCount);
+				parallelReader.read();
+				assertEquals(sequential, this.describe(parallelReader));
+			}
+		} finally {
+			this.delete(dir);
+		}
+	}
+	
+	private List<String> readEvents(File resultFile, File featureDir, File cacheDir, boolean incrementalRead) {
+		CSVEventListReader reader = this.newReader(resultFile, featureDir, cacheDir, incrementalRead);
+		reader.read();
+		return this.describe(reader);
+	}
+	
+	/**
+	 * Describes the events read, followed by the feature maps and statistics.
+	 */
+	private List<String> describe(CSVEventListReader reader) {
+		List<String> description = new ArrayList<String>();
+		for (GenericEvent event : reader.getEvents())
+			description.add(this.describe(event));
+		for (Entry<String,GenericEvents> fileEvents : reader.getEventsPerFile().entrySet()) {
+			StringBuilder fileDescription = new StringBuilder(fileEvents.getKey() + ":");
+			for (GenericEvent event : fileEvents.getValue())
+				fileDescription.append(" " + this.describe(event));
+			description.add(fileDescription.toString());
+		}
+		description.add("files: " + reader.getFileToFeatureMap());
+		description.add("features: " + reader.getFeatureToFileMap());
+		Set<String> features = new TreeSet<String>();
+		for (GenericEvent event : reader.getEvents())
+			features.addAll(event.getFeatures());
+		for (String feature : features)
+			description.add(feature + ": max " + reader.getMax(feature) + ", mean " + reader.getMean(feature));
+		return description;
+	}
+	
+	private CSVEventListReader newReader(File resultFile, File featureDir, File cacheDir, boolean incrementalRead) {
+		CSVEventListReader reader = new CSVEventListReader();
+		reader.setResultFilePath(resultFile.getPath());
+		reader.setFeatureDirPath(featureDir.getPath());
+		reader.setTestSegment(3);
+		reader.setTrainingSetType(TrainingSetType.TEST_SEGMENT);
+		reader.setSplitEventsByFile(true);
+		if (cacheDir!=null)
+			reader.setEventCacheDirPath(cacheDir.getPath());
+		reader.setIncrementalRead(incrementalRead);
+		return reader;
+	}
+	
+	private String describe(GenericEvent event) {
+		return event.getIdentifier() + "|" + event.getOutcome() + "|" + event.isTest()
+			+ "|" + event.getFeatures() + "|" + event.getWeights();
+	}
+	
+	private void write(File file, String contents) throws IOException {
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(contents.getBytes("UTF-8"));
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	private File createTempDir() throws IOException {
+		File dir = File.createTempFile("reader", "");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+	
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files!=null) {
+			for (File child : files)
+				this.delete(child);
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,89 @@
+package com.joliciel.csvLearner;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+import org.junit.Test;
+
+public class CSVLearnerTest {
+
+	@Test
+	public void testCrossValidationThreads() throws Exception {
+		File dir = File.createTempFile("learner", "");
+		dir.delete();
+		dir.mkdirs();
+		try {
+			List<GenericEvent> eventList = new ArrayList<GenericEvent>();
+			Set<String> outcomes = new TreeSet<String>();
+			String[] outcomeNames = new String[] { "A", "B", "C" };
+			for (int i = 0; i < 60; i++) {
+				GenericEvent event = new GenericEvent("e" + i);
+				String outcome = outcomeNames[i % 3];
+				event.setOutcome(outcome);
+				outcomes.add(outcome);
+				event.addFeature("f1", (i % 3) + 1 + (i % 7) * 0.2f);
+				if (i % 4 != 0)
+					event.addFeature("f2", 4 - (i % 3) + (i % 5) * 0.3f);
+				// a nominal feature which is usually, but not always, the outcome
+				event.addFeature("n" + CSVLearner.NOMINAL_MARKER + (i % 5 == 0 ? "x" : outcome));
+				eventList.add(event);
+			}
+			GenericEvents events = new GenericEvents(eventList);
+
+			String[] sequential = this.crossValidate(dir, events, outcomes, 1);
+			for (int threadCount : new int[] {2, 4}) {
+				String[] parallel = this.crossValidate(dir, events, outcomes, threadCount);
+				assertArrayEquals(sequential, parallel);
+			}
+			assertTrue(sequential[0].contains("Run 9,"));
+		} finally {
+			for (File file : dir.listFiles())
+				file.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Returns the fscores and outcomes written, followed by each statistic's values.
+	 */
+	private String[] crossValidate(File dir, GenericEvents events, Set<String> outcomes, int threadCount) throws IOException {
+		CSVLearner learner = new CSVLearner(new String[] {
+				"command=evaluate", "featureDir=" + dir.getPath(), "outDir=" + dir.getPath(),
+				"testSegment=cross", "iterations=20", "cutoff=0", "crossValidationThreads=" + threadCount });
+		StringWriter fscoreWriter = new StringWriter();
+		StringWriter outcomeWriter = new StringWriter();
+		DescriptiveStatistics accuracyStats = new DescriptiveStatistics();
+		Map<String,DescriptiveStatistics[]> outcomeFscoreStats = new TreeMap<String, DescriptiveStatistics[]>();
+		learner.crossValidate(events, outcomes, fscoreWriter, outcomeWriter, accuracyStats, outcomeFscoreStats);
+
+		List<String> results = new ArrayList<String>();
+		results.add(fscoreWriter.toString());
+		results.add(outcomeWriter.toString());
+		results.add("accuracy: " + this.describe(accuracyStats));
+		assertEquals(10, accuracyStats.getN());
+		for (String outcome : outcomeFscoreStats.keySet()) {
+			DescriptiveStatistics[] stats = outcomeFscoreStats.get(outcome);
+			for (int i = 0; i < stats.length; i++)
+				results.add(outcome + " " + i + ": " + this.describe(stats[i]));
+		}
+		return results.toArray(new String[results.size()]);
+	}
+
+	private String describe(DescriptiveStatistics stats) {
+		StringBuilder description = new StringBuilder();
+		for (double value : stats.getValues())
+			description.append(value + " ");
+		description.append("mean " + stats.getMean() + " dev " + stats.getStandardDeviation());
+		return description.toString();
+	}
+}
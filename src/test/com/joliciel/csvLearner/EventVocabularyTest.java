@@ -0,0 +1,111 @@
+package com.joliciel.csvLearner;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class EventVocabularyTest {
+
+	private GenericEvent newEvent(String identifier, String outcome, String... features) {
+		GenericEvent event = new GenericEvent(identifier);
+		event.setOutcome(outcome);
+		for (String feature : features)
+			event.addFeature(feature);
+		return event;
+	}
+	
+	@Test
+	public void testIncrementalAdd() {
+		GenericEvents events = new GenericEvents();
+		List<GenericEvent> firstEvents = new ArrayList<GenericEvent>();
+		firstEvents.add(this.newEvent("e1", "A", "vocab_m", "vocab_c"));
+		firstEvents.add(this.newEvent("e2", "B", "vocab_c", "vocab_x"));
+		events.addAll(firstEvents);
+		
+		EventVocabulary vocabulary = events.getVocabulary();
+		assertArrayEquals(new String[] { "vocab_c", "vocab_m", "vocab_x" }, vocabulary.getFeatureNames());
+		assertArrayEquals(new int[] { 2, 1, 1 }, vocabulary.getDocumentFrequencies());
+		
+		List<GenericEvent> moreEvents = new ArrayList<GenericEvent>();
+		moreEvents.add(this.newEvent("e3", "A", "vocab_a", "vocab_n", "vocab_x"));
+		moreEvents.add(this.newEvent("e4", "", "vocab_z"));
+		events.addAll(moreEvents);
+		
+		assertSame(vocabulary, events.getVocabulary());
+		String[] names = vocabulary.getFeatureNames();
+		assertArrayEquals(new String[] { "vocab_a", "vocab_c", "vocab_m", "vocab_n", "vocab_x", "vocab_z" }, names);
+		assertArrayEquals(new int[] { 1, 2, 1, 1, 2, 1 }, vocabulary.getDocumentFrequencies());
+		int[] featureIds = vocabulary.getFeatureIds();
+		for (int i=0; i<names.length; i++)
+			assertEquals(names[i], FeatureDictionary.getInstance().getName(featureIds[i]));
+		
+		assertArrayEquals(new String[] { "", "A", "B" }, vocabulary.getOutcomes());
+		assertArrayEquals(new int[] { 1, 2, 1 }, vocabulary.getOutcomeCounts());
+		assertEquals(4, vocabulary.getEventCount());
+		
+		// the same as recalculating from scratch
+		TreeSet<String> features = new TreeSet<String>();
+		for (GenericEvent event : events)
+			features.addAll(event.getFeatures());
+		assertEquals(new ArrayList<String>(features), new ArrayList<String>(events.getFeatures()));
+	}
+	
+	@Test
+	public void testRemove() {
+		GenericEvent event1 = this.newEvent("e1", "A", "vocab_r1", "vocab_r2");
+		GenericEvent event2 = this.newEvent("e2", "B", "vocab_r2");
+		EventVocabulary vocabulary = new EventVocabulary();
+		vocabulary.add(event1);
+		vocabulary.add(event2);
+		assertEquals(2, vocabulary.getFeatureCount());
+		
+		vocabulary.remove(event1);
+		assertArrayEquals(new String[] { "vocab_r2" }, vocabulary.getFeatureNames());
+		assertArrayEquals(new String[] { "B" }, vocabulary.getOutcomes());
+		assertEquals(0, vocabulary.getDocumentFrequency(FeatureDictionary.getInstance().getId("vocab_r1")));
+		
+		vocabulary.add(event1);
+		assertArrayEquals(new String[] { "vocab_r1", "vocab_r2" }, vocabulary.getFeatureNames());
+		assertArrayEquals(new int[] { 1, 2 }, vocabulary.getDocumentFrequencies());
+	}
+	
+	@Test
+	public void testFeatureSetView() {
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>();
+		eventList.add(this.newEvent("e1", "A", "vocab_v2", "vocab_v1"));
+		GenericEvents events = new GenericEvents(eventList);
+		Set<String> features = events.getFeatures();
+		Set<String> outcomes = events.getOutcomes();
+		assertSame(features, events.getFeatures());
+		assertSame(outcomes, events.getOutcomes());
+		assertTrue(features.contains("vocab_v1"));
+		assertFalse(features.contains("vocab_v3"));
+		
+		// the view is replaced when the vocabulary changes
+		List<GenericEvent> moreEvents = new ArrayList<GenericEvent>();
+		moreEvents.add(this.newEvent("e2", "B", "vocab_v3"));
+		events.addAll(moreEvents);
+		assertNotSame(features, events.getFeatures());
+		assertEquals(new ArrayList<String>(events.getFeatures()), Arrays.asList("vocab_v1", "vocab_v2", "vocab_v3"));
+		assertEquals(new ArrayList<String>(events.getOutcomes()), Arrays.asList("A", "B"));
+		
+		GenericEvent event = moreEvents.get(0);
+		event.removeFeature(0);
+		event.addFeature("vocab_v4");
+		events.resetVocabulary();
+		assertTrue(events.getFeatures().contains("vocab_v4"));
+		assertFalse(events.getFeatures().contains("vocab_v3"));
+		try {
+			events.getFeatures().add("vocab_v5");
+			fail("The feature set should be unmodifiable");
+		} catch (UnsupportedOperationException uoe) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.joliciel.csvLearner.features;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.GenericEvent;
+import com.joliciel.csvLearner.GenericEvents;
+import com.joliciel.csvLearner.NameValuePair;
+
+public class BestFeatureFinderTest {
+
+	@Test
+	public void testThreadCount() {
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>();
+		String[] outcomes = new String[] { "A", "B", "C" };
+		for (int i = 0; i < 60; i++) {
+			GenericEvent event = new GenericEvent("e" + i);
+			event.setOutcome(outcomes[i % 3]);
+			// enough features to be split into several fork/join tasks
+			for (int j = 0; j < 40; j++) {
+				// features j and j+20 are identical, so that their gains are tied
+				int k = j % 20;
+				if ((i + k) % (k % 4 + 2) != 0)
+					event.addFeature("f" + j, (i % 3) * (k % 5) + ((i * (k + 1)) % 7));
+			}
+			event.setTest(i % 10 == 0);
+			eventList.add(event);
+		}
+		FeatureColumns columns = new FeatureColumns(new GenericEvents(eventList));
+
+		for (String testOutcome : new String[] { null, "A" }) {
+			List<NameValuePair> sequential = this.getBestFeatures(columns, testOutcome, 1);
+			assertEquals(41, sequential.size());
+			assertTrue(sequential.get(1).getValue() > 0);
+			for (int threadCount : new int[] {2, 4}) {
+				List<NameValuePair> parallel = this.getBestFeatures(columns, testOutcome, threadCount);
+				assertEquals(sequential.size(), parallel.size());
+				for (int i = 0; i < sequential.size(); i++) {
+					assertEquals(sequential.get(i).getName(), parallel.get(i).getName());
+					assertEquals(sequential.get(i).getValue(), parallel.get(i).getValue(), 0.0);
+				}
+			}
+		}
+	}
+
+	private List<NameValuePair> getBestFeatures(FeatureColumns columns, String testOutcome, int threadCount) {
+		FayyadIraniSplitter splitter = new FayyadIraniSplitter();
+		BestFeatureFinder finder = new BestFeatureFinder(splitter);
+		finder.setThreadCount(threadCount);
+		return finder.getBestFeatures(columns, testOutcome, 40);
+	}
+}
@@ -0,0 +1,51 @@
+package com.joliciel.csvLearner.features;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.utils.CSVCellReader;
+
+public class FeatureDiscreteLimitApplierTest {
+
+	@Test
+	public void testApplyLimits() throws Exception {
+		Map<String,Set<Double>> splitValues = new TreeMap<String, Set<Double>>();
+		Set<Double> f1Limits = new TreeSet<Double>();
+		f1Limits.add(1.5);
+		f1Limits.add(3.0);
+		splitValues.put("f_1", f1Limits);
+		splitValues.put("f2", new TreeSet<Double>());
+		
+		StringWriter limitWriter = new StringWriter();
+		new FeatureDiscreteLimitWriter(limitWriter).writeFile(splitValues);
+		FeatureDiscreteLimitReader limitReader = new FeatureDiscreteLimitReader(new ByteArrayInputStream(limitWriter.toString().getBytes("UTF-8")));
+		Map<String,double[]> limits = limitReader.read();
+		assertEquals(2, limits.size());
+		assertArrayEquals(new double[] {1.5, 3.0}, limits.get("f_1"), 0.0);
+		assertEquals(0, limits.get("f2").length);
+		
+		String csv = "ID,f 1,f2,f3\n"
+			+ "e1,1.5,7,2\n"
+			+ "e2,3.01,,x\n"
+			+ "e3,0,y\n"
+			+ "e4,1.49,0.5,\n";
+		FeatureDiscreteLimitApplier applier = new FeatureDiscreteLimitApplier(limits);
+		applier.setMissingValueString("?");
+		StringWriter writer = new StringWriter();
+		applier.applyLimits(new CSVCellReader(new StringReader(csv)), writer);
+		assertEquals("ID,f_1,f2,f3,\n"
+			+ "e1,c0,c0,2.00000000,\n"
+			+ "e2,c2,?,x,\n"
+			+ "e3,?,y,?,\n"
+			+ "e4,c0,c0,?,\n", writer.toString());
+	}
+}
@@ -3,14 +3,12 @@ package com.joliciel.csvLearner.features;
 import static org.junit.Assert.*;
 
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Random;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.Test;
 
-import com.joliciel.csvLearner.NameValuePair;
-
 public class FeatureSplitterTest {
 	private static final Log LOG = LogFactory.getLog(FeatureSplitterTest.class);
 
@@ -19,13 +17,14 @@ public class FeatureSplitterTest {
 		InformationGainSplitter splitter = new InformationGainSplitter();
 		splitter.setInformationGainThreshold(0.01);
 		
-		List<NameValuePair> weightedOutcomes = new ArrayList<NameValuePair>();
-		weightedOutcomes.add(new NameValuePair("A", 1));
-		weightedOutcomes.add(new NameValuePair("B", 2));
-		weightedOutcomes.add(new NameValuePair("B", 3));
-		weightedOutcomes.add(new NameValuePair("A", 4));
-		weightedOutcomes.add(new NameValuePair("A", 4));
+		SortedFeatureColumn weightedOutcomes = new SortedFeatureColumn();
+		weightedOutcomes.add("A", 1);
+		weightedOutcomes.add("B", 2);
+		weightedOutcomes.add("B", 3);
+		weightedOutcomes.add("A", 4);
+		weightedOutcomes.add("A", 4);
 		
+		weightedOutcomes.sort();
 		Split subset = new Split(weightedOutcomes, 0, 4);
 		int split = splitter.split(subset);
 		assertEquals(2, split);
@@ -35,14 +34,15 @@ public class FeatureSplitterTest {
 	public void testSplitMultiple() {
 		InformationGainSplitter splitter = new InformationGainSplitter();
 		splitter.setInformationGainThreshold(0.01);
-		List<NameValuePair> weightedOutcomes = new ArrayList<NameValuePair>();
-		weightedOutcomes.add(new NameValuePair("A", 1));
-		weightedOutcomes.add(new NameValuePair("B", 2));
-		weightedOutcomes.add(new NameValuePair("B", 3));
-		weightedOutcomes.add(new NameValuePair("B", 4));
-		weightedOutcomes.add(new NameValuePair("A", 5));
-		weightedOutcomes.add(new NameValuePair("A", 5));
+		SortedFeatureColumn weightedOutcomes = new SortedFeatureColumn();
+		weightedOutcomes.add("A", 1);
+		weightedOutcomes.add("B", 2);
+		weightedOutcomes.add("B", 3);
+		weightedOutcomes.add("B", 4);
+		weightedOutcomes.add("A", 5);
+		weightedOutcomes.add("A", 5);
 		
+		weightedOutcomes.sort();
 		List<Integer> splits = splitter.split(weightedOutcomes);
 		for (int split : splits) {
 			LOG.debug("Split: " + split);
@@ -53,22 +53,134 @@ public class FeatureSplitterTest {
 	@Test
 	public void testSplitMultipleFayyadAndIrani() {
 		FeatureSplitter splitter = new FayyadIraniSplitter();
-		List<NameValuePair> weightedOutcomes = new ArrayList<NameValuePair>();
-		weightedOutcomes.add(new NameValuePair("A", 1));
-		weightedOutcomes.add(new NameValuePair("B", 2));
-		weightedOutcomes.add(new NameValuePair("B", 3));
-		weightedOutcomes.add(new NameValuePair("B", 4));
-		weightedOutcomes.add(new NameValuePair("B", 4));
-		weightedOutcomes.add(new NameValuePair("A", 5));
-		weightedOutcomes.add(new NameValuePair("A", 5));
-		weightedOutcomes.add(new NameValuePair("A", 5));
-		weightedOutcomes.add(new NameValuePair("A", 6));
+		SortedFeatureColumn weightedOutcomes = new SortedFeatureColumn();
+		weightedOutcomes.add("A", 1);
+		weightedOutcomes.add("B", 2);
+		weightedOutcomes.add("B", 3);
+		weightedOutcomes.add("B", 4);
+		weightedOutcomes.add("B", 4);
+		weightedOutcomes.add("A", 5);
+		weightedOutcomes.add("A", 5);
+		weightedOutcomes.add("A", 5);
+		weightedOutcomes.add("A", 6);
 		
+		weightedOutcomes.sort();
 		List<Integer> splits = splitter.split(weightedOutcomes);
 		for (int split : splits) {
 			LOG.debug("Split: " + split);
 		}
 		assertEquals(2, splits.size());
 	}
+	
+	@Test
+	public void testBoundaryPoints() {
+		FayyadIraniSplitter splitter = new FayyadIraniSplitter();
+		SortedFeatureColumn weightedOutcomes = new SortedFeatureColumn();
+		weightedOutcomes.add("A", 1);
+		weightedOutcomes.add("A", 2);
+		weightedOutcomes.add("A", 2);
+		weightedOutcomes.add("B", 3);
+		weightedOutcomes.add("B", 4);
+		weightedOutcomes.add("A", 4);
+		weightedOutcomes.add("A", 5);
+		weightedOutcomes.add("A", 6);
+		
+		weightedOutcomes.sort();
+		Split subset = new Split(weightedOutcomes, 0, weightedOutcomes.size()-1);
+		int[] boundaryPoints = splitter.getBoundaryPoints(subset);
+		assertArrayEquals(new int[] { 2, 3, 5 }, boundaryPoints);
+	}
+
+	@Test
+	public void testSameAsExhaustiveScan() {
+		// ties: several data points for each value
+		this.assertSameAsExhaustiveScan(this.newColumn(new String[] { "A", "A", "B", "A", "B", "B", "A", "B" },
+				new double[] { 1, 1, 1, 2, 2, 3, 4, 4 }));
+		// near-ties: symmetric outcomes, giving the same gain at two splits
+		this.assertSameAsExhaustiveScan(this.newColumn(new String[] { "A", "A", "B", "B", "A", "A" },
+				new double[] { 1, 2, 3, 4, 5, 6 }));
+		this.assertSameAsExhaustiveScan(this.newColumn(new String[] { "A", "B", "A", "B", "A", "B", "A", "B" },
+				new double[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+		// no gain anywhere: the same proportions at every split
+		this.assertSameAsExhaustiveScan(this.newColumn(new String[] { "A", "B", "B", "A", "A", "B", "B", "A" },
+				new double[] { 1, 1, 2, 2, 3, 3, 4, 4 }));
+		
+		Random random = new Random(5);
+		String[] outcomes = new String[] { "A", "B", "C", "D" };
+		for (int n = 0; n < 300; n++) {
+			int size = 2 + random.nextInt(60);
+			int outcomeCount = 2 + random.nextInt(3);
+			int valueCount = 1 + random.nextInt(size);
+			String[] columnOutcomes = new String[size];
+			double[] values = new double[size];
+			for (int i = 0; i < size; i++) {
+				columnOutcomes[i] = outcomes[random.nextInt(outcomeCount)];
+				values[i] = random.nextInt(valueCount);
+			}
+			this.assertSameAsExhaustiveScan(this.newColumn(columnOutcomes, values));
+		}
+	}
+	
+	private SortedFeatureColumn newColumn(String[] outcomes, double[] values) {
+		SortedFeatureColumn column = new SortedFeatureColumn();
+		for (int i = 0; i < outcomes.length; i++)
+			column.add(outcomes[i], values[i]);
+		column.sort();
+		return column;
+	}
+	
+	/**
+	 * Compares the split chosen for every sub-range of the column, using the whole column's boundary points,
+	 * with the best split found by evaluating every split between two values with exact entropies.
+	 * Gains within GAIN_EPSILON of each other are ties, so that either split may be chosen.
+	 */
+	private void assertSameAsExhaustiveScan(SortedFeatureColumn column) {
+		InformationGainSplitter splitter = new InformationGainSplitter();
+		int[] boundaryPoints = splitter.getBoundaryPoints(new Split(column, 0, column.size()-1));
+		for (int minNodeSize : new int[] { 1, 2, 3 }) {
+			splitter.setMinNodeSize(minNodeSize);
+			for (int start = 0; start < column.size(); start++) {
+				for (int end = start + 1; end < column.size(); end++) {
+					Split subset = new Split(column, start, end);
+					int bestIndex = -1;
+					double bestGain = 0;
+					for (int i = start; i < end; i++) {
+						double gain = this.getExactGain(subset, i, minNodeSize);
+						if (gain > bestGain) {
+							bestGain = gain;
+							bestIndex = i;
+						}
+					}
+					
+					int index = splitter.split(new Split(column, start, end), boundaryPoints, null);
+					String description = "[" + start + "," + end + "], minNodeSize " + minNodeSize
+						+ ", expected " + bestIndex + " (" + bestGain + "), got " + index;
+					if (bestGain > AbstractFeatureSplitter.GAIN_EPSILON) {
+						assertTrue(description, index>=0);
+						assertEquals(description, bestGain, this.getExactGain(subset, index, minNodeSize), AbstractFeatureSplitter.GAIN_EPSILON);
+					} else {
+						assertEquals(description, -1, index);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The information gain of splitting after a given index, from the exact entropy of each side,
+	 * or -1 if the split isn't allowed.
+	 */
+	private double getExactGain(Split subset, int index, int minNodeSize) {
+		double[] values = subset.getColumn().getValues();
+		if (values[index]==values[index+1])
+			return -1;
+		Split left = new Split(subset.getColumn(), subset.getStartIndex(), index);
+		Split right = new Split(subset.getColumn(), index+1, subset.getEndIndex());
+		// the same node size conditions as the original scan, which counts the right side from the split index itself
+		if (left.getSize() < minNodeSize || right.getSize() + 1 < minNodeSize)
+			return -1;
+		double splitEntropy = (left.getSize() * left.getEntropy() + right.getSize() * right.getEntropy()) / subset.getSize();
+		return subset.getEntropy() - splitEntropy;
+	}
 
 }
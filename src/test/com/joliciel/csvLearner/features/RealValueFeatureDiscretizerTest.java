@@ -0,0 +1,107 @@
+package com.joliciel.csvLearner.features;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.GenericEvent;
+import com.joliciel.csvLearner.GenericEvents;
+
+public class RealValueFeatureDiscretizerTest {
+
+	/**
+	 * Outcome A has the values 1 to 3 for dsc_f, B has 7 to 9 and C has 13 to 15,
+	 * so dsc_f should be split at 5 and 11.
+	 * dsc_h has the same value for all events, and shouldn't be split.
+	 * The last event is a test event, which is rewritten but not used to find the splits.
+	 */
+	private GenericEvents newEvents() {
+		String[] outcomes = new String[] { "A", "B", "C" };
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>();
+		for (int i = 0; i < 18; i++) {
+			int outcome = i / 6;
+			GenericEvent event = new GenericEvent("e" + i);
+			event.setOutcome(outcomes[outcome]);
+			event.addFeature("dsc_f", outcome * 6 + (i % 3) + 1);
+			if (i % 2 == 0)
+				event.addFeature("dsc_h", 4);
+			event.addFeature("dsc_n:::x");
+			eventList.add(event);
+		}
+		GenericEvent testEvent = new GenericEvent("test");
+		testEvent.setOutcome("A");
+		testEvent.addFeature("dsc_f", 6);
+		testEvent.setTest(true);
+		eventList.add(testEvent);
+		return new GenericEvents(eventList);
+	}
+
+	@Test
+	public void testDiscretizeFeatures() {
+		Set<String> features = new TreeSet<String>(Arrays.asList("dsc_f", "dsc_h", "dsc_n:::x"));
+		GenericEvents events = this.newEvents();
+		RealValueFeatureDiscretizer discretizer = new RealValueFeatureDiscretizer();
+		discretizer.setFeatureSplitter(new FayyadIraniSplitter());
+		Map<String,Set<Double>> splitValues = discretizer.discretizeFeatures(events, features);
+
+		assertEquals(new TreeSet<Double>(Arrays.asList(5.0, 11.0)), splitValues.get("dsc_f"));
+		assertEquals(0, splitValues.get("dsc_h").size());
+		assertEquals(0, splitValues.get("dsc_n:::x").size());
+
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>(events.getEvents());
+		this.assertFeatures(eventList.get(0), "dsc_f:::c0", "dsc_h:::c0", "dsc_n:::x");
+		this.assertFeatures(eventList.get(5), "dsc_f:::c0", "dsc_n:::x");
+		this.assertFeatures(eventList.get(6), "dsc_f:::c1", "dsc_h:::c0", "dsc_n:::x");
+		this.assertFeatures(eventList.get(17), "dsc_f:::c2", "dsc_n:::x");
+		this.assertFeatures(eventList.get(18), "dsc_f:::c1");
+		assertEquals(Arrays.asList(1.0f, 1.0f, 1.0f), eventList.get(0).getWeights());
+		assertTrue(events.getFeatures().contains("dsc_f:::c2"));
+		assertFalse(events.getFeatures().contains("dsc_f"));
+	}
+
+	private void assertFeatures(GenericEvent event, String... features) {
+		// the order of the rewritten features is irrelevant
+		assertEquals(new TreeSet<String>(Arrays.asList(features)), new TreeSet<String>(event.getFeatures()));
+	}
+
+	@Test
+	public void testSameAsSingleFeature() {
+		Set<String> features = new TreeSet<String>(Arrays.asList("dsc_f", "dsc_h", "dsc_n:::x"));
+		GenericEvents events = this.newEvents();
+		RealValueFeatureDiscretizer discretizer = new RealValueFeatureDiscretizer();
+		discretizer.setFeatureSplitter(new FayyadIraniSplitter());
+		List<Set<Double>> expectedSplitValues = new ArrayList<Set<Double>>();
+		for (String feature : features)
+			expectedSplitValues.add(discretizer.discretizeFeature(events, feature));
+
+		GenericEvents batchEvents = this.newEvents();
+		discretizer.setThreadCount(2);
+		Map<String,Set<Double>> splitValues = discretizer.discretizeFeatures(batchEvents, features);
+		assertEquals(expectedSplitValues, new ArrayList<Set<Double>>(splitValues.values()));
+		assertEquals(events.getFeatures(), batchEvents.getFeatures());
+
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>(events.getEvents());
+		List<GenericEvent> batchEventList = new ArrayList<GenericEvent>(batchEvents.getEvents());
+		for (int i = 0; i < eventList.size(); i++) {
+			assertEquals(eventList.get(i).getFeatures(), batchEventList.get(i).getFeatures());
+			assertEquals(eventList.get(i).getWeights(), batchEventList.get(i).getWeights());
+		}
+	}
+
+	@Test
+	public void testGetClassIndex() {
+		double[] limits = new double[] { 5.0, 11.0 };
+		assertEquals(0, RealValueFeatureDiscretizer.getClassIndex(limits, 1.0));
+		assertEquals(0, RealValueFeatureDiscretizer.getClassIndex(limits, 5.0));
+		assertEquals(1, RealValueFeatureDiscretizer.getClassIndex(limits, 5.5));
+		assertEquals(2, RealValueFeatureDiscretizer.getClassIndex(limits, 12.0));
+		assertEquals(0, RealValueFeatureDiscretizer.getClassIndex(new double[0], 12.0));
+	}
+}
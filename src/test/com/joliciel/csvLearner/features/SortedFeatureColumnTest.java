@@ -0,0 +1,46 @@
+package com.joliciel.csvLearner.features;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SortedFeatureColumnTest {
+
+	@Test
+	public void testSort() {
+		SortedFeatureColumn column = new SortedFeatureColumn(2);
+		column.add("B", 3);
+		column.add("C", 1);
+		column.add("A", 3);
+		column.add("B", -2);
+		column.add("A", 1);
+		column.add("C", 3);
+		column.sort();
+		
+		assertArrayEquals(new String[] { "A", "B", "C" }, column.getOutcomes());
+		assertEquals(6, column.size());
+		double[] values = new double[] { -2, 1, 1, 3, 3, 3 };
+		String[] outcomes = new String[] { "B", "A", "C", "A", "B", "C" };
+		for (int i = 0; i < column.size(); i++) {
+			assertEquals(values[i], column.getValue(i), 0.0);
+			assertEquals(outcomes[i], column.getOutcome(i));
+		}
+	}
+	
+	@Test
+	public void testSortManyOutcomes() {
+		SortedFeatureColumn column = new SortedFeatureColumn();
+		int outcomeCount = 40;
+		for (int i = 0; i < 400; i++) {
+			// outcome i%40 gets the values 9, 8, ..., 0 in turn, so every value occurs for each outcome
+			column.add(String.format("o%02d", i % outcomeCount), 9 - (i / outcomeCount));
+		}
+		column.sort();
+		
+		assertEquals(400, column.size());
+		for (int i = 0; i < column.size(); i++) {
+			assertEquals(i / outcomeCount, column.getValue(i), 0.0);
+			assertEquals(i % outcomeCount, column.getOutcomeId(i));
+		}
+	}
+}
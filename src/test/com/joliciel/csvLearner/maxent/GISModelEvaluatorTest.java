@@ -0,0 +1,96 @@
+package com.joliciel.csvLearner.maxent;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import opennlp.maxent.GISModel;
+import opennlp.maxent.GISTrainer;
+import opennlp.model.Event;
+import opennlp.model.EventStream;
+import opennlp.model.OnePassRealValueDataIndexer;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.FeatureDictionary;
+import com.joliciel.csvLearner.GenericEvent;
+
+public class GISModelEvaluatorTest {
+	private static final double TOLERANCE = 1e-12;
+
+	@Test
+	public void testSameAsModel() throws Exception {
+		// the model is trained from string contexts, so that gme_late isn't added to the dictionary by training
+		final List<Event> trainingEvents = new ArrayList<Event>();
+		String[] outcomes = new String[] { "A", "B", "C" };
+		for (int i = 0; i < 30; i++) {
+			String outcome = outcomes[i % 3];
+			if (i % 2 == 0) {
+				trainingEvents.add(new Event(outcome, new String[] { "gme_f1", "gme_n:::" + outcome, "gme_late" },
+						new float[] { (i % 3) + 1 + (i % 5) * 0.1f, 1, 0.5f }));
+			} else {
+				trainingEvents.add(new Event(outcome, new String[] { "gme_f1", "gme_f2", "gme_n:::x" },
+						new float[] { (i % 3) + 1, 3 - (i % 3) + (i % 4) * 0.2f, 1 }));
+			}
+		}
+		EventStream eventStream = new EventStream() {
+			private Iterator<Event> iterator = trainingEvents.iterator();
+			@Override
+			public Event next() {
+				return iterator.next();
+			}
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+		};
+		GISModel model = new GISTrainer(false).trainModel(20, new OnePassRealValueDataIndexer(eventStream, 0), 0);
+
+		FeatureDictionary dictionary = FeatureDictionary.getInstance();
+		for (String feature : new String[] { "gme_f1", "gme_f2", "gme_n:::A", "gme_n:::B", "gme_n:::C", "gme_n:::x" })
+			dictionary.getId(feature);
+		assertTrue(dictionary.lookupId("gme_late") < 0);
+		GISModelEvaluator evaluator = new GISModelEvaluator(model);
+
+		// gme_late is added to the dictionary after construction, and gme_unknown isn't known to the model
+		List<GenericEvent> events = new ArrayList<GenericEvent>();
+		GenericEvent event = new GenericEvent("known");
+		event.addFeature("gme_f1", 2.5f);
+		event.addFeature("gme_f2", 1.2f);
+		event.addFeature("gme_n:::B");
+		events.add(event);
+		event = new GenericEvent("late");
+		event.addFeature("gme_late", 0.5f);
+		event.addFeature("gme_f1", 1.5f);
+		events.add(event);
+		event = new GenericEvent("unknown");
+		event.addFeature("gme_unknown", 2.0f);
+		event.addFeature("gme_n:::x");
+		event.addFeature("gme_f2", 2.0f);
+		events.add(event);
+		event = new GenericEvent("onlyUnknown");
+		event.addFeature("gme_unknown", 1.0f);
+		events.add(event);
+
+		GenericEvent lateEvent = events.get(1);
+		assertTrue(evaluator.resolve(lateEvent)[lateEvent.indexOf("gme_late")] >= 0);
+		GenericEvent unknownEvent = events.get(2);
+		int[] predicateIndexes = evaluator.resolve(unknownEvent);
+		assertEquals(-1, predicateIndexes[unknownEvent.indexOf("gme_unknown")]);
+		assertTrue(predicateIndexes[unknownEvent.indexOf("gme_n:::x")] >= 0);
+
+		for (GenericEvent genericEvent : events) {
+			String[] contexts = new String[genericEvent.getFeatureCount()];
+			float[] weights = new float[genericEvent.getFeatureCount()];
+			for (int i = 0; i < contexts.length; i++) {
+				contexts[i] = genericEvent.getFeature(i);
+				weights[i] = genericEvent.getWeight(i);
+			}
+			double[] expected = model.eval(contexts, weights);
+			double[] probs = evaluator.eval(genericEvent, evaluator.resolve(genericEvent));
+			assertArrayEquals(expected, probs, TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.joliciel.csvLearner.maxent;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import opennlp.maxent.GISModel;
+import opennlp.maxent.GISTrainer;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.GenericEvent;
+import com.joliciel.csvLearner.GenericEvents;
+import com.joliciel.csvLearner.NameValuePair;
+
+public class MaxentAnalyserTest {
+
+	@Test
+	public void testThreadCount() {
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>();
+		String[] outcomes = new String[] { "A", "B", "C" };
+		for (int i = 0; i < 90; i++) {
+			GenericEvent event = new GenericEvent("e" + i);
+			event.setOutcome(outcomes[i % 3]);
+			event.addFeature("f1", (i % 3) + 1 + (i % 7) * 0.2f);
+			if (i % 4 != 0)
+				event.addFeature("f2", 4 - (i % 3) + (i % 5) * 0.3f);
+			event.addFeature("n:::" + (i % 5 == 0 ? "x" : outcomes[i % 3]));
+			event.setTest(i % 2 == 0);
+			eventList.add(event);
+		}
+		// a test event with a feature unknown to the model
+		GenericEvent unknown = new GenericEvent("unknown");
+		unknown.setOutcome("A");
+		unknown.addFeature("f1", 1.5f);
+		unknown.addFeature("unseen", 1.0f);
+		unknown.setTest(true);
+		eventList.add(unknown);
+		GenericEvents events = new GenericEvents(eventList);
+		GISModel model = new GISTrainer(false).trainModel(30, new GenericEventsDataIndexer(events, 0), 0);
+
+		List<String> sequential = this.analyse(model, events, 1);
+		assertEquals(47, sequential.size());
+		assertEquals("terminate", sequential.get(46));
+		for (int threadCount : new int[] {2, 4}) {
+			assertEquals(sequential, this.analyse(model, events, threadCount));
+		}
+	}
+
+	/**
+	 * Analyses the events in batches of 3, returning a description of each observer callback.
+	 */
+	private List<String> analyse(GISModel model, GenericEvents events, int threadCount) {
+		final List<String> callbacks = new ArrayList<String>();
+		final Thread callingThread = Thread.currentThread();
+		MaxentAnalyser analyser = new MaxentAnalyser();
+		analyser.setMaxentModel(model);
+		analyser.setThreadCount(threadCount);
+		analyser.setEventsPerBatch(3);
+		analyser.addObserver(new MaxentObserver() {
+			@Override
+			public void onAnalyse(GenericEvent event, Collection<NameValuePair> outcomes) {
+				fail("Not called by the analyser");
+			}
+
+			@Override
+			public void onAnalyse(GenericEvent event, MaxentResult result) {
+				assertSame(callingThread, Thread.currentThread());
+				callbacks.add(event.getIdentifier() + ": " + result.getBestOutcome()
+						+ " " + Arrays.toString(result.getProbabilities()));
+			}
+
+			@Override
+			public void onTerminate() {
+				callbacks.add("terminate");
+			}
+		});
+		analyser.analyse(events);
+		return callbacks;
+	}
+}
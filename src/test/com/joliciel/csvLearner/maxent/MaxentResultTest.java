@@ -0,0 +1,61 @@
+package com.joliciel.csvLearner.maxent;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.NameValueDescendingComparator;
+import com.joliciel.csvLearner.NameValuePair;
+
+public class MaxentResultTest {
+
+	@Test
+	public void testSameRankingAsComparator() {
+		String[] outcomeNames = new String[] { "d", "b", "a", "e", "c" };
+		double[] probs = new double[] { 0.1, 0.3, 0.1, 0.3, 0.2 };
+		MaxentResult result = new MaxentResult(outcomeNames, probs);
+		
+		TreeSet<NameValuePair> heap = new TreeSet<NameValuePair>(new NameValueDescendingComparator());
+		for (int i=0; i<probs.length; i++)
+			heap.add(new NameValuePair(outcomeNames[i], probs[i]));
+		
+		assertEquals("b", result.getBestOutcome());
+		assertEquals(0.3, result.getBestProbability(), 0.0);
+		
+		int[] top = result.getTopOutcomeIndexes(2);
+		assertEquals(2, top.length);
+		assertEquals("b", result.getOutcome(top[0]));
+		assertEquals("e", result.getOutcome(top[1]));
+		
+		List<NameValuePair> outcomes = result.getOutcomes();
+		assertEquals(heap.size(), outcomes.size());
+		int i = 0;
+		for (NameValuePair pair : heap) {
+			assertEquals(pair.getName(), outcomes.get(i).getName());
+			assertEquals(pair.getValue(), outcomes.get(i).getValue(), 0.0);
+			i++;
+		}
+	}
+	
+	@Test
+	public void testReuse() {
+		MaxentResult result = new MaxentResult(new String[] { "x", "y" }, new double[] { 0.6, 0.4 });
+		assertEquals("x", result.getBestOutcome());
+		result.setProbabilities(new double[] { 0.2, 0.8 });
+		assertEquals("y", result.getBestOutcome());
+		assertEquals(1, result.getTopOutcomeIndexes(5)[0]);
+	}
+	
+	@Test
+	public void testTopOutcomeIndexBounds() {
+		MaxentResult result = new MaxentResult(new String[] { "x", "y", "z" }, new double[] { 0.2, 0.5, 0.3 });
+		assertEquals(0, result.getTopOutcomeIndexes(0).length);
+		assertEquals(0, result.getTopOutcomeIndexes(-1).length);
+		assertArrayEquals(new int[] { 1 }, result.getTopOutcomeIndexes(1));
+		assertArrayEquals(new int[] { 1, 2, 0 }, result.getTopOutcomeIndexes(4));
+		assertArrayEquals(new int[] { 1, 2 }, result.getTopOutcomeIndexes(2));
+	}
+}
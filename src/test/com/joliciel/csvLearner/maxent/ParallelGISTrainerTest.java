@@ -0,0 +1,79 @@
+package com.joliciel.csvLearner.maxent;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import opennlp.maxent.GISModel;
+import opennlp.maxent.GISTrainer;
+import opennlp.model.Context;
+
+import org.junit.Test;
+
+import com.joliciel.csvLearner.GenericEvent;
+import com.joliciel.csvLearner.GenericEvents;
+
+public class ParallelGISTrainerTest {
+	private static final double TOLERANCE = 1e-9;
+
+	private GenericEvents newEvents() {
+		Random random = new Random(11);
+		String[] outcomes = new String[] { "A", "B", "C" };
+		List<GenericEvent> eventList = new ArrayList<GenericEvent>();
+		for (int i = 0; i < 90; i++) {
+			GenericEvent event = new GenericEvent("e" + i);
+			int outcome = random.nextInt(outcomes.length);
+			event.setOutcome(outcomes[outcome]);
+			for (int j = 0; j < 6; j++) {
+				if (random.nextInt(3) > 0)
+					event.addFeature("gis_f" + j, (float) ((outcome + 1) * (j % 3 + 1) * random.nextDouble()));
+			}
+			event.addFeature("gis_n:::" + (random.nextBoolean() ? outcomes[outcome] : "x"));
+			eventList.add(event);
+		}
+		return new GenericEvents(eventList);
+	}
+	
+	@Test
+	public void testSameModelAsSerialTrainer() {
+		GenericEvents events = this.newEvents();
+		GISModel serialModel = new GISTrainer(false).trainModel(50, new GenericEventsDataIndexer(events, 0), 0);
+		GISModel parallelModel = new ParallelGISTrainer(3).trainModel(50, new GenericEventsDataIndexer(events, 0), 0);
+		this.assertSameModel(events, serialModel, parallelModel);
+	}
+	
+	@Test
+	public void testSameSmoothedModelAsSerialTrainer() {
+		GenericEvents events = this.newEvents();
+		GISTrainer serialTrainer = new GISTrainer(false);
+		serialTrainer.setGaussianSigma(1.0);
+		GISModel serialModel = serialTrainer.trainModel(50, new GenericEventsDataIndexer(events, 0), 0);
+		ParallelGISTrainer parallelTrainer = new ParallelGISTrainer(4);
+		parallelTrainer.setGaussianSigma(1.0);
+		GISModel parallelModel = parallelTrainer.trainModel(50, new GenericEventsDataIndexer(events, 0), 0);
+		this.assertSameModel(events, serialModel, parallelModel);
+	}
+	
+	private void assertSameModel(GenericEvents events, GISModel serialModel, GISModel parallelModel) {
+		Object[] serialData = serialModel.getDataStructures();
+		Object[] parallelData = parallelModel.getDataStructures();
+		assertArrayEquals((String[]) serialData[2], (String[]) parallelData[2]);
+		Context[] serialParams = (Context[]) serialData[0];
+		Context[] parallelParams = (Context[]) parallelData[0];
+		assertEquals(serialParams.length, parallelParams.length);
+		for (int i = 0; i < serialParams.length; i++) {
+			assertArrayEquals(serialParams[i].getOutcomes(), parallelParams[i].getOutcomes());
+			assertArrayEquals(serialParams[i].getParameters(), parallelParams[i].getParameters(), TOLERANCE);
+		}
+		
+		for (GenericEvent event : events) {
+			String[] contexts = event.getFeatures().toArray(new String[event.getFeatureCount()]);
+			float[] weights = new float[event.getFeatureCount()];
+			for (int i = 0; i < weights.length; i++)
+				weights[i] = event.getWeight(i);
+			assertArrayEquals(serialModel.eval(contexts, weights), parallelModel.eval(contexts, weights), TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.joliciel.csvLearner.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class CSVCellReaderTest {
+
+	@Test
+	public void testSameCellsAsFormatter() throws Exception {
+		String[] lines = new String[] {
+				"ID,a,b,c,",
+				"id1, 0.5 ,\"x, y\",\"say \"\"hi\"\"\"",
+				"id2,,\"\",3",
+				"",
+				"id3,\"unterminated, quote",
+		};
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+			sb.append(line).append("\r\n");
+
+		CSVCellReader cellReader = new CSVCellReader(new StringReader(sb.toString()));
+		int row = 0;
+		while (cellReader.nextRow()) {
+			List<String> cells = new ArrayList<String>();
+			while (cellReader.nextCell())
+				cells.add(cellReader.getCell());
+			assertEquals(CSVFormatter.getCSVCells(lines[row]), cells);
+			row++;
+		}
+		assertEquals(lines.length, row);
+	}
+
+	@Test
+	public void testSkipRestOfRow() throws Exception {
+		CSVCellReader cellReader = new CSVCellReader(new StringReader("a,b,c\nd,e,f"));
+		assertTrue(cellReader.nextRow());
+		assertTrue(cellReader.nextCell());
+		assertEquals("a", cellReader.getCell());
+		assertTrue(cellReader.nextRow());
+		assertTrue(cellReader.nextCell());
+		assertEquals("d", cellReader.getCell());
+		assertEquals(2, cellReader.getRow());
+		assertFalse(cellReader.nextRow());
+	}
+
+}
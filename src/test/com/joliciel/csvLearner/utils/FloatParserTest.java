@@ -0,0 +1,33 @@
+package com.joliciel.csvLearner.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FloatParserTest {
+
+	@Test
+	public void testSameValuesAsParseFloat() {
+		String[] numbers = new String[] {
+				"0", "-0", "1.5", "0.707", "73e-2", "-20E-2", "+9.969", ".5", "5.",
+				"3.4028235e38", "1.4e-45", "16777217", "0.30000001", "123456789.123",
+				"1.5f", "2d", "0x1p3", "NaN", "-Infinity", " 2.5 "
+		};
+		FloatParser parser = new FloatParser();
+		for (String number : numbers) {
+			assertTrue(number, parser.parse(number));
+			assertEquals(number, Float.floatToIntBits(Float.parseFloat(number)), Float.floatToIntBits(parser.getValue()));
+		}
+	}
+
+	@Test
+	public void testNotNumeric() {
+		String[] cells = new String[] {
+				"", "x", "red", "No", "f", "1e", "e5", ".", "-", "1.5ff", "1x", "1,5", "q, z"
+		};
+		FloatParser parser = new FloatParser();
+		for (String cell : cells) {
+			assertFalse(cell, parser.parse(cell));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.joliciel.csvLearner.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MappedCSVCellReaderTest {
+
+	@Test
+	public void testSameCellsAsStreamed() throws Exception {
+		String contents = "ID,caf\u00E9,\u20AC,\uD83D\uDE00\r\n"
+			+ "id1,\"x, \u00E9\",3.5,\u4E2D\u6587\n"
+			+ "id2,,a\u2028id3,b\u0085id4\r"
+			+ "id5,\"unterminated\n";
+		File file = File.createTempFile("mapped", ".csv");
+		file.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(contents.getBytes("UTF-8"));
+		fos.close();
+
+		CSVCellReader streamed = new CSVCellReader(new StringReader(contents));
+		MappedCSVCellReader mapped = new MappedCSVCellReader(file);
+		try {
+			assertEquals(this.getCells(streamed), this.getCells(mapped));
+		} finally {
+			mapped.close();
+		}
+	}
+
+	@Test
+	public void testTruncatedSequence() throws Exception {
+		// truncated 2-byte and 3-byte sequences, each followed by ASCII
+		byte[] contents = new byte[] { (byte) 0xC3, 'a', ',', 'b', '\n', (byte) 0xE2, (byte) 0x82, ',', 'c', 'd', '\n' };
+		File file = File.createTempFile("mapped", ".csv");
+		file.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(contents);
+		fos.close();
+
+		MappedCSVCellReader mapped = new MappedCSVCellReader(file);
+		try {
+			List<List<String>> rows = this.getCells(mapped);
+			assertEquals(2, rows.size());
+			assertEquals(Arrays.asList("\uFFFDa", "b"), rows.get(0));
+			assertEquals(Arrays.asList("\uFFFD", "cd"), rows.get(1));
+		} finally {
+			mapped.close();
+		}
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		File file = File.createTempFile("mapped", ".csv");
+		file.deleteOnExit();
+		MappedCSVCellReader mapped = new MappedCSVCellReader(file);
+		try {
+			assertFalse(mapped.nextRow());
+		} finally {
+			mapped.close();
+		}
+	}
+
+	private List<List<String>> getCells(CSVCellReader cellReader) throws Exception {
+		List<List<String>> rows = new ArrayList<List<String>>();
+		while (cellReader.nextRow()) {
+			List<String> cells = new ArrayList<String>();
+			while (cellReader.nextCell())
+				cells.add(cellReader.getCell());
+			rows.add(cells);
+		}
+		return rows;
+	}
+}
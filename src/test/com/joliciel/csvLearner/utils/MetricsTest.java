@@ -0,0 +1,64 @@
+package com.joliciel.csvLearner.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+	@Test
+	public void testDisabled() {
+		Metrics.setEnabled(false);
+		Metrics.Counter counter = Metrics.getCounter("test.disabledCounter");
+		Metrics.Timer timer = Metrics.getTimer("test.disabledTimer");
+		counter.increment();
+		long startTime = timer.start();
+		timer.stop(startTime);
+		assertEquals(0, counter.getCount());
+		assertEquals(0, timer.getCount());
+	}
+
+	@Test
+	public void testTimerStartedWhileDisabled() {
+		Metrics.setEnabled(false);
+		Metrics.Timer timer = Metrics.getTimer("test.lateTimer");
+		long startTime = timer.start();
+		Metrics.setEnabled(true);
+		try {
+			timer.stop(startTime);
+			assertEquals(0, timer.getCount());
+			timer.stop(timer.start());
+			assertEquals(1, timer.getCount());
+		} finally {
+			Metrics.setEnabled(false);
+			Metrics.reset();
+		}
+	}
+
+	@Test
+	public void testHistogram() {
+		Metrics.setEnabled(true);
+		try {
+			Metrics.Histogram histogram = Metrics.getHistogram("test.histogram");
+			assertSame(histogram, Metrics.getHistogram("test.histogram"));
+			for (int i=1; i<=100; i++)
+				histogram.record(i);
+			assertEquals(100, histogram.getCount());
+			assertEquals(5050, histogram.getTotal());
+			assertEquals(100, histogram.getMax());
+			assertEquals(50.5, histogram.getMean(), 0.0001);
+			long p50 = histogram.getPercentile(50);
+			assertTrue(p50>=50 && p50<100);
+			assertEquals(100, histogram.getPercentile(100));
+			
+			histogram.record(200, 100);
+			assertEquals(200, histogram.getCount());
+			assertEquals(25050, histogram.getTotal());
+			assertEquals(200, histogram.getMax());
+			assertTrue(histogram.getPercentile(75)>=200);
+		} finally {
+			Metrics.setEnabled(false);
+			Metrics.reset();
+		}
+	}
+}